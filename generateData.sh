@@ -0,0 +1,25 @@
+#!/bin/bash
+
+# Configuration
+SOURCE_DIR="src/main"
+OUTPUT_DIR="out"
+MAIN_CLASS="DatasetGenerator"
+
+# Create output directory if it doesn't exist
+mkdir -p $OUTPUT_DIR
+
+# Set classpath
+CLASSPATH="lib/*:$OUTPUT_DIR"
+
+# Compile
+echo "Compiling $MAIN_CLASS..."
+javac -cp "$CLASSPATH" -d $OUTPUT_DIR $SOURCE_DIR/*.java
+
+# Run if compilation succeeded
+if [ $? -eq 0 ]; then
+    echo "Running $MAIN_CLASS..."
+    java -cp "$CLASSPATH" src.main.$MAIN_CLASS "$@"
+else
+    echo "Compilation failed."
+    exit 1
+fi
@@ -19,12 +19,12 @@ CLASSPATH="lib/*:$OUTPUT_DIR"
 
 # Compile
 echo "Compiling $MAIN_CLASS..."
-javac -cp "$CLASSPATH" -d $OUTPUT_DIR $SOURCE_DIR/${MAIN_CLASS}.java
+javac -cp "$CLASSPATH" -d $OUTPUT_DIR $SOURCE_DIR/${MAIN_CLASS}.java $SOURCE_DIR/SchemaMigrator.java
 
 # Run if compilation succeeded
 if [ $? -eq 0 ]; then
     echo "Running $MAIN_CLASS..."
-    java -cp "$CLASSPATH" $MAIN_CLASS
+    java -cp "$CLASSPATH" $MAIN_CLASS "$@"
 else
     echo "Compilation failed."
     exit 1
@@ -0,0 +1,35 @@
+-- Full-text index over the movie titles, plots and genres, for QueryDB's
+-- keyword search (query 7). It is an external-content FTS5 table: the text
+-- stays in Movies and only the index is stored here, keyed on movie_id.
+-- Words are matched case-insensitively, without accents and by their stem.
+CREATE VIRTUAL TABLE Movie_Search USING fts5(
+    title, plot, genre,
+    content = 'Movies',
+    content_rowid = 'movie_id',
+    tokenize = 'porter unicode61 remove_diacritics 2'
+);
+
+-- Keep the index in step with single-row changes. PopulateDB drops these
+-- triggers during a full load and rebuilds the index in one pass instead.
+CREATE TRIGGER movie_search_insert AFTER INSERT ON Movies
+BEGIN
+    INSERT INTO Movie_Search (rowid, title, plot, genre)
+    VALUES (new.movie_id, new.title, new.plot, new.genre);
+END;
+
+CREATE TRIGGER movie_search_delete AFTER DELETE ON Movies
+BEGIN
+    INSERT INTO Movie_Search (Movie_Search, rowid, title, plot, genre)
+    VALUES ('delete', old.movie_id, old.title, old.plot, old.genre);
+END;
+
+CREATE TRIGGER movie_search_update AFTER UPDATE OF title, plot, genre ON Movies
+BEGIN
+    INSERT INTO Movie_Search (Movie_Search, rowid, title, plot, genre)
+    VALUES ('delete', old.movie_id, old.title, old.plot, old.genre);
+    INSERT INTO Movie_Search (rowid, title, plot, genre)
+    VALUES (new.movie_id, new.title, new.plot, new.genre);
+END;
+
+-- Index the movies already loaded
+INSERT INTO Movie_Search (Movie_Search) VALUES ('rebuild');
@@ -0,0 +1,32 @@
+-- Genres split out of the comma-joined Movies.genre text, so that movies can
+-- be filtered by genre without matching substrings. PopulateDB fills these
+-- tables from Movies.genre after each load (see MovieGenres).
+CREATE TABLE Genres (
+    genre_id INTEGER PRIMARY KEY,
+    name TEXT NOT NULL UNIQUE COLLATE NOCASE
+);
+
+CREATE TABLE Movie_Genres (
+    movie_id INTEGER NOT NULL,
+    genre_id INTEGER NOT NULL,
+    PRIMARY KEY (movie_id, genre_id) ON CONFLICT IGNORE,
+    FOREIGN KEY (movie_id) REFERENCES Movies(movie_id) ON DELETE CASCADE,
+    FOREIGN KEY (genre_id) REFERENCES Genres(genre_id)
+) WITHOUT ROWID;
+CREATE INDEX idx_movie_genres_genre ON Movie_Genres (genre_id, movie_id);
+
+-- The genres of a movie as a bitmask: bit (genre_id - 1) is set for each of
+-- its genres, for genre ids 1 to 63. NULL until the movie's genres are split.
+ALTER TABLE Movies ADD COLUMN genre_mask INTEGER;
+
+-- Query 9 tests a rating range and genre bits; with the title in the index it
+-- is answered from the index alone. This replaces the ratings-only index.
+DROP INDEX IF EXISTS idx_movies_ratings;
+CREATE INDEX idx_movies_ratings_genres ON Movies (ratings, genre_mask, title);
+
+-- A changed genre text is split again by the next load
+CREATE TRIGGER movie_genres_update AFTER UPDATE OF genre ON Movies
+BEGIN
+    DELETE FROM Movie_Genres WHERE movie_id = new.movie_id;
+    UPDATE Movies SET genre_mask = NULL WHERE movie_id = new.movie_id;
+END;
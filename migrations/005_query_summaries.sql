@@ -0,0 +1,147 @@
+-- Summary tables for QueryDB's queries 5 and 6, which otherwise join and group
+-- every award and cast row on each call. Each table is defined by a view over
+-- the base tables; triggers apply every change to the base tables to the
+-- summary as it happens, and a full load refills the summary from its view in
+-- one statement instead (see QuerySummaries). A count that drops to zero
+-- keeps its row; the queries skip those rows.
+
+-- Per movie and award name, how many of the movie's awards have that name
+CREATE VIEW Movie_Award_Counts_Source AS
+SELECT a.name AS name, ma.movie_id AS movie_id, COUNT(*) AS award_count
+FROM Movie_Awards ma
+JOIN Awards a ON a.award_id = ma.award_id
+GROUP BY a.name, ma.movie_id;
+
+CREATE TABLE Movie_Award_Counts (
+    name TEXT NOT NULL,
+    movie_id INTEGER NOT NULL,
+    award_count INTEGER NOT NULL,
+    PRIMARY KEY (name, movie_id)
+) WITHOUT ROWID;
+
+-- Per actor, the number of awards and the number of movies rated above 8.0
+CREATE VIEW Actor_Stats_Source AS
+SELECT actor_id, SUM(awards) AS award_count, SUM(high_rated) AS high_rated_movies
+FROM (
+    SELECT actor_id, 1 AS awards, 0 AS high_rated FROM Actor_Awards
+    UNION ALL
+    SELECT ma.actor_id, 0, 1 FROM Movie_Actors ma
+    JOIN Movies m ON m.movie_id = ma.movie_id
+    WHERE m.ratings > 8.0
+)
+GROUP BY actor_id;
+
+CREATE TABLE Actor_Stats (
+    actor_id INTEGER PRIMARY KEY,
+    award_count INTEGER NOT NULL,
+    high_rated_movies INTEGER NOT NULL
+);
+CREATE INDEX idx_actor_stats_rank ON Actor_Stats (high_rated_movies, award_count);
+
+INSERT INTO Movie_Award_Counts SELECT * FROM Movie_Award_Counts_Source;
+INSERT INTO Actor_Stats SELECT * FROM Actor_Stats_Source;
+
+-- Movie_Awards pairs count towards their award's name
+CREATE TRIGGER movie_award_counts_insert AFTER INSERT ON Movie_Awards
+BEGIN
+    INSERT INTO Movie_Award_Counts (name, movie_id, award_count)
+    SELECT name, new.movie_id, 1 FROM Awards WHERE award_id = new.award_id
+    ON CONFLICT (name, movie_id) DO UPDATE SET award_count = award_count + 1;
+END;
+
+CREATE TRIGGER movie_award_counts_delete AFTER DELETE ON Movie_Awards
+BEGIN
+    UPDATE Movie_Award_Counts SET award_count = award_count - 1
+    WHERE movie_id = old.movie_id AND name = (SELECT name FROM Awards WHERE award_id = old.award_id);
+END;
+
+CREATE TRIGGER movie_award_counts_update AFTER UPDATE ON Movie_Awards
+BEGIN
+    UPDATE Movie_Award_Counts SET award_count = award_count - 1
+    WHERE movie_id = old.movie_id AND name = (SELECT name FROM Awards WHERE award_id = old.award_id);
+    INSERT INTO Movie_Award_Counts (name, movie_id, award_count)
+    SELECT name, new.movie_id, 1 FROM Awards WHERE award_id = new.award_id
+    ON CONFLICT (name, movie_id) DO UPDATE SET award_count = award_count + 1;
+END;
+
+CREATE TRIGGER movie_award_counts_award_name AFTER UPDATE OF name ON Awards
+WHEN old.name IS NOT new.name
+BEGIN
+    UPDATE Movie_Award_Counts SET award_count = award_count - 1
+    WHERE name = old.name AND movie_id IN (SELECT movie_id FROM Movie_Awards WHERE award_id = old.award_id);
+    INSERT INTO Movie_Award_Counts (name, movie_id, award_count)
+    SELECT new.name, movie_id, 1 FROM Movie_Awards WHERE award_id = new.award_id
+    ON CONFLICT (name, movie_id) DO UPDATE SET award_count = award_count + 1;
+END;
+
+-- With deferred foreign keys (an --incremental load) a movie or award can be
+-- deleted before its pairs. Its pairs are then taken off here, and the pair
+-- triggers, which can no longer find the movie or award, leave the counts be.
+CREATE TRIGGER movie_award_counts_award_delete AFTER DELETE ON Awards
+BEGIN
+    UPDATE Movie_Award_Counts SET award_count = award_count - 1
+    WHERE name = old.name AND movie_id IN (SELECT movie_id FROM Movie_Awards WHERE award_id = old.award_id);
+END;
+
+CREATE TRIGGER query_summaries_movie_delete AFTER DELETE ON Movies
+BEGIN
+    DELETE FROM Movie_Award_Counts WHERE movie_id = old.movie_id;
+    UPDATE Actor_Stats SET high_rated_movies = high_rated_movies - 1
+    WHERE old.ratings > 8.0 AND actor_id IN (SELECT actor_id FROM Movie_Actors WHERE movie_id = old.movie_id);
+END;
+
+-- Actor_Awards pairs count towards the actor's awards
+CREATE TRIGGER actor_stats_award_insert AFTER INSERT ON Actor_Awards
+BEGIN
+    INSERT INTO Actor_Stats (actor_id, award_count, high_rated_movies) VALUES (new.actor_id, 1, 0)
+    ON CONFLICT (actor_id) DO UPDATE SET award_count = award_count + 1;
+END;
+
+CREATE TRIGGER actor_stats_award_delete AFTER DELETE ON Actor_Awards
+BEGIN
+    UPDATE Actor_Stats SET award_count = award_count - 1 WHERE actor_id = old.actor_id;
+END;
+
+CREATE TRIGGER actor_stats_award_update AFTER UPDATE ON Actor_Awards
+BEGIN
+    UPDATE Actor_Stats SET award_count = award_count - 1 WHERE actor_id = old.actor_id;
+    INSERT INTO Actor_Stats (actor_id, award_count, high_rated_movies) VALUES (new.actor_id, 1, 0)
+    ON CONFLICT (actor_id) DO UPDATE SET award_count = award_count + 1;
+END;
+
+-- Movie_Actors pairs of movies rated above 8.0 count towards the actor's high-rated movies
+CREATE TRIGGER actor_stats_cast_insert AFTER INSERT ON Movie_Actors
+BEGIN
+    INSERT INTO Actor_Stats (actor_id, award_count, high_rated_movies)
+    SELECT new.actor_id, 0, 1 FROM Movies WHERE movie_id = new.movie_id AND ratings > 8.0
+    ON CONFLICT (actor_id) DO UPDATE SET high_rated_movies = high_rated_movies + 1;
+END;
+
+CREATE TRIGGER actor_stats_cast_delete AFTER DELETE ON Movie_Actors
+BEGIN
+    UPDATE Actor_Stats SET high_rated_movies = high_rated_movies - 1
+    WHERE actor_id = old.actor_id AND (SELECT ratings FROM Movies WHERE movie_id = old.movie_id) > 8.0;
+END;
+
+CREATE TRIGGER actor_stats_cast_update AFTER UPDATE ON Movie_Actors
+BEGIN
+    UPDATE Actor_Stats SET high_rated_movies = high_rated_movies - 1
+    WHERE actor_id = old.actor_id AND (SELECT ratings FROM Movies WHERE movie_id = old.movie_id) > 8.0;
+    INSERT INTO Actor_Stats (actor_id, award_count, high_rated_movies)
+    SELECT new.actor_id, 0, 1 FROM Movies WHERE movie_id = new.movie_id AND ratings > 8.0
+    ON CONFLICT (actor_id) DO UPDATE SET high_rated_movies = high_rated_movies + 1;
+END;
+
+CREATE TRIGGER actor_stats_movie_rating AFTER UPDATE OF ratings ON Movies
+WHEN ifnull(old.ratings > 8.0, 0) <> ifnull(new.ratings > 8.0, 0)
+BEGIN
+    INSERT INTO Actor_Stats (actor_id, award_count, high_rated_movies)
+    SELECT actor_id, 0, CASE WHEN new.ratings > 8.0 THEN 1 ELSE -1 END
+    FROM Movie_Actors WHERE movie_id = new.movie_id
+    ON CONFLICT (actor_id) DO UPDATE SET high_rated_movies = high_rated_movies + excluded.high_rated_movies;
+END;
+
+CREATE TRIGGER actor_stats_actor_delete AFTER DELETE ON Actors
+BEGIN
+    DELETE FROM Actor_Stats WHERE actor_id = old.actor_id;
+END;
@@ -0,0 +1,151 @@
+-- Stores the five junction tables WITHOUT ROWID, keyed on their id pair, in
+-- place of the AUTOINCREMENT surrogate id of schema version 1. Each pair is
+-- held once and stored in key order, with an index for lookups from the other
+-- side; a repeated pair is ignored rather than failing the load.
+--
+-- A table cannot become WITHOUT ROWID in place, so each one is copied into a
+-- new table, which then takes the old one's name. Repeated pairs and pairs
+-- with a missing id are left behind. legacy_alter_table keeps the rename from
+-- checking the views and triggers of migration 005 while the old table is gone;
+-- dropping a table drops the triggers on it, so those are created again below.
+
+PRAGMA legacy_alter_table = ON;
+
+CREATE TABLE Movie_Actors_new (
+    movie_id INTEGER NOT NULL,
+    actor_id INTEGER NOT NULL,
+    PRIMARY KEY (movie_id, actor_id) ON CONFLICT IGNORE,
+    FOREIGN KEY (movie_id) REFERENCES Movies(movie_id),
+    FOREIGN KEY (actor_id) REFERENCES Actors(actor_id)
+) WITHOUT ROWID;
+INSERT INTO Movie_Actors_new (movie_id, actor_id)
+SELECT movie_id, actor_id FROM Movie_Actors WHERE movie_id IS NOT NULL AND actor_id IS NOT NULL ORDER BY movie_id, actor_id;
+DROP TABLE Movie_Actors;
+ALTER TABLE Movie_Actors_new RENAME TO Movie_Actors;
+CREATE INDEX idx_movie_actors_actor ON Movie_Actors (actor_id, movie_id);
+
+CREATE TABLE Movie_Director_new (
+    movie_id INTEGER NOT NULL,
+    director_id INTEGER NOT NULL,
+    PRIMARY KEY (movie_id, director_id) ON CONFLICT IGNORE,
+    FOREIGN KEY (movie_id) REFERENCES Movies(movie_id),
+    FOREIGN KEY (director_id) REFERENCES Directors(director_id)
+) WITHOUT ROWID;
+INSERT INTO Movie_Director_new (movie_id, director_id)
+SELECT movie_id, director_id FROM Movie_Director WHERE movie_id IS NOT NULL AND director_id IS NOT NULL ORDER BY movie_id, director_id;
+DROP TABLE Movie_Director;
+ALTER TABLE Movie_Director_new RENAME TO Movie_Director;
+CREATE INDEX idx_movie_director_director ON Movie_Director (director_id, movie_id);
+
+CREATE TABLE Movie_Awards_new (
+    movie_id INTEGER NOT NULL,
+    award_id INTEGER NOT NULL,
+    PRIMARY KEY (movie_id, award_id) ON CONFLICT IGNORE,
+    FOREIGN KEY (movie_id) REFERENCES Movies(movie_id),
+    FOREIGN KEY (award_id) REFERENCES Awards(award_id)
+) WITHOUT ROWID;
+INSERT INTO Movie_Awards_new (movie_id, award_id)
+SELECT movie_id, award_id FROM Movie_Awards WHERE movie_id IS NOT NULL AND award_id IS NOT NULL ORDER BY movie_id, award_id;
+DROP TABLE Movie_Awards;
+ALTER TABLE Movie_Awards_new RENAME TO Movie_Awards;
+CREATE INDEX idx_movie_awards_award ON Movie_Awards (award_id, movie_id);
+
+CREATE TABLE Actor_Awards_new (
+    actor_id INTEGER NOT NULL,
+    award_id INTEGER NOT NULL,
+    PRIMARY KEY (actor_id, award_id) ON CONFLICT IGNORE,
+    FOREIGN KEY (actor_id) REFERENCES Actors(actor_id),
+    FOREIGN KEY (award_id) REFERENCES Awards(award_id)
+) WITHOUT ROWID;
+INSERT INTO Actor_Awards_new (actor_id, award_id)
+SELECT actor_id, award_id FROM Actor_Awards WHERE actor_id IS NOT NULL AND award_id IS NOT NULL ORDER BY actor_id, award_id;
+DROP TABLE Actor_Awards;
+ALTER TABLE Actor_Awards_new RENAME TO Actor_Awards;
+CREATE INDEX idx_actor_awards_award ON Actor_Awards (award_id, actor_id);
+
+CREATE TABLE Director_Awards_new (
+    director_id INTEGER NOT NULL,
+    award_id INTEGER NOT NULL,
+    PRIMARY KEY (director_id, award_id) ON CONFLICT IGNORE,
+    FOREIGN KEY (director_id) REFERENCES Directors(director_id),
+    FOREIGN KEY (award_id) REFERENCES Awards(award_id)
+) WITHOUT ROWID;
+INSERT INTO Director_Awards_new (director_id, award_id)
+SELECT director_id, award_id FROM Director_Awards WHERE director_id IS NOT NULL AND award_id IS NOT NULL ORDER BY director_id, award_id;
+DROP TABLE Director_Awards;
+ALTER TABLE Director_Awards_new RENAME TO Director_Awards;
+CREATE INDEX idx_director_awards_award ON Director_Awards (award_id, director_id);
+
+PRAGMA legacy_alter_table = OFF;
+DELETE FROM sqlite_sequence WHERE name IN ('Movie_Actors', 'Movie_Director', 'Movie_Awards', 'Actor_Awards', 'Director_Awards');
+
+-- The query summary triggers of migration 005 on the rebuilt tables
+CREATE TRIGGER movie_award_counts_insert AFTER INSERT ON Movie_Awards
+BEGIN
+    INSERT INTO Movie_Award_Counts (name, movie_id, award_count)
+    SELECT name, new.movie_id, 1 FROM Awards WHERE award_id = new.award_id
+    ON CONFLICT (name, movie_id) DO UPDATE SET award_count = award_count + 1;
+END;
+
+CREATE TRIGGER movie_award_counts_delete AFTER DELETE ON Movie_Awards
+BEGIN
+    UPDATE Movie_Award_Counts SET award_count = award_count - 1
+    WHERE movie_id = old.movie_id AND name = (SELECT name FROM Awards WHERE award_id = old.award_id);
+END;
+
+CREATE TRIGGER movie_award_counts_update AFTER UPDATE ON Movie_Awards
+BEGIN
+    UPDATE Movie_Award_Counts SET award_count = award_count - 1
+    WHERE movie_id = old.movie_id AND name = (SELECT name FROM Awards WHERE award_id = old.award_id);
+    INSERT INTO Movie_Award_Counts (name, movie_id, award_count)
+    SELECT name, new.movie_id, 1 FROM Awards WHERE award_id = new.award_id
+    ON CONFLICT (name, movie_id) DO UPDATE SET award_count = award_count + 1;
+END;
+
+CREATE TRIGGER actor_stats_award_insert AFTER INSERT ON Actor_Awards
+BEGIN
+    INSERT INTO Actor_Stats (actor_id, award_count, high_rated_movies) VALUES (new.actor_id, 1, 0)
+    ON CONFLICT (actor_id) DO UPDATE SET award_count = award_count + 1;
+END;
+
+CREATE TRIGGER actor_stats_award_delete AFTER DELETE ON Actor_Awards
+BEGIN
+    UPDATE Actor_Stats SET award_count = award_count - 1 WHERE actor_id = old.actor_id;
+END;
+
+CREATE TRIGGER actor_stats_award_update AFTER UPDATE ON Actor_Awards
+BEGIN
+    UPDATE Actor_Stats SET award_count = award_count - 1 WHERE actor_id = old.actor_id;
+    INSERT INTO Actor_Stats (actor_id, award_count, high_rated_movies) VALUES (new.actor_id, 1, 0)
+    ON CONFLICT (actor_id) DO UPDATE SET award_count = award_count + 1;
+END;
+
+CREATE TRIGGER actor_stats_cast_insert AFTER INSERT ON Movie_Actors
+BEGIN
+    INSERT INTO Actor_Stats (actor_id, award_count, high_rated_movies)
+    SELECT new.actor_id, 0, 1 FROM Movies WHERE movie_id = new.movie_id AND ratings > 8.0
+    ON CONFLICT (actor_id) DO UPDATE SET high_rated_movies = high_rated_movies + 1;
+END;
+
+CREATE TRIGGER actor_stats_cast_delete AFTER DELETE ON Movie_Actors
+BEGIN
+    UPDATE Actor_Stats SET high_rated_movies = high_rated_movies - 1
+    WHERE actor_id = old.actor_id AND (SELECT ratings FROM Movies WHERE movie_id = old.movie_id) > 8.0;
+END;
+
+CREATE TRIGGER actor_stats_cast_update AFTER UPDATE ON Movie_Actors
+BEGIN
+    UPDATE Actor_Stats SET high_rated_movies = high_rated_movies - 1
+    WHERE actor_id = old.actor_id AND (SELECT ratings FROM Movies WHERE movie_id = old.movie_id) > 8.0;
+    INSERT INTO Actor_Stats (actor_id, award_count, high_rated_movies)
+    SELECT new.actor_id, 0, 1 FROM Movies WHERE movie_id = new.movie_id AND ratings > 8.0
+    ON CONFLICT (actor_id) DO UPDATE SET high_rated_movies = high_rated_movies + 1;
+END;
+
+-- Repeated pairs were counted by the summaries but are not copied, so count again
+DELETE FROM Movie_Award_Counts;
+INSERT INTO Movie_Award_Counts SELECT * FROM Movie_Award_Counts_Source;
+DELETE FROM Actor_Stats;
+INSERT INTO Actor_Stats SELECT * FROM Actor_Stats_Source;
+
+ANALYZE;
@@ -0,0 +1,183 @@
+package src.main;
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+
+/**
+ * AppendWatcher waits for rows to be appended to the CSV files, for
+ * PopulateDB's --watch mode. It listens to a WatchService on the CSV
+ * directory and compares each file's size with the byte offset the database
+ * has consumed so far (its Load_Progress checkpoint).
+ *
+ * Appends are group-committed: once a file has grown, the watcher waits for
+ * the group delay so that further appends to any file are picked up in the
+ * same round, then reports all grown files together. New rows therefore
+ * become visible at most the group delay (plus the load itself) after they
+ * are appended, while a burst of appends costs one commit per file.
+ */
+public class AppendWatcher implements AutoCloseable {
+    private static final long FALLBACK_POLL_MILLIS = 5000; // Sizes are also checked this often, in case an event is missed
+    private static final int SCAN_BLOCK_SIZE = 64 * 1024;
+
+    private final WatchService watcher;
+    private final long groupDelayMillis;
+    private final Map<String, Long> reportedSizes = new HashMap<>();
+
+    /**
+     * Starts watching a directory.
+     * @param directory The directory holding the CSV files.
+     * @param groupDelayMillis How long to collect appends before reporting them.
+     * @throws IOException If the directory cannot be watched.
+     */
+    public AppendWatcher(Path directory, long groupDelayMillis) throws IOException {
+        this.watcher = FileSystems.getDefault().newWatchService();
+        this.groupDelayMillis = Math.max(0, groupDelayMillis);
+        directory.register(watcher, ENTRY_CREATE, ENTRY_MODIFY);
+    }
+
+    /**
+     * Blocks until at least one file has grown past its consumed offset, then
+     * waits out the group delay.
+     * @param consumed The byte offset consumed so far, per CSV file.
+     * @return The files that have grown, in the iteration order of consumed.
+     * @throws InterruptedException If the thread is interrupted, which ends watch mode.
+     */
+    public Set<String> awaitAppends(Map<String, Long> consumed) throws InterruptedException {
+        long deadline = -1;
+        while (true) {
+            Set<String> grown = grownFiles(consumed);
+            long now = System.currentTimeMillis();
+            if (!grown.isEmpty() && deadline < 0) {
+                deadline = now + groupDelayMillis;
+            }
+            if (deadline >= 0 && now >= deadline) {
+                for (String file : grown) {
+                    reportedSizes.put(file, size(file));
+                }
+                return grown;
+            }
+            WatchKey key = watcher.poll(deadline >= 0 ? deadline - now : FALLBACK_POLL_MILLIS, TimeUnit.MILLISECONDS);
+            if (key != null) {
+                key.pollEvents(); // The events only wake us up; sizes tell which files grew
+                key.reset();
+            }
+        }
+    }
+
+    /**
+     * @return The files whose size exceeds their consumed offset and has
+     *         changed since they were last reported. A file that only gained
+     *         an unfinished line is reported once, not again until it grows.
+     */
+    private Set<String> grownFiles(Map<String, Long> consumed) {
+        Set<String> grown = new LinkedHashSet<>();
+        for (Map.Entry<String, Long> entry : consumed.entrySet()) {
+            long size = size(entry.getKey());
+            Long reported = reportedSizes.get(entry.getKey());
+            if (size > entry.getValue() && (reported == null || size != reported)) {
+                grown.add(entry.getKey());
+            }
+        }
+        return grown;
+    }
+
+    private static long size(String file) {
+        try {
+            return Files.size(Paths.get(file));
+        } catch (IOException e) {
+            return -1; // Missing while it is being replaced
+        }
+    }
+
+    /**
+     * Finds where the complete lines of a file end, so that a line that is
+     * still being written is left for the next round.
+     * @param path The file.
+     * @param from The offset already consumed.
+     * @return The offset just past the last newline after from, or from if there is none.
+     * @throws IOException If the file cannot be read.
+     */
+    public static long completeLinesEnd(String path, long from) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+            ByteBuffer block = ByteBuffer.allocate(SCAN_BLOCK_SIZE);
+            long end = channel.size();
+            while (end > from) {
+                long start = Math.max(from, end - SCAN_BLOCK_SIZE);
+                block.clear().limit((int) (end - start));
+                while (block.hasRemaining() && channel.read(block, start + block.position()) >= 0) {
+                    // Fill the block
+                }
+                for (int i = block.position() - 1; i >= 0; i--) {
+                    if (block.get(i) == '\n') return start + i + 1;
+                }
+                end = start;
+            }
+            return from;
+        }
+    }
+
+    /**
+     * Opens a byte range of a file as UTF-8 text.
+     * @param path The file.
+     * @param from The first byte to read.
+     * @param to The byte after the last one to read.
+     * @return A reader over the range.
+     * @throws IOException If the file cannot be opened.
+     */
+    public static Reader openRange(String path, long from, long to) throws IOException {
+        FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ);
+        channel.position(from);
+        InputStream range = new InputStream() {
+            private final InputStream in = Channels.newInputStream(channel);
+            private long remaining = to - from;
+
+            @Override
+            public int read() throws IOException {
+                if (remaining <= 0) return -1;
+                int b = in.read();
+                if (b >= 0) remaining--;
+                return b;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                if (remaining <= 0) return -1;
+                int n = in.read(b, off, (int) Math.min(len, remaining));
+                if (n > 0) remaining -= n;
+                return n;
+            }
+
+            @Override
+            public void close() throws IOException {
+                in.close();
+            }
+        };
+        return new InputStreamReader(new BufferedInputStream(range, SCAN_BLOCK_SIZE), StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void close() throws IOException {
+        watcher.close();
+    }
+}
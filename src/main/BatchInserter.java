@@ -0,0 +1,318 @@
+package src.main;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * BatchInserter writes the rows of one CSV file through a single prepared
+ * INSERT statement using addBatch/executeBatch inside explicit transactions.
+ * Each batch runs under a savepoint; if it fails, the batch is rolled back and
+ * replayed row by row so the offending line is still reported individually.
+ * Values are bound with the column types of the table (see TypedBinder).
+ * Rows that cannot be loaded go to the table's RejectLog with a reason code.
+ * With a BatchSizer, every batch is committed and the batch size follows
+ * the observed latency.
+ */
+public class BatchInserter implements AutoCloseable {
+    private final Connection connection;
+    private final PreparedStatement pstmt;
+    private final TypedBinder binder;
+    private final String csvFile;
+    private final Statement control;
+    private int batchSize;
+    private final int commitEvery;
+    private final boolean previousAutoCommit;
+
+    private final RejectLog rejects;
+
+    private final List<String> lines = new ArrayList<>(); // CSV line of each pending row
+    private long[] lineNumbers; // CSV line number of each pending row
+    private long pendingChars = 0; // Total length of the pending rows' CSV lines
+    private int pending = 0; // Rows staged in the binder for the next batch
+    private int batchesSinceCommit = 0;
+    private int insertedCount = 0;
+    private boolean finished = false;
+    private LoadProgress progress = null; // Checkpoint saved with every commit, if tracked
+    private BitSet[] parentIds = null; // Ids present in each column's parent table, if validated here
+    private IngestReport.TableStats stats = null; // Metrics of the load, if collected
+    private int[] canonical = null; // Canonical row of each CSV row, if duplicates are merged
+    private CharSequence[] idFields = null; // The row id followed by the CSV fields, when ids are explicit
+    private int ordinal = 0; // Position of the last row read in the CSV file
+    private int[][] parentMaps = null; // Id map of each column's parent table, if any parent was deduplicated
+    private BatchSizer sizer = null; // Chooses the batch size from commit latency, if adaptive
+
+    /**
+     * Creates a batch inserter and opens a transaction on the connection.
+     * @param connection The database connection.
+     * @param spec The CSV file and the table it is inserted into.
+     * @param batchSize Number of rows sent per executeBatch call.
+     * @param commitEvery Number of batches per transaction, or 0 for one transaction per table.
+     * @param rejects Where rows that cannot be loaded are written.
+     * @throws SQLException If the statement cannot be prepared or the table's schema cannot be read.
+     */
+    public BatchInserter(Connection connection, CsvTableSpec spec, int batchSize, int commitEvery,
+                         RejectLog rejects) throws SQLException {
+        this.connection = connection;
+        this.batchSize = Math.max(1, batchSize);
+        this.commitEvery = commitEvery;
+        this.previousAutoCommit = connection.getAutoCommit();
+        this.pstmt = connection.prepareStatement(spec.insertSQL());
+        this.binder = new TypedBinder(connection, spec.table, spec.columns, this.batchSize);
+        this.csvFile = spec.csvFile;
+        this.rejects = rejects;
+        this.lineNumbers = new long[this.batchSize];
+        this.control = connection.createStatement();
+        connection.setAutoCommit(false);
+    }
+
+    /**
+     * Queues a row for insertion, flushing the batch once it is full. Numeric
+     * fields are parsed right away; a row with a value that does not match its
+     * column type is rejected. Fields are copied, so reused views
+     * such as CsvTokenizer's may be passed.
+     * @param fields The column values; null or empty fields are stored as SQL NULL.
+     * @param line The original CSV line, written to the reject log if the row fails.
+     * @param lineNumber The line number of the row, written to the reject log if the row fails.
+     * @throws SQLException If the batch cannot be written or committed.
+     */
+    public void add(CharSequence[] fields, String line, long lineNumber) throws SQLException {
+        if (stats != null) stats.rowsRead++;
+        ordinal++;
+        if (canonical != null) {
+            if (ordinal < canonical.length && canonical[ordinal] != ordinal) {
+                if (stats != null) stats.rowsMerged++;
+                return; // A duplicate of an earlier row, which junction rows are pointed at instead
+            }
+            idFields[0] = Integer.toString(ordinal);
+            System.arraycopy(fields, 0, idFields, 1, idFields.length - 1);
+            fields = idFields;
+        }
+        String typeError = binder.stage(pending, fields);
+        if (typeError != null) {
+            rejects.reject(RejectLog.TYPE_MISMATCH, lineNumber, line, "Type mismatch in " + csvFile + ": " + typeError);
+            return;
+        }
+        if (parentMaps != null) {
+            binder.remap(pending, parentMaps);
+        }
+        if (parentIds != null) {
+            int column = binder.missingParent(pending, parentIds);
+            if (column >= 0) {
+                rejects.reject(RejectLog.MISSING_PARENT, lineNumber, line,
+                    "No parent row for " + fields[column] + " in " + csvFile);
+                return;
+            }
+        }
+        lines.add(line);
+        pendingChars += line.length();
+        if (pending == lineNumbers.length) lineNumbers = Arrays.copyOf(lineNumbers, pending * 2);
+        lineNumbers[pending++] = lineNumber;
+        if (pending >= batchSize) {
+            flush();
+        }
+    }
+
+    /**
+     * Checks foreign keys in memory before rows reach the database. A row whose
+     * id is missing from its parent table is written to the reject log instead
+     * of being inserted, so SQLite's own per-row check can be switched off.
+     * @param parentIds Ids present in the parent table of each column, null for unchecked columns.
+     */
+    public void validateParents(BitSet[] parentIds) {
+        this.parentIds = parentIds;
+    }
+
+    /**
+     * Writes a row that was dropped before reaching the inserter, such as one
+     * with the wrong number of columns, to the reject log.
+     * @param reason The reason code.
+     * @param lineNumber The line number of the row.
+     * @param line The original CSV line.
+     * @param detail A human-readable explanation.
+     */
+    public void reject(String reason, long lineNumber, String line, String detail) {
+        if (stats != null) stats.rowsRead++;
+        ordinal++;
+        rejects.reject(reason, lineNumber, line, detail);
+    }
+
+    /**
+     * Inserts only the first of each group of duplicate rows, with its CSV
+     * position as the row id. The inserter must have been created for the
+     * spec's withIdColumn() form and must start at the first CSV row.
+     * @param canonical The canonical row of each CSV row, from EntityDeduplicator.scan.
+     */
+    public void deduplicate(int[] canonical) {
+        this.canonical = canonical;
+        this.idFields = new CharSequence[binder.columnCount()];
+    }
+
+    /**
+     * Points the foreign keys of junction rows at the canonical rows of
+     * deduplicated parent tables before they are validated and inserted.
+     * @param parentMaps The canonical rows of each column's parent table, null for other columns.
+     */
+    public void remapParents(int[][] parentMaps) {
+        this.parentMaps = parentMaps;
+    }
+
+    /**
+     * Records JDBC time and commit latencies of this inserter in a load report.
+     * @param stats The table's metrics.
+     */
+    public void collectStats(IngestReport.TableStats stats) {
+        this.stats = stats;
+    }
+
+    /**
+     * Commits every batch and lets a BatchSizer choose the size of the next
+     * batch from how long the last one took, instead of the fixed batch size.
+     * @param sizer The controller, starting from its initial size.
+     */
+    public void adaptBatchSize(BatchSizer sizer) {
+        this.sizer = sizer;
+        this.batchSize = sizer.size();
+    }
+
+    /**
+     * Saves a checkpoint for the CSV file in every transaction this inserter commits.
+     * @param progress The checkpoint to keep up to date.
+     */
+    public void trackProgress(LoadProgress progress) {
+        this.progress = progress;
+    }
+
+    /**
+     * Records how far into the CSV file the queued rows reach. Call it after
+     * reading a record and before adding it, so that a commit never covers
+     * rows past the saved position.
+     * @param byteOffset Byte offset just past the record.
+     * @param nextLine Line number at that offset.
+     */
+    public void markPosition(long byteOffset, long nextLine) {
+        if (progress != null) {
+            progress.byteOffset = byteOffset;
+            progress.nextLine = nextLine;
+        }
+    }
+
+    /**
+     * Flushes any pending rows and commits the open transaction.
+     * @return true if at least one row was inserted, false otherwise.
+     * @throws SQLException If the final batch or commit fails.
+     */
+    public boolean finish() throws SQLException {
+        flush();
+        if (progress != null) {
+            progress.completed = true;
+        }
+        commit();
+        finished = true;
+        return insertedCount > 0;
+    }
+
+    /**
+     * @return The number of rows inserted so far.
+     */
+    public int getInsertedCount() {
+        return insertedCount;
+    }
+
+    /**
+     * Sends the pending rows as one batch. A failing batch is rolled back to its
+     * savepoint and retried one row at a time.
+     * @throws SQLException If the savepoint or commit cannot be handled.
+     */
+    private void flush() throws SQLException {
+        if (pending == 0) return;
+
+        long start = System.nanoTime();
+        control.execute("SAVEPOINT batch");
+        boolean retried = false;
+        try {
+            for (int i = 0; i < pending; i++) {
+                binder.bind(pstmt, i);
+                pstmt.addBatch();
+            }
+            int[] counts = pstmt.executeBatch();
+            control.execute("RELEASE batch");
+            for (int count : counts) {
+                if (count != 0) insertedCount++;
+                else if (stats != null) stats.rowsMerged++; // A pair the junction table already holds
+            }
+        } catch (SQLException e) {
+            // Undo the partial batch and find the bad line(s) one row at a time
+            pstmt.clearBatch();
+            control.execute("ROLLBACK TO batch");
+            control.execute("RELEASE batch");
+            retried = true;
+            for (int i = 0; i < pending; i++) {
+                binder.bind(pstmt, i);
+                try {
+                    if (pstmt.executeUpdate() != 0) insertedCount++;
+                    else if (stats != null) stats.rowsMerged++;
+                } catch (SQLException rowError) {
+                    rejects.reject(RejectLog.reasonFor(rowError), lineNumbers[i], lines.get(i), rowError.getMessage());
+                }
+            }
+        }
+        binder.clear(pending);
+        int rows = pending;
+        pending = 0;
+        lines.clear();
+        if (stats != null) {
+            stats.jdbcNanos += System.nanoTime() - start;
+            stats.recordBatch(rows);
+        }
+
+        batchesSinceCommit++;
+        if (sizer != null) {
+            commit();
+            if (!retried) sizer.observe(rows, System.nanoTime() - start, pendingChars);
+            batchSize = sizer.size();
+        } else if (commitEvery > 0 && batchesSinceCommit >= commitEvery) {
+            commit();
+        }
+        pendingChars = 0;
+    }
+
+    /**
+     * Saves the checkpoint, if tracked, and commits the open transaction.
+     * @throws SQLException If the checkpoint or the commit fails.
+     */
+    private void commit() throws SQLException {
+        long start = System.nanoTime();
+        if (progress != null) progress.save(connection);
+        connection.commit();
+        batchesSinceCommit = 0;
+        if (stats != null) {
+            long nanos = System.nanoTime() - start;
+            stats.jdbcNanos += nanos;
+            stats.recordCommit(nanos);
+        }
+    }
+
+    /**
+     * Commits whatever was already written if the load stopped early, then
+     * restores the connection's auto-commit mode.
+     * @throws SQLException If the statements cannot be closed.
+     */
+    @Override
+    public void close() throws SQLException {
+        try {
+            if (!finished) {
+                flush();
+                commit();
+            }
+        } finally {
+            pstmt.close();
+            control.close();
+            connection.setAutoCommit(previousAutoCommit);
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package src.main;
+
+/**
+ * BatchSizer chooses the batch size of a BatchInserter from the latency it
+ * observes. Each batch is committed on its own, and the time its executeBatch
+ * and commit took gives a cost per row; the next batch is sized so that it
+ * takes about the target time. A fixed size is too small for the large
+ * junction files and pointlessly large for a file like awards.csv, and the
+ * right size depends on the disk, so it is measured rather than configured.
+ *
+ * The cost per row is smoothed over batches, a batch at most doubles or
+ * halves from one batch to the next, and the staged rows of a batch must fit
+ * in the memory cap, estimated from the length of the CSV lines.
+ */
+public class BatchSizer {
+    static final int MIN_BATCH_SIZE = 16;
+    private static final double SMOOTHING = 0.5; // Weight of the newest batch in the averages
+    private static final int ROW_OVERHEAD = 64; // Estimated heap bytes per staged row besides its text
+
+    private final long targetNanos;
+    private final long memoryBudget;
+    private int size;
+    private double nanosPerRow = -1;
+    private double bytesPerRow = -1;
+
+    /**
+     * @param initialSize The size of the first batch.
+     * @param targetCommitMillis The time a batch and its commit should take.
+     * @param memoryBudget Bytes the staged rows of one batch may take.
+     */
+    public BatchSizer(int initialSize, long targetCommitMillis, long memoryBudget) {
+        this.targetNanos = Math.max(1, targetCommitMillis) * 1_000_000;
+        this.memoryBudget = memoryBudget;
+        this.size = Math.max(MIN_BATCH_SIZE, initialSize);
+    }
+
+    /**
+     * @return The number of rows the next batch should hold.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Records a written batch and picks the size of the next one.
+     * @param rows The rows in the batch.
+     * @param nanos The time executeBatch and the commit took.
+     * @param lineChars The total length of the batch's CSV lines.
+     */
+    public void observe(int rows, long nanos, long lineChars) {
+        if (rows == 0 || rows < size / 2) return; // A short final batch says little about the cost of a full one
+        double rowNanos = (double) nanos / rows;
+        double rowBytes = 2.0 * lineChars / rows + ROW_OVERHEAD; // The line and its staged copy are UTF-16
+        nanosPerRow = nanosPerRow < 0 ? rowNanos : SMOOTHING * rowNanos + (1 - SMOOTHING) * nanosPerRow;
+        bytesPerRow = bytesPerRow < 0 ? rowBytes : SMOOTHING * rowBytes + (1 - SMOOTHING) * bytesPerRow;
+
+        long wanted = (long) (targetNanos / Math.max(nanosPerRow, 1));
+        wanted = Math.max(size / 2, Math.min((long) size * 2, wanted));
+        wanted = Math.min(wanted, (long) (memoryBudget / bytesPerRow));
+        size = (int) Math.max(MIN_BATCH_SIZE, Math.min(Integer.MAX_VALUE - 8, wanted));
+    }
+}
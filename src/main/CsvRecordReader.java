@@ -0,0 +1,55 @@
+package src.main;
+import java.io.IOException;
+
+/**
+ * CsvRecordReader is the record-at-a-time view of a CSV file used by PopulateDB.
+ * Field views returned by an implementation are only valid until the next call
+ * to next().
+ */
+public interface CsvRecordReader extends AutoCloseable {
+    /**
+     * Advances to the next non-blank record.
+     * @return true if a record was read, false at end of input.
+     * @throws IOException If the input cannot be read.
+     */
+    boolean next() throws IOException;
+
+    /**
+     * @return The number of fields in the current record.
+     */
+    int fieldCount();
+
+    /**
+     * @param index The zero-based field index.
+     * @return A trimmed view of the field, valid until the next call to next().
+     */
+    CharSequence field(int index);
+
+    /**
+     * @return The field views of the current record, valid until the next call to next().
+     */
+    CharSequence[] fields();
+
+    /**
+     * @return The current record as it appeared in the file, without its line terminator.
+     */
+    String rawRecord();
+
+    /**
+     * @return The 1-based line number on which the current record starts.
+     */
+    long lineNumber();
+
+    /**
+     * @return The UTF-8 byte offset just past the current record and its line terminator.
+     */
+    long byteOffset();
+
+    /**
+     * @return The line number at byteOffset(), where the next record starts.
+     */
+    long nextLine();
+
+    @Override
+    void close() throws IOException;
+}
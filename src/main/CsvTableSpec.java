@@ -0,0 +1,75 @@
+package src.main;
+
+/**
+ * CsvTableSpec describes how one CSV file maps onto one database table:
+ * the file, the table, the columns the CSV supplies, and for junction
+ * tables which entity table each column refers to.
+ */
+public class CsvTableSpec {
+    public final String csvFile;
+    public final String table;
+    public final String[] columns;
+    public final String primaryKey; // Surrogate key of an entity table, null for junction tables
+    public final String[] parentTables; // Referenced entity table per column, null for entity tables
+
+    /**
+     * Describes an entity table whose rows are identified by an AUTOINCREMENT key.
+     * The first two columns form the natural key (e.g. name and birthday).
+     */
+    static CsvTableSpec entity(String csvFile, String table, String primaryKey, String... columns) {
+        return new CsvTableSpec(csvFile, table, columns, primaryKey, null);
+    }
+
+    /**
+     * Describes a junction table whose two columns hold 1-based row positions
+     * in the CSV files of the two parent tables.
+     */
+    static CsvTableSpec junction(String csvFile, String table, String column1, String parent1, String column2, String parent2) {
+        return new CsvTableSpec(csvFile, table, new String[]{column1, column2}, null, new String[]{parent1, parent2});
+    }
+
+    private CsvTableSpec(String csvFile, String table, String[] columns, String primaryKey, String[] parentTables) {
+        this.csvFile = csvFile;
+        this.table = table;
+        this.columns = columns;
+        this.primaryKey = primaryKey;
+        this.parentTables = parentTables;
+    }
+
+    /**
+     * Describes the same entity file with the primary key as an extra first
+     * column, for loads that choose the ids themselves.
+     * @return The spec with the primary key prepended to the columns.
+     */
+    CsvTableSpec withIdColumn() {
+        String[] withId = new String[columns.length + 1];
+        withId[0] = primaryKey;
+        System.arraycopy(columns, 0, withId, 1, columns.length);
+        return new CsvTableSpec(csvFile, table, withId, primaryKey, null);
+    }
+
+    /**
+     * @return true if this is a junction table.
+     */
+    public boolean isJunction() {
+        return parentTables != null;
+    }
+
+    /**
+     * @return The natural key columns, i.e. the columns rows are matched on.
+     */
+    public int naturalKeyColumns() {
+        return isJunction() ? columns.length : Math.min(2, columns.length);
+    }
+
+    /**
+     * @return The INSERT statement for the CSV columns.
+     */
+    public String insertSQL() {
+        StringBuilder placeholders = new StringBuilder();
+        for (int i = 0; i < columns.length; i++) {
+            placeholders.append(i == 0 ? "?" : ", ?");
+        }
+        return "INSERT INTO " + table + " (" + String.join(", ", columns) + ") VALUES (" + placeholders + ")";
+    }
+}
@@ -0,0 +1,380 @@
+package src.main;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+/**
+ * CsvTokenizer is a streaming RFC 4180 CSV reader built as a small state machine.
+ * It reads from a Reader through a fixed buffer and reuses its record buffers,
+ * so reading a row does not allocate. Fields are exposed as CharSequence views
+ * that stay valid until the next call to next().
+ *
+ * Quoted fields may contain commas, escaped quotes ("") and line breaks.
+ * Blank lines are skipped, both LF and CRLF line endings are accepted, and
+ * whitespace around each field is trimmed as the old regex-based loader did.
+ */
+public class CsvTokenizer implements CsvRecordReader {
+    private static final int START_FIELD = 0;
+    private static final int UNQUOTED = 1;
+    private static final int QUOTED = 2;
+    private static final int QUOTE_IN_QUOTED = 3;
+
+    private final Reader reader;
+    private final char[] input = new char[64 * 1024];
+    private int inputPos = 0;
+    private int inputLimit = 0;
+    private boolean endOfInput = false;
+
+    // UTF-8 size of the input consumed so far, counted lazily up to countedPos
+    private long countedBytes;
+    private int countedPos = 0;
+
+    // Unescaped field content of the current record, with field boundaries
+    private char[] content = new char[1024];
+    private int contentLength = 0;
+    private int[] fieldStart = new int[16];
+    private int[] fieldEnd = new int[16];
+    private int fieldCount = 0;
+
+    // Raw text of the current record, kept for error messages
+    private char[] raw = new char[1024];
+    private int rawLength = 0;
+
+    private FieldView[] views = new FieldView[0];
+    private CharSequence[] fields = new CharSequence[0];
+
+    private long currentLine;
+    private long recordLine = 0;
+
+    /**
+     * Creates a tokenizer over the given reader.
+     * @param reader The character source; closed when the tokenizer is closed.
+     */
+    public CsvTokenizer(Reader reader) {
+        this(reader, 1);
+    }
+
+    /**
+     * Creates a tokenizer over part of a file.
+     * @param reader The character source; closed when the tokenizer is closed.
+     * @param firstLine The line number of the first character in the reader.
+     */
+    public CsvTokenizer(Reader reader, long firstLine) {
+        this(reader, firstLine, 0);
+    }
+
+    /**
+     * Creates a tokenizer that continues a file from a known position.
+     * @param reader The character source; closed when the tokenizer is closed.
+     * @param firstLine The line number of the first character in the reader.
+     * @param firstByte The byte offset of the first character in the file.
+     */
+    public CsvTokenizer(Reader reader, long firstLine, long firstByte) {
+        this.reader = reader;
+        this.currentLine = firstLine;
+        this.countedBytes = firstByte;
+    }
+
+    /**
+     * Advances to the next non-blank record.
+     * @return true if a record was read, false at end of input.
+     * @throws IOException If the underlying reader fails.
+     */
+    @Override
+    public boolean next() throws IOException {
+        while (true) {
+            if (!readRecord()) {
+                return false;
+            }
+            if (!isBlankRecord()) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * @return The number of fields in the current record.
+     */
+    @Override
+    public int fieldCount() {
+        return fieldCount;
+    }
+
+    /**
+     * Returns a trimmed view of one field in the current record.
+     * @param index The zero-based field index.
+     * @return The field view, valid until the next call to next().
+     */
+    @Override
+    public CharSequence field(int index) {
+        return views[index];
+    }
+
+    /**
+     * Returns the fields of the current record. The array and its views are
+     * reused, so they must be copied if kept past the next call to next().
+     * @return The field views of the current record.
+     */
+    @Override
+    public CharSequence[] fields() {
+        if (fields.length != fieldCount) {
+            fields = Arrays.copyOf(views, fieldCount);
+        }
+        return fields;
+    }
+
+    /**
+     * @return The current record as it appeared in the file, without its line terminator.
+     */
+    @Override
+    public String rawRecord() {
+        return new String(raw, 0, rawLength);
+    }
+
+    /**
+     * @return The 1-based line number on which the current record starts.
+     */
+    @Override
+    public long lineNumber() {
+        return recordLine;
+    }
+
+    /**
+     * @return The UTF-8 byte offset just past the current record and its line terminator.
+     */
+    @Override
+    public long byteOffset() {
+        countBytes(inputPos);
+        return countedBytes;
+    }
+
+    /**
+     * @return The line number at byteOffset(), where the next record starts.
+     */
+    @Override
+    public long nextLine() {
+        return currentLine;
+    }
+
+    /**
+     * Adds the UTF-8 size of the input characters up to the given position.
+     * @param end Position in the input buffer to count up to.
+     */
+    private void countBytes(int end) {
+        for (int i = countedPos; i < end; i++) {
+            countedBytes += utf8Length(input[i]);
+        }
+        countedPos = end;
+    }
+
+    /**
+     * @return The number of bytes the character takes in UTF-8. Each half of a
+     *         surrogate pair counts 2, giving 4 for the pair.
+     */
+    static int utf8Length(char c) {
+        if (c < 0x80) return 1;
+        if (c < 0x800 || Character.isSurrogate(c)) return 2;
+        return 3;
+    }
+
+    /**
+     * Reads one record, blank or not, into the record buffers.
+     * @return true if a record was read, false at end of input.
+     * @throws IOException If the underlying reader fails.
+     */
+    private boolean readRecord() throws IOException {
+        contentLength = 0;
+        rawLength = 0;
+        fieldCount = 0;
+        recordLine = currentLine;
+
+        int state = START_FIELD;
+        int start = 0;
+        int end = 0; // End of the field content, excluding trailing whitespace
+        boolean sawAny = false;
+
+        while (true) {
+            if (inputPos == inputLimit && !fill()) {
+                if (!sawAny) {
+                    return false;
+                }
+                endField(start, end);
+                return true;
+            }
+            char c = input[inputPos++];
+            sawAny = true;
+
+            if (state == QUOTED) {
+                if (c == '"') {
+                    state = QUOTE_IN_QUOTED;
+                } else {
+                    if (c == '\n') currentLine++;
+                    appendContent(c);
+                    if (!isWhitespace(c)) end = contentLength;
+                }
+                appendRaw(c);
+                continue;
+            }
+
+            if (c == '\n' || c == '\r') {
+                currentLine++;
+                if (c == '\r') {
+                    // Take the LF of a CRLF pair now, refilling the buffer if the CR ended it,
+                    // so that byteOffset() and nextLine() are past the whole line terminator
+                    if ((inputPos < inputLimit || fill()) && input[inputPos] == '\n') {
+                        inputPos++;
+                    }
+                }
+                endField(start, end);
+                return true;
+            }
+            appendRaw(c);
+
+            if (c == ',') {
+                endField(start, end);
+                start = contentLength;
+                end = contentLength;
+                state = START_FIELD;
+                continue;
+            }
+
+            switch (state) {
+                case START_FIELD:
+                    if (c == '"') {
+                        state = QUOTED;
+                    } else if (!isWhitespace(c)) {
+                        appendContent(c);
+                        end = contentLength;
+                        state = UNQUOTED;
+                    }
+                    break;
+                case UNQUOTED:
+                    appendContent(c);
+                    if (!isWhitespace(c)) end = contentLength;
+                    break;
+                case QUOTE_IN_QUOTED:
+                    if (c == '"') {
+                        // Escaped quote inside a quoted field
+                        appendContent(c);
+                        end = contentLength;
+                        state = QUOTED;
+                    } else if (!isWhitespace(c)) {
+                        // Text after a closing quote; keep it rather than drop data
+                        appendContent(c);
+                        end = contentLength;
+                        state = UNQUOTED;
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Records the boundaries of a finished field, trimming leading whitespace.
+     * @param start Offset of the field content in the content buffer.
+     * @param end Offset just past the last non-whitespace character.
+     */
+    private void endField(int start, int end) {
+        while (start < end && isWhitespace(content[start])) start++;
+        if (end < start) end = start;
+
+        if (fieldCount == fieldStart.length) {
+            fieldStart = Arrays.copyOf(fieldStart, fieldCount * 2);
+            fieldEnd = Arrays.copyOf(fieldEnd, fieldCount * 2);
+        }
+        fieldStart[fieldCount] = start;
+        fieldEnd[fieldCount] = end;
+        if (fieldCount == views.length) {
+            views = Arrays.copyOf(views, Math.max(16, fieldCount * 2));
+            for (int i = fieldCount; i < views.length; i++) {
+                views[i] = new FieldView(i);
+            }
+        }
+        fieldCount++;
+    }
+
+    /**
+     * @return true if the current record holds nothing but whitespace.
+     */
+    private boolean isBlankRecord() {
+        for (int i = 0; i < rawLength; i++) {
+            if (!isWhitespace(raw[i])) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Refills the input buffer from the reader.
+     * @return true if more characters are available.
+     * @throws IOException If the underlying reader fails.
+     */
+    private boolean fill() throws IOException {
+        if (endOfInput) return false;
+        countBytes(inputLimit);
+        int n = reader.read(input, 0, input.length);
+        if (n <= 0) {
+            endOfInput = true;
+            return false;
+        }
+        countedPos = 0;
+        inputPos = 0;
+        inputLimit = n;
+        return true;
+    }
+
+    private void appendContent(char c) {
+        if (contentLength == content.length) {
+            content = Arrays.copyOf(content, contentLength * 2);
+        }
+        content[contentLength++] = c;
+    }
+
+    private void appendRaw(char c) {
+        if (rawLength == raw.length) {
+            raw = Arrays.copyOf(raw, rawLength * 2);
+        }
+        raw[rawLength++] = c;
+    }
+
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t';
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    /**
+     * A reusable CharSequence over one field of the current record.
+     */
+    private final class FieldView implements CharSequence {
+        private final int index;
+
+        FieldView(int index) {
+            this.index = index;
+        }
+
+        @Override
+        public int length() {
+            return fieldEnd[index] - fieldStart[index];
+        }
+
+        @Override
+        public char charAt(int i) {
+            return content[fieldStart[index] + i];
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return new String(content, fieldStart[index] + start, end - start);
+        }
+
+        @Override
+        public String toString() {
+            return new String(content, fieldStart[index], length());
+        }
+    }
+}
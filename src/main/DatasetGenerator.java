@@ -0,0 +1,484 @@
+package src.main;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.SplittableRandom;
+
+/**
+ * DatasetGenerator writes the nine CSV files that PopulateDB loads, at any
+ * scale, for load and query benchmarks. The output depends only on the seed
+ * and the row counts, so two runs with the same arguments write identical files.
+ *
+ * The data is skewed the way real film data is: cast sizes follow a Zipf
+ * distribution (most films have a small cast, a few have a huge one), and
+ * actors, directors and awards are picked by Zipfian popularity so that a few
+ * of them appear very often. Plots and genre lists contain commas and quotes
+ * and therefore exercise CSV quoting.
+ *
+ * Rows are written as they are generated and nothing is kept per row, so the
+ * files may be far larger than the heap.
+ */
+public class DatasetGenerator {
+    private static final int WRITE_BUFFER_SIZE = 1 << 20;
+    private static final double POPULARITY_EXPONENT = 0.5; // Zipf exponent for picking actors, directors and awards
+
+    private static final String[] FIRST_NAMES = {
+        "James", "Mary", "Robert", "Patricia", "John", "Jennifer", "Michael", "Linda", "David", "Elizabeth",
+        "William", "Barbara", "Richard", "Susan", "Joseph", "Jessica", "Thomas", "Sarah", "Chris", "Karen",
+        "Daniel", "Lisa", "Matthew", "Nancy", "Anthony", "Sandra", "Mark", "Ashley", "Paul", "Emily",
+        "Kenji", "Aiko", "Pedro", "Lucia", "Omar", "Amira", "Ivan", "Olga", "Chen", "Mei",
+        "Raj", "Priya", "Kwame", "Ama", "Lars", "Ingrid", "Mateo", "Sofia", "Noah", "Zoe"
+    };
+    private static final String[] LAST_NAMES = {
+        "Smith", "Johnson", "Williams", "Brown", "Jones", "Garcia", "Miller", "Davis", "Rodriguez", "Martinez",
+        "Hernandez", "Lopez", "Wilson", "Anderson", "Thomas", "Taylor", "Moore", "Jackson", "Martin", "Lee",
+        "Thompson", "White", "Harris", "Clark", "Lewis", "Robinson", "Walker", "Young", "Allen", "King",
+        "Tanaka", "Sato", "Silva", "Costa", "Haddad", "Nasser", "Petrov", "Ivanova", "Wang", "Li",
+        "Patel", "Sharma", "Mensah", "Owusu", "Larsen", "Berg", "Fernandez", "Rossi", "O'Brien", "Nguyen"
+    };
+    private static final String[] TITLE_WORDS = {
+        "Silent", "Dark", "Last", "Broken", "Golden", "Hidden", "Lost", "Endless", "Crimson", "Frozen",
+        "Harbor", "Knight", "Empire", "River", "Shadow", "Garden", "Storm", "Horizon", "Mirror", "Kingdom",
+        "Night", "Journey", "Promise", "Signal", "Fortress", "Echo", "Voyage", "Legacy", "Circle", "Dream"
+    };
+    private static final String[] GENRES = {
+        "Drama", "Action", "Adventure", "Sci-Fi", "Crime", "Comedy", "Romance", "Thriller",
+        "Horror", "Animation", "Fantasy", "Mystery", "Biography", "History", "War", "Music"
+    };
+    private static final String[] PLOT_SUBJECTS = {
+        "A retired detective", "Two estranged sisters", "A young pilot", "An ambitious chef", "A small-town teacher",
+        "A band of thieves", "An exiled prince", "A grieving widower", "A rookie journalist", "An android"
+    };
+    private static final String[] PLOT_ACTIONS = {
+        "uncovers a conspiracy", "sets out on a journey", "must confront the past", "falls in love",
+        "fights for survival", "plans one last heist", "searches for the truth", "tries to save the family farm"
+    };
+    private static final String[] PLOT_TWISTS = {
+        "only to discover that nothing is what it seems", "while a storm closes in",
+        "with help from an unlikely friend", "before time runs out", "as old rivals return",
+        "and learns what \"home\" really means"
+    };
+    private static final String[] AWARD_NAMES = {
+        "Oscar", "Golden Globe", "BAFTA", "Palme d'Or", "Screen Actors Guild Award", "Critics' Choice Award",
+        "Independent Spirit Award", "Golden Lion", "Golden Bear", "Saturn Award"
+    };
+    private static final String[] AWARD_CATEGORIES = {
+        "Best Picture", "Best Director", "Best Actor", "Best Actress", "Best Supporting Actor",
+        "Best Supporting Actress", "Best Original Screenplay", "Best Adapted Screenplay", "Best Cinematography",
+        "Best Film Editing", "Best Original Score", "Best Visual Effects", "Best Costume Design", "Best Sound"
+    };
+
+    /**
+     * Output directory, seed and row counts of the dataset.
+     */
+    static class Scale {
+        String outDir = "generated";
+        long seed = 42;
+        int movies = 1000;
+        int actors = -1; // Defaults to 5 per movie
+        int directors = -1; // Defaults to 1 per 5 movies
+        int awards = AWARD_NAMES.length * AWARD_CATEGORIES.length;
+        long castEdges = -1; // movie_actors rows, defaults to 50 per movie
+
+        /**
+         * Parses the command line arguments.
+         * @param args The command line arguments.
+         * @return The parsed scale with defaults filled in.
+         */
+        static Scale parse(String[] args) {
+            Scale scale = new Scale();
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--out":
+                        scale.outDir = args[++i];
+                        break;
+                    case "--seed":
+                        scale.seed = Long.parseLong(args[++i]);
+                        break;
+                    case "--movies":
+                        scale.movies = Integer.parseInt(args[++i]);
+                        break;
+                    case "--actors":
+                        scale.actors = Integer.parseInt(args[++i]);
+                        break;
+                    case "--directors":
+                        scale.directors = Integer.parseInt(args[++i]);
+                        break;
+                    case "--awards":
+                        scale.awards = Integer.parseInt(args[++i]);
+                        break;
+                    case "--movie-actors":
+                        scale.castEdges = Long.parseLong(args[++i]);
+                        break;
+                    default:
+                        System.err.println("Ignoring unknown option: " + args[i]);
+                }
+            }
+            return scale.withDefaults();
+        }
+
+        Scale withDefaults() {
+            if (actors < 0) actors = (int) Math.min(Integer.MAX_VALUE, 5L * movies);
+            if (directors < 0) directors = Math.max(1, movies / 5);
+            if (castEdges < 0) castEdges = 50L * movies;
+            return this;
+        }
+    }
+
+    /**
+     * Generates a dataset.
+     * Usage: DatasetGenerator [--out DIR] [--seed N] [--movies N] [--actors N]
+     *        [--directors N] [--awards N] [--movie-actors N]
+     * The files are written to DIR (default "generated"); point PopulateDB at
+     * them by copying or linking the directory to csvfiles.
+     * @param args
+     */
+    public static void main(String[] args) {
+        Scale scale;
+        try {
+            scale = Scale.parse(args);
+        } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+            System.err.println("Usage: DatasetGenerator [--out DIR] [--seed N] [--movies N] [--actors N] " +
+                "[--directors N] [--awards N] [--movie-actors N]");
+            return;
+        }
+        if (scale.movies < 1 || scale.actors < 1 || scale.directors < 1 || scale.awards < 1) {
+            System.err.println("Error: every entity table needs at least one row.");
+            return;
+        }
+
+        try {
+            long start = System.nanoTime();
+            generate(new File(scale.outDir), scale);
+            System.out.println(String.format(Locale.ROOT, "Dataset written to %s in %.1f s.", scale.outDir,
+                (System.nanoTime() - start) / 1e9));
+        } catch (IOException e) {
+            System.err.println("Error writing dataset to " + scale.outDir + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Writes all nine CSV files.
+     * @param dir The output directory, created if needed.
+     * @param scale The row counts and seed.
+     * @throws IOException If a file cannot be written.
+     */
+    static void generate(File dir, Scale scale) throws IOException {
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Cannot create directory " + dir);
+        }
+        // Each file gets its own random stream, so changing one count leaves the other files as they were
+        writePeople(new File(dir, "actors.csv"), scale.actors, new SplittableRandom(scale.seed));
+        writeMovies(new File(dir, "movies.csv"), scale.movies, new SplittableRandom(scale.seed + 1));
+        writePeople(new File(dir, "directors.csv"), scale.directors, new SplittableRandom(scale.seed + 2));
+        writeAwards(new File(dir, "awards.csv"), scale.awards);
+        writeCasts(new File(dir, "movie_actors.csv"), scale, new SplittableRandom(scale.seed + 4));
+        writeDirectors(new File(dir, "movie_director.csv"), scale, new SplittableRandom(scale.seed + 5));
+        writeAwardLinks(new File(dir, "movie_awards.csv"), "movie_id,award_id", scale.movies, scale.movies / 20,
+            false, scale.awards, new SplittableRandom(scale.seed + 6));
+        writeAwardLinks(new File(dir, "actor_awards.csv"), "actor_id,award_id", scale.actors, scale.actors / 100,
+            true, scale.awards, new SplittableRandom(scale.seed + 7));
+        writeAwardLinks(new File(dir, "director_awards.csv"), "director_id,award_id", scale.directors,
+            scale.directors / 20, true, scale.awards, new SplittableRandom(scale.seed + 8));
+    }
+
+    private static BufferedWriter open(File file, String header) throws IOException {
+        BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file),
+            StandardCharsets.UTF_8), WRITE_BUFFER_SIZE);
+        writer.write(header);
+        writer.write('\n');
+        return writer;
+    }
+
+    /**
+     * Writes actors.csv or directors.csv: a name and a birthday per row.
+     */
+    private static void writePeople(File file, int count, SplittableRandom random) throws IOException {
+        try (BufferedWriter out = open(file, "name,birthday")) {
+            StringBuilder row = new StringBuilder(64);
+            for (int i = 0; i < count; i++) {
+                row.setLength(0);
+                row.append(FIRST_NAMES[random.nextInt(FIRST_NAMES.length)]).append(' ')
+                    .append(LAST_NAMES[random.nextInt(LAST_NAMES.length)]).append(',');
+                appendDate(row, 1920 + random.nextInt(85), random);
+                out.append(row).write('\n');
+            }
+        }
+    }
+
+    /**
+     * Writes movies.csv. Genre lists with more than one genre and all plots are
+     * quoted since they contain commas; some plots also contain quotes.
+     */
+    private static void writeMovies(File file, int count, SplittableRandom random) throws IOException {
+        try (BufferedWriter out = open(file, "title,release_date,runtime,genre,plot,imdb_rating")) {
+            StringBuilder row = new StringBuilder(256);
+            StringBuilder field = new StringBuilder(160);
+            for (int i = 0; i < count; i++) {
+                row.setLength(0);
+                row.append(TITLE_WORDS[random.nextInt(10)]).append(' ')
+                    .append(TITLE_WORDS[10 + random.nextInt(TITLE_WORDS.length - 10)]);
+                row.append(' ').append(i + 1).append(','); // The number keeps titles unique
+                appendDate(row, 1920 + random.nextInt(106), random);
+                row.append(',').append(75 + random.nextInt(20) + random.nextInt(20) + random.nextInt(60)).append(',');
+
+                field.setLength(0);
+                int genres = 1 + random.nextInt(3);
+                int first = random.nextInt(GENRES.length);
+                for (int g = 0; g < genres; g++) {
+                    if (g > 0) field.append(", ");
+                    field.append(GENRES[(first + g * 5) % GENRES.length]);
+                }
+                appendField(row, field);
+                row.append(',');
+
+                field.setLength(0);
+                field.append(PLOT_SUBJECTS[random.nextInt(PLOT_SUBJECTS.length)]).append(' ')
+                    .append(PLOT_ACTIONS[random.nextInt(PLOT_ACTIONS.length)]).append(", ")
+                    .append(PLOT_TWISTS[random.nextInt(PLOT_TWISTS.length)]).append('.');
+                appendField(row, field);
+
+                // Ratings cluster around 6.5, between 1.0 and 9.9
+                double rating = 6.5 + 1.2 * (random.nextDouble() + random.nextDouble() + random.nextDouble() - 1.5) * 2;
+                int tenths = (int) Math.round(Math.min(9.9, Math.max(1.0, rating)) * 10);
+                row.append(',').append(tenths / 10).append('.').append(tenths % 10);
+                out.append(row).write('\n');
+            }
+        }
+    }
+
+    /**
+     * Writes awards.csv, cycling through award names and categories.
+     */
+    private static void writeAwards(File file, int count) throws IOException {
+        try (BufferedWriter out = open(file, "name,category")) {
+            for (int i = 0; i < count; i++) {
+                String name = AWARD_NAMES[i % AWARD_NAMES.length];
+                String category = AWARD_CATEGORIES[(i / AWARD_NAMES.length) % AWARD_CATEGORIES.length];
+                int round = i / (AWARD_NAMES.length * AWARD_CATEGORIES.length);
+                out.write(name);
+                out.write(',');
+                out.write(round == 0 ? category : category + " " + (round + 1));
+                out.write('\n');
+            }
+        }
+    }
+
+    /**
+     * Writes movie_actors.csv. Cast sizes follow a Zipf distribution whose
+     * exponent is chosen so that the average cast size gives about the
+     * requested number of rows; actors are picked by Zipfian popularity,
+     * without repeating an actor within a movie.
+     */
+    private static void writeCasts(File file, Scale scale, SplittableRandom random) throws IOException {
+        double meanCast = (double) scale.castEdges / scale.movies;
+        int maxCast = (int) Math.min(scale.actors, Math.max(10, Math.round(meanCast * 4)));
+        ZipfSampler castSizes = new ZipfSampler(maxCast, exponentForMean(maxCast, meanCast));
+        ZipfSampler popularity = new ZipfSampler(scale.actors, POPULARITY_EXPONENT);
+        try (BufferedWriter out = open(file, "movie_id,actor_id")) {
+            Set<Integer> cast = new HashSet<>();
+            for (int movie = 1; movie <= scale.movies; movie++) {
+                int size;
+                if (meanCast >= 1) {
+                    size = castSizes.sample(random);
+                } else {
+                    size = random.nextDouble() < meanCast ? 1 : 0; // Fewer rows than movies
+                }
+                cast.clear();
+                while (cast.size() < size) {
+                    // Popular actors are drawn again and again in big casts; fall back to uniform picks then
+                    int actor = cast.size() < size / 2 || random.nextInt(4) > 0
+                        ? popularity.sampleRow(random)
+                        : 1 + random.nextInt(scale.actors);
+                    if (cast.add(actor)) {
+                        writeLink(out, movie, actor);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes movie_director.csv: one director per movie, sometimes two.
+     */
+    private static void writeDirectors(File file, Scale scale, SplittableRandom random) throws IOException {
+        ZipfSampler popularity = new ZipfSampler(scale.directors, POPULARITY_EXPONENT);
+        try (BufferedWriter out = open(file, "movie_id,director_id")) {
+            for (int movie = 1; movie <= scale.movies; movie++) {
+                int director = popularity.sampleRow(random);
+                writeLink(out, movie, director);
+                if (scale.directors > 1 && random.nextInt(10) == 0) {
+                    writeLink(out, movie, director % scale.directors + 1); // Co-director
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes one of the award junction files: a share of the owners win one to
+     * three awards each, with popular awards won more often.
+     * @param owners Number of rows in the owning entity table.
+     * @param winners Approximate number of owners with awards.
+     * @param skewed true to pick winners by Zipfian popularity, so a few win many awards.
+     */
+    private static void writeAwardLinks(File file, String header, int owners, int winners, boolean skewed,
+                                        int awards, SplittableRandom random) throws IOException {
+        ZipfSampler awardPopularity = new ZipfSampler(awards, POPULARITY_EXPONENT);
+        ZipfSampler ownerPopularity = new ZipfSampler(owners, POPULARITY_EXPONENT);
+        try (BufferedWriter out = open(file, header)) {
+            for (int i = 0; i < Math.max(1, winners); i++) {
+                int owner = skewed ? ownerPopularity.sampleRow(random) : 1 + random.nextInt(owners);
+                int wins = 1 + random.nextInt(3);
+                for (int w = 0; w < wins; w++) {
+                    writeLink(out, owner, awardPopularity.sampleRow(random));
+                }
+            }
+        }
+    }
+
+    private static void writeLink(BufferedWriter out, int parent1, int parent2) throws IOException {
+        out.write(Integer.toString(parent1));
+        out.write(',');
+        out.write(Integer.toString(parent2));
+        out.write('\n');
+    }
+
+    private static long gcd(long a, long b) {
+        while (b != 0) {
+            long t = a % b;
+            a = b;
+            b = t;
+        }
+        return a;
+    }
+
+    private static void appendDate(StringBuilder row, int year, SplittableRandom random) {
+        int month = 1 + random.nextInt(12);
+        int day = 1 + random.nextInt(28);
+        row.append(year).append(month < 10 ? "-0" : "-").append(month).append(day < 10 ? "-0" : "-").append(day);
+    }
+
+    /**
+     * Appends a CSV field, quoting it if it contains a comma or a quote.
+     */
+    private static void appendField(StringBuilder row, CharSequence field) {
+        boolean quote = false;
+        for (int i = 0; i < field.length() && !quote; i++) {
+            char c = field.charAt(i);
+            quote = c == ',' || c == '"';
+        }
+        if (!quote) {
+            row.append(field);
+            return;
+        }
+        row.append('"');
+        for (int i = 0; i < field.length(); i++) {
+            char c = field.charAt(i);
+            if (c == '"') row.append('"');
+            row.append(c);
+        }
+        row.append('"');
+    }
+
+    /**
+     * Finds the Zipf exponent whose distribution over 1..n has the given mean,
+     * by bisection; the mean falls as the exponent grows.
+     */
+    static double exponentForMean(int n, double mean) {
+        double low = 0.01, high = 8;
+        for (int i = 0; i < 60; i++) {
+            double mid = (low + high) / 2;
+            if (zipfMean(n, mid) > mean) low = mid;
+            else high = mid;
+        }
+        return (low + high) / 2;
+    }
+
+    private static double zipfMean(int n, double exponent) {
+        double weights = 0, weighted = 0;
+        for (int k = 1; k <= n; k++) {
+            double w = Math.pow(k, -exponent);
+            weights += w;
+            weighted += k * w;
+        }
+        return weighted / weights;
+    }
+
+    /**
+     * Samples ranks 1..n with probability proportional to 1/k^exponent in
+     * constant time and memory, using rejection-inversion (Hormann and
+     * Derflinger, 1996), so it works for millions of ranks.
+     */
+    static class ZipfSampler {
+        private final int n;
+        private final double exponent;
+        private final double hIntegralX1;
+        private final double hIntegralN;
+        private final double s;
+        private final long step; // Coprime with n, so rank -> row id is a bijection
+
+        ZipfSampler(int n, double exponent) {
+            this.n = n;
+            this.exponent = exponent;
+            this.hIntegralX1 = hIntegral(1.5) - 1;
+            this.hIntegralN = hIntegral(n + 0.5);
+            this.s = 2 - hIntegralInverse(hIntegral(2.5) - h(2));
+            long step = 2654435761L % n; // Knuth's multiplicative hash constant
+            while (gcd(step, n) != 1) step++;
+            this.step = step;
+        }
+
+        /**
+         * Samples a row id with Zipfian popularity. Ranks are spread over the
+         * rows, so the popular rows are not simply the first rows of the file.
+         * @return A 1-based row id.
+         */
+        int sampleRow(SplittableRandom random) {
+            return (int) ((sample(random) - 1) * step % n) + 1;
+        }
+
+        int sample(SplittableRandom random) {
+            while (true) {
+                double u = hIntegralN + random.nextDouble() * (hIntegralX1 - hIntegralN);
+                double x = hIntegralInverse(u);
+                int k = (int) (x + 0.5);
+                if (k < 1) k = 1;
+                else if (k > n) k = n;
+                if (k - x <= s || u >= hIntegral(k + 0.5) - h(k)) {
+                    return k;
+                }
+            }
+        }
+
+        private double h(double x) {
+            return Math.exp(-exponent * Math.log(x));
+        }
+
+        private double hIntegral(double x) {
+            double logX = Math.log(x);
+            return helper2((1 - exponent) * logX) * logX;
+        }
+
+        private double hIntegralInverse(double x) {
+            double t = x * (1 - exponent);
+            if (t < -1) t = -1;
+            return Math.exp(helper1(t) * x);
+        }
+
+        // log1p(x)/x, accurate near 0
+        private static double helper1(double x) {
+            return Math.abs(x) > 1e-8 ? Math.log1p(x) / x : 1 - x * (0.5 - x * (1.0 / 3 - 0.25 * x));
+        }
+
+        // expm1(x)/x, accurate near 0
+        private static double helper2(double x) {
+            return Math.abs(x) > 1e-8 ? Math.expm1(x) / x : 1 + x * 0.5 * (1 + x * (1.0 / 3) * (1 + 0.25 * x));
+        }
+    }
+}
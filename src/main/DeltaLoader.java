@@ -0,0 +1,572 @@
+package src.main;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * DeltaLoader implements PopulateDB's incremental mode. Every load records a
+ * SHA-256 content hash and row count per CSV file in Load_Metadata. An
+ * incremental run skips files whose hash has not changed and, for the rest,
+ * applies only the inserted, changed and deleted rows.
+ *
+ * Entity rows are matched on their natural key (title + release_date,
+ * name + birthday, name + category). Junction CSVs refer to entity rows by
+ * their position in the entity CSV, so those positions are translated to the
+ * ids the matched rows actually have before junction pairs are compared.
+ * A junction file is therefore re-diffed when its own hash or the hash of a
+ * parent entity file changed.
+ *
+ * Values are compared and written with the column types of the table (see
+ * TypedBinder), so a rating stored as 8.0 matches the field 8 and a changed
+ * row is stored exactly as a full load would store it. Rows that cannot be
+ * applied go to the table's RejectLog, as in a full load.
+ *
+ * The CSV files are not held in memory: each file that is diffed, and each
+ * parent file whose ids a junction file needs, is streamed through the
+ * tokenizer into a temporary table (Delta_<Table>) and matched against the
+ * database in SQL. Temporary tables go to disk for the run (temp_store =
+ * FILE), so memory use does not grow with the size of the files.
+ */
+public class DeltaLoader {
+
+    /**
+     * Content hash and data row count of one CSV file.
+     */
+    static class Fingerprint {
+        final String hash;
+        final long rowCount;
+
+        Fingerprint(String hash, long rowCount) {
+            this.hash = hash;
+            this.rowCount = rowCount;
+        }
+    }
+
+    /**
+     * Creates the Load_Metadata table if it does not exist yet.
+     * @param connection The database connection.
+     * @throws SQLException If the table cannot be created.
+     */
+    static void ensureMetadataTable(Connection connection) throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("CREATE TABLE IF NOT EXISTS Load_Metadata (" +
+                "csv_file TEXT PRIMARY KEY, " +
+                "content_hash TEXT NOT NULL, " +
+                "row_count INTEGER NOT NULL, " +
+                "loaded_at TEXT NOT NULL)");
+        }
+    }
+
+    /**
+     * Records the fingerprint of every CSV file after a full reload.
+     * @param connection The database connection.
+     * @throws SQLException If the metadata cannot be written.
+     */
+    static void recordFingerprints(Connection connection) throws SQLException {
+        for (CsvTableSpec spec : PopulateDB.TABLES) {
+            try {
+                recordFingerprint(connection, spec.csvFile, fingerprint(spec.csvFile));
+            } catch (IOException e) {
+                System.err.println("Could not fingerprint " + spec.csvFile + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Applies the changes in all CSV files since the last load, in one
+     * transaction. Foreign keys are checked at commit, so rows can be
+     * deleted and re-pointed in any order.
+     * @param connection The database connection.
+     * @throws SQLException If the connection's settings or transaction state cannot be changed.
+     */
+    static void apply(Connection connection) throws SQLException {
+        int tempStore;
+        try (Statement stmt = connection.createStatement()) {
+            try (ResultSet rs = stmt.executeQuery("PRAGMA temp_store;")) {
+                tempStore = rs.getInt(1);
+            }
+            // The staged rows go to a temporary file, not memory
+            stmt.execute("PRAGMA temp_store = FILE;");
+        }
+        boolean previousAutoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("PRAGMA defer_foreign_keys = ON;");
+
+            // Find the files whose content changed since they were last loaded
+            Map<String, Fingerprint> fingerprints = new HashMap<>();
+            Set<String> changedTables = new HashSet<>();
+            for (CsvTableSpec spec : PopulateDB.TABLES) {
+                Fingerprint current = fingerprint(spec.csvFile);
+                Fingerprint stored = storedFingerprint(connection, spec.csvFile);
+                fingerprints.put(spec.table, current);
+                if (stored == null || !stored.hash.equals(current.hash)) {
+                    changedTables.add(spec.table);
+                }
+            }
+
+            Set<String> numbered = new HashSet<>(); // Entity tables whose ids are in Delta_<Table>_Ids
+            for (CsvTableSpec spec : PopulateDB.TABLES) {
+                boolean changed = changedTables.contains(spec.table);
+                if (spec.isJunction()) {
+                    changed |= changedTables.contains(spec.parentTables[0]) || changedTables.contains(spec.parentTables[1]);
+                }
+                if (!changed) {
+                    System.out.println(spec.csvFile + " unchanged, skipped.");
+                    continue;
+                }
+
+                try (RejectLog rejects = new RejectLog(spec.table, false)) {
+                    if (spec.isJunction()) {
+                        numberEntityIds(connection, spec.parentTables[0], numbered);
+                        numberEntityIds(connection, spec.parentTables[1], numbered);
+                        applyJunctionDelta(connection, spec, rejects);
+                    } else {
+                        applyEntityDelta(connection, spec, rejects);
+                        numbered.add(spec.table);
+                    }
+                    rejects.printSummary(spec.csvFile);
+                }
+                recordFingerprint(connection, spec.csvFile, fingerprints.get(spec.table));
+            }
+
+            connection.commit();
+            System.out.println("Incremental reload committed.");
+        } catch (SQLException e) {
+            connection.rollback();
+            if (e.getErrorCode() == 19) { // SQLITE_CONSTRAINT (deferred foreign key check at commit)
+                System.err.println("Incremental reload rolled back: the changes leave rows with missing parents. " +
+                    "Run a full reload instead.");
+            } else {
+                System.err.println("SQL Error " + e.getErrorCode() + " during incremental reload, rolled back: " + e.getMessage());
+            }
+        } catch (IOException e) {
+            connection.rollback();
+            System.err.println("Error reading CSV files during incremental reload, rolled back: " + e.getMessage());
+        } finally {
+            connection.setAutoCommit(previousAutoCommit);
+            dropStagingTables(connection);
+            try (Statement stmt = connection.createStatement()) {
+                stmt.execute("PRAGMA temp_store = " + tempStore + ";");
+            }
+        }
+    }
+
+    /**
+     * Applies the row changes of one entity CSV file, then numbers the ids of
+     * its rows for the junction files (see numberIds).
+     */
+    private static void applyEntityDelta(Connection connection, CsvTableSpec spec, RejectLog rejects)
+            throws SQLException, IOException {
+        stageRows(connection, spec, rejects);
+        matchRows(connection, spec);
+        String staging = "temp." + stagingTable(spec.table);
+        int columnCount = spec.columns.length;
+        int keyColumns = spec.naturalKeyColumns();
+
+        String[] valueColumns = Arrays.copyOfRange(spec.columns, keyColumns, columnCount);
+        String updateSQL = valueColumns.length == 0 ? null :
+            "UPDATE " + spec.table + " SET " + String.join(" = ?, ", valueColumns) + " = ? WHERE " + spec.primaryKey + " = ?";
+        TypedBinder valueBinder = new TypedBinder(connection, spec.table, valueColumns, 1);
+        TypedBinder rowBinder = new TypedBinder(connection, spec.table, spec.columns, 1);
+
+        int inserted = 0;
+        int changed = 0;
+        int deleted;
+        int unchanged = 0;
+
+        // Rows matched on the natural key, with the values they have in the table
+        StringBuilder storedColumns = new StringBuilder();
+        for (String column : valueColumns) {
+            storedColumns.append(", t.").append(column);
+        }
+        String matchedSQL = "SELECT s.line, s.record" + stagedColumns("s.", columnCount) + ", s.db_id" + storedColumns +
+            " FROM " + staging + " s JOIN " + spec.table + " t ON t." + spec.primaryKey + " = s.db_id ORDER BY s.pos";
+        try (PreparedStatement update = updateSQL == null ? null : connection.prepareStatement(updateSQL);
+            Statement select = connection.createStatement();
+            ResultSet rs = select.executeQuery(matchedSQL)) {
+            while (rs.next()) {
+                String[] row = stagedValues(rs, 3, columnCount);
+                long id = rs.getLong(columnCount + 3);
+                Object[] stored = new Object[valueColumns.length];
+                for (int c = 0; c < stored.length; c++) {
+                    stored[c] = rs.getObject(columnCount + 4 + c);
+                }
+                String typeError = valueBinder.stage(0, Arrays.copyOfRange(row, keyColumns, columnCount));
+                if (typeError != null) {
+                    // The stored row is kept as it was
+                    rejects.reject(RejectLog.TYPE_MISMATCH, rs.getLong(1), rs.getString(2),
+                        "Type mismatch in " + spec.csvFile + ": " + typeError);
+                    continue;
+                }
+                if (valueBinder.matches(0, stored)) {
+                    unchanged++;
+                    continue;
+                }
+                // Same natural key, different values: update in place so the id is kept
+                try {
+                    valueBinder.bind(update, 0);
+                    update.setLong(valueColumns.length + 1, id);
+                    update.executeUpdate();
+                    changed++;
+                } catch (SQLException e) {
+                    rejects.reject(RejectLog.reasonFor(e), rs.getLong(1), rs.getString(2), e.getMessage());
+                }
+            }
+        }
+
+        // Rows no longer in the CSV
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("DELETE FROM " + spec.table + " WHERE " + spec.primaryKey +
+                " NOT IN (SELECT db_id FROM " + staging + " WHERE db_id IS NOT NULL)");
+            deleted = changes(stmt);
+        }
+
+        // New rows, inserted in CSV order; the staged row records the id it got
+        try (PreparedStatement insert = connection.prepareStatement(spec.insertSQL());
+            PreparedStatement recordId = connection.prepareStatement("UPDATE " + staging + " SET db_id = ? WHERE pos = ?");
+            Statement lastId = connection.createStatement();
+            Statement select = connection.createStatement();
+            ResultSet rs = select.executeQuery("SELECT s.line, s.record" + stagedColumns("s.", columnCount) +
+                ", s.pos FROM " + staging + " s WHERE s.db_id IS NULL ORDER BY s.pos")) {
+            while (rs.next()) {
+                String typeError = rowBinder.stage(0, stagedValues(rs, 3, columnCount));
+                if (typeError != null) {
+                    rejects.reject(RejectLog.TYPE_MISMATCH, rs.getLong(1), rs.getString(2),
+                        "Type mismatch in " + spec.csvFile + ": " + typeError);
+                    continue;
+                }
+                try {
+                    rowBinder.bind(insert, 0);
+                    insert.executeUpdate();
+                    try (ResultSet id = lastId.executeQuery("SELECT last_insert_rowid()")) {
+                        id.next();
+                        recordId.setLong(1, id.getLong(1));
+                    }
+                    recordId.setLong(2, rs.getLong(columnCount + 3));
+                    recordId.executeUpdate();
+                    inserted++;
+                } catch (SQLException e) {
+                    rejects.reject(RejectLog.reasonFor(e), rs.getLong(1), rs.getString(2), e.getMessage());
+                }
+            }
+        }
+
+        numberIds(connection, spec);
+        System.out.println(spec.csvFile + ": " + inserted + " inserted, " + changed + " changed, " +
+            deleted + " deleted, " + unchanged + " unchanged.");
+    }
+
+    /**
+     * Applies the row changes of one junction CSV file. Pairs are compared
+     * after translating CSV positions to database ids; the tables hold each
+     * pair once, so a pair repeated in the file counts as unchanged.
+     */
+    private static void applyJunctionDelta(Connection connection, CsvTableSpec spec, RejectLog rejects)
+            throws SQLException, IOException {
+        stageRows(connection, spec, rejects);
+        String staging = "temp." + stagingTable(spec.table);
+        String pairs = "temp." + stagingTable(spec.table) + "_Pairs";
+        String translated = staging + " s" +
+            " LEFT JOIN temp." + idsTable(spec.parentTables[0]) + " p1 ON p1.position = s.position1" +
+            " LEFT JOIN temp." + idsTable(spec.parentTables[1]) + " p2 ON p2.position = s.position2";
+        String column1 = spec.columns[0];
+        String column2 = spec.columns[1];
+
+        int inserted;
+        int deleted;
+        long unchanged;
+        try (Statement stmt = connection.createStatement()) {
+            try (ResultSet rs = stmt.executeQuery("SELECT s.line, s.record, s.c0, s.c1, p1.id FROM " + translated +
+                    " WHERE p1.id IS NULL OR p2.id IS NULL ORDER BY s.pos")) {
+                while (rs.next()) {
+                    String reference = rs.getObject(5) == null ? rs.getString(3) : rs.getString(4);
+                    rejects.reject(RejectLog.MISSING_PARENT, rs.getLong(1), rs.getString(2),
+                        "No parent row for " + reference + " in " + spec.csvFile);
+                }
+            }
+
+            // The distinct pairs of the file, in the order they first appear
+            stmt.execute("CREATE TABLE " + pairs + " (id1 INTEGER NOT NULL, id2 INTEGER NOT NULL, " +
+                "first_pos INTEGER NOT NULL, occurrences INTEGER NOT NULL, PRIMARY KEY (id1, id2))");
+            stmt.execute("INSERT INTO " + pairs + " SELECT p1.id, p2.id, MIN(s.pos), COUNT(*) FROM " + translated +
+                " WHERE p1.id IS NOT NULL AND p2.id IS NOT NULL GROUP BY p1.id, p2.id");
+
+            stmt.execute("DELETE FROM " + spec.table + " WHERE NOT EXISTS (SELECT 1 FROM " + pairs +
+                " p WHERE p.id1 = " + spec.table + "." + column1 + " AND p.id2 = " + spec.table + "." + column2 + ")");
+            deleted = changes(stmt);
+            stmt.execute("INSERT INTO " + spec.table + " (" + column1 + ", " + column2 + ")" +
+                " SELECT p.id1, p.id2 FROM " + pairs + " p WHERE NOT EXISTS (SELECT 1 FROM " + spec.table +
+                " t WHERE t." + column1 + " = p.id1 AND t." + column2 + " = p.id2) ORDER BY p.first_pos");
+            inserted = changes(stmt);
+            try (ResultSet rs = stmt.executeQuery("SELECT COALESCE(SUM(occurrences), 0) FROM " + pairs)) {
+                unchanged = rs.getLong(1) - inserted;
+            }
+            stmt.execute("DROP TABLE " + pairs);
+            stmt.execute("DROP TABLE " + staging);
+        }
+
+        System.out.println(spec.csvFile + ": " + inserted + " inserted, " + deleted + " deleted, " +
+            unchanged + " unchanged.");
+    }
+
+    /**
+     * Numbers the ids of an entity file's rows for the junction files,
+     * matching an unchanged file against the table without writing anything.
+     * @param numbered The entity tables already numbered in this run; the table is added.
+     */
+    private static void numberEntityIds(Connection connection, String table, Set<String> numbered)
+            throws SQLException, IOException {
+        if (numbered.contains(table)) return;
+        CsvTableSpec spec = PopulateDB.specFor(table);
+        stageRows(connection, spec, null);
+        matchRows(connection, spec);
+        numberIds(connection, spec);
+        numbered.add(table);
+    }
+
+    /**
+     * Streams the data rows of a CSV file into the temporary table
+     * Delta_<Table>, rejecting rows with the wrong column count. Each staged
+     * row keeps its position in the file, its line number and its text for the
+     * reject log. Entity rows get a db_id column for the id of their row in the
+     * table; junction rows get their parent positions as integers, or null
+     * where the field is not a number.
+     * @param rejects The table's reject log, or null when the file is only read to match ids.
+     */
+    private static void stageRows(Connection connection, CsvTableSpec spec, RejectLog rejects)
+            throws SQLException, IOException {
+        String staging = "temp." + stagingTable(spec.table);
+        int columnCount = spec.columns.length;
+        StringBuilder placeholders = new StringBuilder();
+        for (int i = 0; i < columnCount; i++) {
+            placeholders.append(", ?");
+        }
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("CREATE TABLE " + staging + " (pos INTEGER PRIMARY KEY, line INTEGER NOT NULL, record TEXT" +
+                stagedColumns("", columnCount) +
+                (spec.isJunction() ? ", position1 INTEGER, position2 INTEGER)" : ", db_id INTEGER)"));
+        }
+        String insertSQL = "INSERT INTO " + staging + " (line, record" + stagedColumns("", columnCount) +
+            (spec.isJunction() ? ", position1, position2) VALUES (?, ?" + placeholders + ", ?, ?)" : ") VALUES (?, ?" + placeholders + ")");
+
+        try (CsvTokenizer csv = new CsvTokenizer(PopulateDB.openReader(spec.csvFile));
+            PreparedStatement insert = connection.prepareStatement(insertSQL)) {
+            csv.next(); // Skip the header row
+            while (csv.next()) {
+                if (csv.fieldCount() != columnCount) {
+                    if (rejects != null) {
+                        rejects.reject(RejectLog.COLUMN_COUNT, csv.lineNumber(), csv.rawRecord(), "Column mismatch in " +
+                            spec.csvFile + ": expected " + columnCount + " but got " + csv.fieldCount());
+                    }
+                    continue;
+                }
+                insert.setLong(1, csv.lineNumber());
+                insert.setString(2, rejects == null ? null : csv.rawRecord());
+                String[] values = new String[columnCount];
+                for (int i = 0; i < columnCount; i++) {
+                    CharSequence field = csv.field(i);
+                    values[i] = field.length() == 0 ? null : field.toString();
+                    insert.setString(i + 3, values[i]);
+                }
+                if (spec.isJunction()) {
+                    for (int i = 0; i < 2; i++) {
+                        Long position = position(values[i]);
+                        if (position == null) {
+                            insert.setNull(columnCount + 3 + i, Types.INTEGER);
+                        } else {
+                            insert.setLong(columnCount + 3 + i, position);
+                        }
+                    }
+                }
+                insert.executeUpdate();
+            }
+        }
+    }
+
+    /**
+     * Sets db_id of each staged entity row to the id of the table row with the
+     * same natural key. Rows sharing a key are paired in order: the n-th in the
+     * file with the n-th oldest in the table. Keys are compared as exact text,
+     * whatever the collation of the table's columns.
+     */
+    private static void matchRows(Connection connection, CsvTableSpec spec) throws SQLException {
+        String staging = stagingTable(spec.table);
+        int keyColumns = spec.naturalKeyColumns();
+        List<String> stagedKey = new ArrayList<>();
+        List<String> tableKey = new ArrayList<>();
+        List<String> sameKey = new ArrayList<>();
+        for (int c = 0; c < keyColumns; c++) {
+            stagedKey.add("c" + c + " COLLATE BINARY");
+            tableKey.add(spec.columns[c] + " COLLATE BINARY");
+            sameKey.add("s.c" + c + " IS t." + spec.columns[c] + " COLLATE BINARY");
+        }
+        String sql = "UPDATE temp." + staging + " SET db_id = m.id FROM (" +
+            "SELECT s.pos, t." + spec.primaryKey + " AS id FROM " +
+            "(SELECT pos" + stagedColumns("", keyColumns) + ", ROW_NUMBER() OVER (PARTITION BY " + String.join(", ", stagedKey) +
+            " ORDER BY pos) AS n FROM temp." + staging + ") s JOIN " +
+            "(SELECT " + spec.primaryKey + ", " + String.join(", ", Arrays.copyOf(spec.columns, keyColumns)) +
+            ", ROW_NUMBER() OVER (PARTITION BY " + String.join(", ", tableKey) + " ORDER BY " + spec.primaryKey +
+            ") AS n FROM " + spec.table + ") t " +
+            "ON s.n = t.n AND " + String.join(" AND ", sameKey) + ") m WHERE " + staging + ".pos = m.pos";
+        try (Statement stmt = connection.createStatement()) {
+            stmt.executeUpdate(sql);
+        }
+    }
+
+    /**
+     * Numbers the ids of the staged entity rows that are in the table, in CSV
+     * order, into Delta_<Table>_Ids. As in a full load, position n in a
+     * junction file is the n-th row of the entity file that was loaded. The
+     * staged rows are dropped.
+     */
+    private static void numberIds(Connection connection, CsvTableSpec spec) throws SQLException {
+        String staging = "temp." + stagingTable(spec.table);
+        String ids = "temp." + idsTable(spec.table);
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("CREATE TABLE " + ids + " (position INTEGER PRIMARY KEY, id INTEGER NOT NULL)");
+            stmt.execute("INSERT INTO " + ids + " (id) SELECT db_id FROM " + staging + " WHERE db_id IS NOT NULL ORDER BY pos");
+            stmt.execute("DROP TABLE " + staging);
+        }
+    }
+
+    /**
+     * Drops the temporary tables the rows of a run were staged in.
+     */
+    private static void dropStagingTables(Connection connection) throws SQLException {
+        List<String> tables = new ArrayList<>();
+        try (Statement stmt = connection.createStatement()) {
+            try (ResultSet rs = stmt.executeQuery(
+                    "SELECT name FROM sqlite_temp_master WHERE type = 'table' AND name GLOB 'Delta_*'")) {
+                while (rs.next()) {
+                    tables.add(rs.getString(1));
+                }
+            }
+            for (String table : tables) {
+                stmt.execute("DROP TABLE temp." + table);
+            }
+        }
+    }
+
+    /**
+     * Computes the SHA-256 hash and data row count of a CSV file in one pass.
+     * @param csvFile The path to the CSV file.
+     * @return The file's fingerprint.
+     * @throws IOException If the file cannot be read.
+     */
+    static Fingerprint fingerprint(String csvFile) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException("SHA-256 is not available", e);
+        }
+        long rowCount = 0;
+        try (CsvTokenizer csv = new CsvTokenizer(
+                PopulateDB.openReader(new DigestInputStream(new FileInputStream(PopulateDB.resolveCsvFile(csvFile)), digest)))) {
+            if (csv.next()) { // Header row
+                while (csv.next()) rowCount++;
+            }
+        }
+        StringBuilder hex = new StringBuilder();
+        for (byte b : digest.digest()) {
+            hex.append(String.format("%02x", b));
+        }
+        return new Fingerprint(hex.toString(), rowCount);
+    }
+
+    /**
+     * @return The fingerprint recorded for a file, or null if it was never loaded.
+     */
+    private static Fingerprint storedFingerprint(Connection connection, String csvFile) throws SQLException {
+        try (PreparedStatement pstmt = connection.prepareStatement(
+                "SELECT content_hash, row_count FROM Load_Metadata WHERE csv_file = ?")) {
+            pstmt.setString(1, csvFile);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() ? new Fingerprint(rs.getString(1), rs.getLong(2)) : null;
+            }
+        }
+    }
+
+    /**
+     * Stores the fingerprint of a loaded file.
+     */
+    private static void recordFingerprint(Connection connection, String csvFile, Fingerprint fingerprint) throws SQLException {
+        try (PreparedStatement pstmt = connection.prepareStatement(
+                "INSERT OR REPLACE INTO Load_Metadata (csv_file, content_hash, row_count, loaded_at) " +
+                "VALUES (?, ?, ?, datetime('now'))")) {
+            pstmt.setString(1, csvFile);
+            pstmt.setString(2, fingerprint.hash);
+            pstmt.setLong(3, fingerprint.rowCount);
+            pstmt.executeUpdate();
+        }
+    }
+
+    /**
+     * Parses a 1-based CSV row position.
+     * @return The position, or null if the field is not a number.
+     */
+    private static Long position(String field) {
+        if (field == null) return null;
+        try {
+            return Long.parseLong(field);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return The rows changed by the last statement itself, not counting those
+     *     changed by triggers (executeUpdate counts both).
+     */
+    private static int changes(Statement stmt) throws SQLException {
+        try (ResultSet rs = stmt.executeQuery("SELECT changes()")) {
+            return rs.getInt(1);
+        }
+    }
+
+    private static String stagingTable(String table) {
+        return "Delta_" + table;
+    }
+
+    private static String idsTable(String table) {
+        return "Delta_" + table + "_Ids";
+    }
+
+    /**
+     * @return The staged CSV columns c0 to c(count - 1), each preceded by ", " and the prefix.
+     */
+    private static String stagedColumns(String prefix, int count) {
+        StringBuilder columns = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            columns.append(", ").append(prefix).append('c').append(i);
+        }
+        return columns.toString();
+    }
+
+    /**
+     * Reads staged CSV fields from consecutive result columns.
+     */
+    private static String[] stagedValues(ResultSet rs, int firstColumn, int count) throws SQLException {
+        String[] values = new String[count];
+        for (int i = 0; i < count; i++) {
+            values[i] = rs.getString(firstColumn + i);
+        }
+        return values;
+    }
+}
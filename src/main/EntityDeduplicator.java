@@ -0,0 +1,334 @@
+package src.main;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.PriorityQueue;
+
+/**
+ * EntityDeduplicator finds the rows of an entity CSV file that describe the
+ * same person, keyed on the normalized name plus the birthday. OMDBDataFetcher
+ * writes one actor line per credit, so without this the same actor ends up in
+ * the table once per movie.
+ *
+ * A scan produces the canonical row of every CSV row: the position of the
+ * first row with the same key. A full load with --dedup inserts only the
+ * canonical rows, using their CSV position as the id, and junction rows are
+ * pointed at the canonical row, so the ids stay what the junction files expect.
+ *
+ * Keys are kept in an open-addressing hash index whose keys are packed into
+ * one byte array. If the index would grow past the memory budget, the keys are
+ * spilled to sorted run files instead and duplicates are found by merging the
+ * runs. Either way, the result takes 4 bytes per CSV row.
+ */
+public class EntityDeduplicator {
+    private static final int RECORD_OVERHEAD = 48; // Estimated heap bytes per buffered run record besides the key
+
+    /**
+     * Normalizes a natural key so that spelling variants of the same person
+     * match: Unicode NFKC form, lower case, surrounding whitespace removed and
+     * inner whitespace collapsed. The birthday is only trimmed.
+     * @param name The name field.
+     * @param birthday The birthday field, may be empty.
+     * @return The key as UTF-8 bytes.
+     */
+    public static byte[] normalizedKey(CharSequence name, CharSequence birthday) {
+        String normalized = Normalizer.normalize(name, Normalizer.Form.NFKC).toLowerCase(Locale.ROOT);
+        StringBuilder key = new StringBuilder(normalized.length() + 12);
+        boolean space = false;
+        for (int i = 0; i < normalized.length(); i++) {
+            char c = normalized.charAt(i);
+            if (Character.isWhitespace(c)) {
+                space = key.length() > 0;
+                continue;
+            }
+            if (space) key.append(' ');
+            space = false;
+            key.append(c);
+        }
+        key.append('\u0000').append(birthday.toString().trim());
+        return key.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Scans an entity CSV file and returns the canonical row of each row.
+     * @param path The CSV file to read (plain or gzip-compressed).
+     * @param memoryBudget Bytes the hash index may use before keys are spilled to disk.
+     * @return canonical[i] is the 1-based position of the first row with the same key as
+     *         row i; index 0 is unused. Rows with fewer than two fields are their own canonical row.
+     * @throws IOException If the file or the spill files cannot be read or written.
+     */
+    public static int[] scan(String path, long memoryBudget) throws IOException {
+        int[] canonical = new int[1024];
+        KeyIndex index = new KeyIndex();
+        ExternalSorter sorter = null;
+        int ordinal = 0;
+        try (CsvTokenizer csv = new CsvTokenizer(PopulateDB.openReader(path))) {
+            csv.next(); // Skip the header row
+            while (csv.next()) {
+                ordinal++;
+                if (ordinal == canonical.length) canonical = Arrays.copyOf(canonical, canonical.length * 2);
+                canonical[ordinal] = ordinal;
+                if (csv.fieldCount() < 2) continue;
+
+                byte[] key = normalizedKey(csv.field(0), csv.field(1));
+                if (sorter != null) {
+                    sorter.add(key, ordinal);
+                    continue;
+                }
+                int first = index.putIfAbsent(key, ordinal);
+                if (first != 0) {
+                    canonical[ordinal] = first;
+                } else if (index.memoryBytes() > memoryBudget) {
+                    System.out.println("Deduplication index for " + path + " exceeds " + (memoryBudget >> 10) +
+                        " KB, spilling keys to disk.");
+                    sorter = new ExternalSorter(memoryBudget);
+                    index.spillTo(sorter);
+                    index = null;
+                }
+            }
+        }
+        if (sorter != null) {
+            sorter.resolve(canonical);
+        }
+        return Arrays.copyOf(canonical, ordinal + 1);
+    }
+
+    /**
+     * Counts the rows that are duplicates of an earlier row.
+     * @param canonical The result of scan.
+     * @return The number of rows whose canonical row is another row.
+     */
+    public static int duplicates(int[] canonical) {
+        int duplicates = 0;
+        for (int i = 1; i < canonical.length; i++) {
+            if (canonical[i] != i) duplicates++;
+        }
+        return duplicates;
+    }
+
+    private static long hash(byte[] key) {
+        long h = 0xcbf29ce484222325L; // FNV-1a, then a murmur3 finalizer to spread the low bits
+        for (byte b : key) {
+            h ^= b;
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+     * Open-addressing hash index from key to the position of its first row.
+     * Linear probing over parallel arrays; key bytes live in one growing arena.
+     */
+    private static class KeyIndex {
+        private long[] hashes = new long[1024];
+        private int[] ordinals = new int[1024]; // 0 marks an empty slot
+        private int[] keyOffsets = new int[1024];
+        private int[] keyLengths = new int[1024];
+        private byte[] arena = new byte[64 * 1024];
+        private int arenaSize = 0;
+        private int size = 0;
+
+        /**
+         * Adds a key unless it is present.
+         * @return The ordinal already stored for the key, or 0 if the key was added.
+         */
+        int putIfAbsent(byte[] key, int ordinal) {
+            long h = hash(key);
+            int mask = hashes.length - 1;
+            int slot = (int) h & mask;
+            while (ordinals[slot] != 0) {
+                if (hashes[slot] == h && keyLengths[slot] == key.length &&
+                    Arrays.equals(arena, keyOffsets[slot], keyOffsets[slot] + key.length, key, 0, key.length)) {
+                    return ordinals[slot];
+                }
+                slot = (slot + 1) & mask;
+            }
+            if (arenaSize + key.length > arena.length) {
+                arena = Arrays.copyOf(arena, Math.max(arena.length * 2, arenaSize + key.length));
+            }
+            System.arraycopy(key, 0, arena, arenaSize, key.length);
+            hashes[slot] = h;
+            ordinals[slot] = ordinal;
+            keyOffsets[slot] = arenaSize;
+            keyLengths[slot] = key.length;
+            arenaSize += key.length;
+            if (++size * 2 > hashes.length) grow();
+            return 0;
+        }
+
+        /**
+         * Doubles the slot arrays, placing entries by their stored hash.
+         */
+        private void grow() {
+            long[] oldHashes = hashes;
+            int[] oldOrdinals = ordinals, oldOffsets = keyOffsets, oldLengths = keyLengths;
+            int capacity = oldHashes.length * 2;
+            hashes = new long[capacity];
+            ordinals = new int[capacity];
+            keyOffsets = new int[capacity];
+            keyLengths = new int[capacity];
+            int mask = capacity - 1;
+            for (int i = 0; i < oldHashes.length; i++) {
+                if (oldOrdinals[i] == 0) continue;
+                int slot = (int) oldHashes[i] & mask;
+                while (ordinals[slot] != 0) slot = (slot + 1) & mask;
+                hashes[slot] = oldHashes[i];
+                ordinals[slot] = oldOrdinals[i];
+                keyOffsets[slot] = oldOffsets[i];
+                keyLengths[slot] = oldLengths[i];
+            }
+        }
+
+        long memoryBytes() {
+            return arena.length + (long) hashes.length * (8 + 4 + 4 + 4);
+        }
+
+        /**
+         * Hands every key with its first row to the sorter.
+         */
+        void spillTo(ExternalSorter sorter) throws IOException {
+            for (int i = 0; i < hashes.length; i++) {
+                if (ordinals[i] != 0) {
+                    sorter.add(Arrays.copyOfRange(arena, keyOffsets[i], keyOffsets[i] + keyLengths[i]), ordinals[i]);
+                }
+            }
+        }
+    }
+
+    /**
+     * A key and the position of a row with that key.
+     */
+    private static class Record implements Comparable<Record> {
+        final byte[] key;
+        final int ordinal;
+
+        Record(byte[] key, int ordinal) {
+            this.key = key;
+            this.ordinal = ordinal;
+        }
+
+        @Override
+        public int compareTo(Record other) {
+            int c = Arrays.compareUnsigned(key, other.key);
+            return c != 0 ? c : Integer.compare(ordinal, other.ordinal);
+        }
+    }
+
+    /**
+     * Finds duplicate keys without holding all keys in memory: records are
+     * sorted in memory-sized runs written to temporary files, and the runs are
+     * merged so that equal keys arrive together, first row first.
+     */
+    private static class ExternalSorter {
+        private final long runBudget;
+        private final List<Record> run = new ArrayList<>();
+        private final List<File> runFiles = new ArrayList<>();
+        private long runBytes = 0;
+
+        ExternalSorter(long memoryBudget) {
+            this.runBudget = Math.max(1, memoryBudget);
+        }
+
+        void add(byte[] key, int ordinal) throws IOException {
+            run.add(new Record(key, ordinal));
+            runBytes += key.length + RECORD_OVERHEAD;
+            if (runBytes >= runBudget) writeRun();
+        }
+
+        private void writeRun() throws IOException {
+            if (run.isEmpty()) return;
+            run.sort(null);
+            File file = File.createTempFile("dedup-run", ".bin");
+            file.deleteOnExit();
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 64 * 1024))) {
+                for (Record record : run) {
+                    out.writeInt(record.key.length);
+                    out.write(record.key);
+                    out.writeInt(record.ordinal);
+                }
+            }
+            runFiles.add(file);
+            run.clear();
+            runBytes = 0;
+        }
+
+        /**
+         * Merges the runs and points every row at the first row with its key.
+         */
+        void resolve(int[] canonical) throws IOException {
+            writeRun();
+            List<RunReader> readers = new ArrayList<>();
+            PriorityQueue<RunReader> queue = new PriorityQueue<>((a, b) -> a.current.compareTo(b.current));
+            try {
+                for (File file : runFiles) {
+                    RunReader reader = new RunReader(file);
+                    readers.add(reader);
+                    if (reader.advance()) queue.add(reader);
+                }
+                byte[] groupKey = null;
+                int groupFirst = 0;
+                while (!queue.isEmpty()) {
+                    RunReader reader = queue.poll();
+                    Record record = reader.current;
+                    if (groupKey == null || !Arrays.equals(groupKey, record.key)) {
+                        groupKey = record.key; // Records arrive in key then row order, so this is the first row
+                        groupFirst = record.ordinal;
+                    }
+                    canonical[record.ordinal] = groupFirst;
+                    if (reader.advance()) queue.add(reader);
+                }
+            } finally {
+                for (RunReader reader : readers) reader.close();
+                for (File file : runFiles) file.delete();
+            }
+        }
+    }
+
+    /**
+     * Reads the records of one sorted run file in order.
+     */
+    private static class RunReader implements AutoCloseable {
+        private final DataInputStream in;
+        Record current;
+
+        RunReader(File file) throws IOException {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 64 * 1024));
+        }
+
+        boolean advance() throws IOException {
+            int length;
+            try {
+                length = in.readInt();
+            } catch (EOFException e) {
+                current = null;
+                return false;
+            }
+            byte[] key = new byte[length];
+            in.readFully(key);
+            current = new Record(key, in.readInt());
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+}
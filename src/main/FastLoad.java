@@ -0,0 +1,240 @@
+package src.main;
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * FastLoad switches a connection into bulk-load settings for a full rebuild
+ * and back again afterwards.
+ *
+ * While it is active the journal is kept in memory, fsync is skipped, the page
+ * cache is enlarged, secondary indexes are dropped and foreign keys are not
+ * enforced. finish() recreates the indexes, checks every foreign key in a
+ * single PRAGMA foreign_key_check pass and restores the original settings
+ * with foreign keys back on.
+ *
+ * The SQL of the dropped indexes is saved in the Fast_Load_Indexes table in
+ * the same transaction as the drops. If the load fails or the process dies
+ * before finish(), the next run recreates them with restoreIndexes() before
+ * it does anything else.
+ */
+public class FastLoad {
+    private static final int CACHE_SIZE_KIB = 256 * 1024; // 256 MB page cache during the load
+    static final String INDEX_TABLE = "Fast_Load_Indexes";
+
+    private final Connection connection;
+    private final String journalMode;
+    private final int synchronous;
+    private final int cacheSize;
+    private final int tempStore;
+    private final int droppedIndexes;
+    private boolean finished = false;
+
+    /**
+     * Saves the current settings and applies the bulk-load settings.
+     * Must be called outside a transaction, since foreign_keys and
+     * journal_mode cannot change inside one.
+     * @param connection The database connection.
+     * @throws SQLException If a PRAGMA or DROP INDEX fails.
+     */
+    public FastLoad(Connection connection) throws SQLException {
+        this.connection = connection;
+        restoreIndexes(connection);
+        try (Statement stmt = connection.createStatement()) {
+            journalMode = queryString(stmt, "PRAGMA journal_mode;");
+            synchronous = Integer.parseInt(queryString(stmt, "PRAGMA synchronous;"));
+            cacheSize = Integer.parseInt(queryString(stmt, "PRAGMA cache_size;"));
+            tempStore = Integer.parseInt(queryString(stmt, "PRAGMA temp_store;"));
+
+            // Secondary indexes are rebuilt once at the end instead of updated per row.
+            // Automatic indexes (PRIMARY KEY, UNIQUE) have no SQL and stay in place.
+            // This runs before the journal goes into memory, so the drops and the saved SQL commit together.
+            droppedIndexes = dropIndexes(stmt);
+
+            // MEMORY rather than OFF: batch savepoints still need to roll back
+            stmt.execute("PRAGMA journal_mode = MEMORY;");
+            stmt.execute("PRAGMA synchronous = OFF;");
+            stmt.execute("PRAGMA cache_size = -" + CACHE_SIZE_KIB + ";");
+            stmt.execute("PRAGMA temp_store = MEMORY;");
+            stmt.execute("PRAGMA foreign_keys = OFF;");
+        }
+        System.out.println("Fast load: journal in memory, sync off, " + droppedIndexes +
+            " index(es) and foreign key checks deferred.");
+    }
+
+    /**
+     * Drops every secondary index and saves its SQL in Fast_Load_Indexes, in one transaction.
+     * @return The number of indexes dropped.
+     */
+    private int dropIndexes(Statement stmt) throws SQLException {
+        List<String> names = new ArrayList<>();
+        boolean autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+        try {
+            stmt.execute("CREATE TABLE IF NOT EXISTS " + INDEX_TABLE + " (name TEXT PRIMARY KEY, sql TEXT NOT NULL)");
+            try (ResultSet rs = stmt.executeQuery(
+                    "SELECT name FROM sqlite_master WHERE type = 'index' AND sql IS NOT NULL")) {
+                while (rs.next()) {
+                    names.add(rs.getString("name"));
+                }
+            }
+            stmt.execute("INSERT INTO " + INDEX_TABLE + " (name, sql) " +
+                "SELECT name, sql FROM sqlite_master WHERE type = 'index' AND sql IS NOT NULL;");
+            for (String name : names) {
+                stmt.execute("DROP INDEX \"" + name + "\";");
+            }
+            connection.commit();
+        } catch (SQLException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(autoCommit);
+        }
+        return names.size();
+    }
+
+    /**
+     * Recreates the indexes saved in Fast_Load_Indexes and forgets them, in one
+     * transaction. Does nothing if no fast load left any behind.
+     * @param connection The database connection.
+     * @return The number of indexes recreated.
+     * @throws SQLException If an index cannot be recreated.
+     */
+    static int restoreIndexes(Connection connection) throws SQLException {
+        List<String> indexes = new ArrayList<>();
+        try (Statement stmt = connection.createStatement()) {
+            try (ResultSet rs = connection.getMetaData().getTables(null, null, INDEX_TABLE, null)) {
+                if (!rs.next()) return 0;
+            }
+            try (ResultSet rs = stmt.executeQuery("SELECT sql FROM " + INDEX_TABLE)) {
+                while (rs.next()) {
+                    indexes.add(rs.getString("sql"));
+                }
+            }
+            if (indexes.isEmpty()) return 0;
+
+            boolean autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(false);
+            try {
+                for (String sql : indexes) {
+                    stmt.execute(sql);
+                }
+                stmt.execute("DELETE FROM " + INDEX_TABLE + ";");
+                connection.commit();
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(autoCommit);
+            }
+        }
+        return indexes.size();
+    }
+
+    /**
+     * Recreates the dropped indexes, removes and reports rows that violate a
+     * foreign key, and restores the original settings. The settings are
+     * restored even if the index build or the check fails. Calling it again
+     * does nothing, so a load can also call it on its failure path.
+     * @param report The load report, whose rejected counts take in the removed
+     *               rows; null if there is none.
+     * @throws SQLException If an index cannot be recreated or the check fails.
+     */
+    public void finish(IngestReport report) throws SQLException {
+        if (finished) return;
+        finished = true;
+        try (Statement stmt = connection.createStatement()) {
+            try {
+                restoreIndexes(connection);
+                int violations = checkForeignKeys(stmt, report);
+                if (violations > 0) {
+                    System.err.println(violations + " row(s) removed for foreign key violations.");
+                }
+            } finally {
+                stmt.execute("PRAGMA journal_mode = " + journalMode + ";");
+                stmt.execute("PRAGMA synchronous = " + synchronous + ";");
+                stmt.execute("PRAGMA cache_size = " + cacheSize + ";");
+                stmt.execute("PRAGMA temp_store = " + tempStore + ";");
+                stmt.execute("PRAGMA foreign_keys = ON;");
+            }
+        }
+    }
+
+    /**
+     * Runs PRAGMA foreign_key_check over the whole database, then quarantines
+     * each violating row in its table's reject file, as a rejected insert is,
+     * and deletes it. Rows are found through the tables' foreign key
+     * definitions rather than by rowid, since the junction tables have none.
+     * The CSV line of a removed row is no longer known, so its values are
+     * written as stored, without a line number.
+     * @param stmt A statement on the connection.
+     * @param report The load report, or null.
+     * @return The number of rows removed.
+     * @throws SQLException If the check or a delete fails.
+     */
+    private int checkForeignKeys(Statement stmt, IngestReport report) throws SQLException {
+        Set<String> tables = new LinkedHashSet<>();
+        try (ResultSet rs = stmt.executeQuery("PRAGMA foreign_key_check;")) {
+            while (rs.next()) {
+                tables.add(rs.getString(1));
+            }
+        }
+        if (tables.isEmpty()) return 0;
+
+        int removed = 0;
+        boolean autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+        try {
+            for (String table : tables) {
+                List<String> missing = new ArrayList<>();
+                try (ResultSet rs = stmt.executeQuery("PRAGMA foreign_key_list(" + table + ");")) {
+                    while (rs.next()) {
+                        String column = table + "." + rs.getString("from");
+                        missing.add("(" + column + " IS NOT NULL AND NOT EXISTS (SELECT 1 FROM " + rs.getString("table") +
+                            " p WHERE p." + rs.getString("to") + " = " + column + "))");
+                    }
+                }
+                List<String> columns = new ArrayList<>();
+                try (ResultSet rs = stmt.executeQuery("PRAGMA table_info(" + table + ");")) {
+                    while (rs.next()) {
+                        columns.add(rs.getString("name"));
+                    }
+                }
+                String orphans = " FROM " + table + " WHERE " + String.join(" OR ", missing);
+                try (RejectLog rejects = new RejectLog(table, true)) {
+                    try (ResultSet row = stmt.executeQuery("SELECT " + String.join(", ", columns) + orphans)) {
+                        while (row.next()) {
+                            List<String> values = new ArrayList<>();
+                            for (int c = 1; c <= columns.size(); c++) {
+                                values.add(row.getString(c));
+                            }
+                            rejects.reject(RejectLog.MISSING_PARENT, 0, String.join(",", values),
+                                "FOREIGN KEY constraint failed (" + table + ")");
+                        }
+                    }
+                    rejects.printSummary(table);
+                }
+                int count = stmt.executeUpdate("DELETE" + orphans);
+                if (report != null) {
+                    report.recordRemoved(table, count);
+                }
+                removed += count;
+            }
+            connection.commit();
+        } catch (SQLException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(autoCommit);
+        }
+        return removed;
+    }
+
+    private static String queryString(Statement stmt, String sql) throws SQLException {
+        try (ResultSet rs = stmt.executeQuery(sql)) {
+            return rs.next() ? rs.getString(1) : null;
+        }
+    }
+}
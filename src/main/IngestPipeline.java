@@ -0,0 +1,211 @@
+package src.main;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * IngestPipeline parses a CSV file on several threads while the caller stays the
+ * single database writer. A reader thread cuts the input into chunks of whole
+ * records, parse workers tokenize and validate chunks in parallel, and the
+ * caller takes the parsed chunks back in file order.
+ *
+ * The queue between the stages is bounded, so a slow writer blocks the reader
+ * and memory use stays flat no matter how large the file is.
+ */
+public class IngestPipeline implements AutoCloseable {
+    private static final int RECORDS_PER_CHUNK = 1000;
+
+    /**
+     * One chunk of parsed records, in file order. A record that failed
+     * validation has null values and an error message instead.
+     */
+    public static class ParsedChunk {
+        public final List<String[]> values = new ArrayList<>();
+        public final List<String> lines = new ArrayList<>();
+        public final List<Long> lineNumbers = new ArrayList<>();
+        public final List<Long> byteOffsets = new ArrayList<>(); // Byte offset just past each record
+        public final List<Long> nextLines = new ArrayList<>(); // Line number at that offset
+        public final List<String> errors = new ArrayList<>();
+    }
+
+    private static final ParsedChunk END = new ParsedChunk();
+
+    private final BlockingQueue<Future<ParsedChunk>> queue;
+    private final ExecutorService workers;
+    private final Thread readerThread;
+    private volatile boolean closed = false;
+
+    /**
+     * Starts the reader and parse workers.
+     * @param source The CSV input; closed when the reader stage finishes.
+     * @param workerCount Number of parse threads.
+     * @param expectedColumns Number of columns each record must have.
+     * @param csvFile The file name, used in error messages.
+     * @param skipHeader true if the first record is a header to skip.
+     */
+    public IngestPipeline(Reader source, int workerCount, int expectedColumns, String csvFile, boolean skipHeader) {
+        this(source, workerCount, expectedColumns, csvFile, skipHeader, 1, 0);
+    }
+
+    /**
+     * Starts the reader and parse workers on input that continues a file from a known position.
+     * @param source The CSV input; closed when the reader stage finishes.
+     * @param workerCount Number of parse threads.
+     * @param expectedColumns Number of columns each record must have.
+     * @param csvFile The file name, used in error messages.
+     * @param skipHeader true if the first record is a header to skip.
+     * @param firstLine The line number of the first character in the source.
+     * @param firstByte The byte offset of the first character in the file.
+     */
+    public IngestPipeline(Reader source, int workerCount, int expectedColumns, String csvFile, boolean skipHeader,
+                          long firstLine, long firstByte) {
+        this.queue = new ArrayBlockingQueue<>(workerCount * 2);
+        this.workers = Executors.newFixedThreadPool(workerCount, runnable -> {
+            Thread thread = new Thread(runnable, "csv-parse");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.readerThread = new Thread(() -> readChunks(source, expectedColumns, csvFile, skipHeader, firstLine, firstByte), "csv-reader");
+        this.readerThread.setDaemon(true);
+        this.readerThread.start();
+    }
+
+    /**
+     * Returns the next parsed chunk in file order, blocking until it is ready.
+     * @return The chunk, or null once the whole file has been parsed.
+     * @throws IOException If reading or parsing the file failed.
+     */
+    public ParsedChunk nextChunk() throws IOException {
+        try {
+            ParsedChunk chunk = queue.take().get();
+            return chunk == END ? null : chunk;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for parsed rows", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) throw (IOException) cause;
+            throw new IOException("Parse worker failed: " + cause.getMessage(), cause);
+        }
+    }
+
+    /**
+     * Reader stage: cuts the input into chunks of complete records and hands
+     * each chunk to a parse worker. A record ends at a line feed outside
+     * quotes, so quoted fields with embedded newlines are never split. Line
+     * terminators are kept, so workers can work out exact byte offsets.
+     */
+    private void readChunks(Reader source, int expectedColumns, String csvFile, boolean skipHeader,
+                            long firstLine, long firstByte) {
+        try (Reader in = source) {
+            char[] buffer = new char[64 * 1024];
+            StringBuilder chunk = new StringBuilder();
+            int records = 0;
+            long lineNumber = firstLine;
+            long byteOffset = firstByte;
+            long chunkFirstLine = firstLine;
+            long chunkFirstByte = firstByte;
+            boolean inQuotes = false;
+            boolean header = skipHeader;
+            int n;
+
+            while (!closed && (n = in.read(buffer, 0, buffer.length)) > 0) {
+                for (int i = 0; i < n; i++) {
+                    char c = buffer[i];
+                    byteOffset += CsvTokenizer.utf8Length(c);
+                    if (c == '"') inQuotes = !inQuotes;
+                    if (!header) chunk.append(c);
+                    if (c != '\n') continue;
+                    lineNumber++;
+                    if (inQuotes) continue;
+                    if (header) {
+                        // Drop the header record, which may itself span several lines
+                        header = false;
+                        chunkFirstLine = lineNumber;
+                        chunkFirstByte = byteOffset;
+                    } else if (++records >= RECORDS_PER_CHUNK) {
+                        submit(chunk.toString(), chunkFirstLine, chunkFirstByte, expectedColumns, csvFile);
+                        chunk.setLength(0);
+                        records = 0;
+                        chunkFirstLine = lineNumber;
+                        chunkFirstByte = byteOffset;
+                    }
+                }
+            }
+            if (chunk.length() > 0) {
+                submit(chunk.toString(), chunkFirstLine, chunkFirstByte, expectedColumns, csvFile);
+            }
+            queue.put(CompletableFuture.completedFuture(END));
+        } catch (InterruptedException e) {
+            // Pipeline was closed while the queue was full
+        } catch (Throwable e) {
+            // Any failure, not only an IOException, must reach the writer waiting in nextChunk()
+            CompletableFuture<ParsedChunk> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+            try {
+                queue.put(failed); // Waits for room like any chunk, rather than being dropped when the queue is full
+            } catch (InterruptedException closedMeanwhile) {
+                // Pipeline was closed, so nobody is waiting for the failure
+            }
+        }
+    }
+
+    /**
+     * Submits one chunk to the workers, blocking while the queue is full.
+     */
+    private void submit(String text, long firstLine, long firstByte, int expectedColumns, String csvFile)
+            throws InterruptedException {
+        queue.put(workers.submit(() -> parseChunk(text, firstLine, firstByte, expectedColumns, csvFile)));
+    }
+
+    /**
+     * Parse stage: tokenizes a chunk, checks column counts and converts
+     * empty fields to null.
+     */
+    private static ParsedChunk parseChunk(String text, long firstLine, long firstByte, int expectedColumns, String csvFile)
+            throws IOException {
+        ParsedChunk parsed = new ParsedChunk();
+        try (CsvTokenizer csv = new CsvTokenizer(new StringReader(text), firstLine, firstByte)) {
+            while (csv.next()) {
+                parsed.lines.add(csv.rawRecord());
+                parsed.lineNumbers.add(csv.lineNumber());
+                parsed.byteOffsets.add(csv.byteOffset());
+                parsed.nextLines.add(csv.nextLine());
+                if (csv.fieldCount() != expectedColumns) {
+                    parsed.values.add(null);
+                    parsed.errors.add("Column mismatch in " + csvFile + ": expected " +
+                        expectedColumns + " but got " + csv.fieldCount());
+                    continue;
+                }
+                String[] values = new String[expectedColumns];
+                for (int i = 0; i < expectedColumns; i++) {
+                    CharSequence field = csv.field(i);
+                    values[i] = field.length() == 0 ? null : field.toString();
+                }
+                parsed.values.add(values);
+                parsed.errors.add(null);
+            }
+        }
+        return parsed;
+    }
+
+    /**
+     * Stops the reader and workers, discarding any chunks not yet taken.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        readerThread.interrupt();
+        workers.shutdownNow();
+        queue.clear();
+    }
+}
@@ -0,0 +1,237 @@
+package src.main;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * IngestReport collects per-table metrics during a full load: rows read,
+ * inserted and rejected, where the time went and how long each commit took.
+ * It also records the rows written per batch, which vary under --target-commit-ms.
+ * It prints a summary table at the end of the load and can also write the
+ * same numbers as JSON, so load times can be compared across releases.
+ *
+ * JDBC time is measured around executeBatch and commit calls. Parse time is
+ * the rest of the table's wall time: reading, tokenizing and staging values,
+ * or waiting for the parse threads in pipelined mode.
+ */
+public class IngestReport {
+    // Upper bounds of the commit latency buckets in milliseconds; the last bucket is unbounded
+    static final long[] COMMIT_BUCKETS_MS = {1, 2, 5, 10, 20, 50, 100, 200, 500, 1000};
+
+    private final List<TableStats> tables = new ArrayList<>();
+    private final long startNanos = System.nanoTime();
+    private long totalNanos = 0;
+
+    /**
+     * The metrics of one table.
+     */
+    public static class TableStats {
+        final String table;
+        final String csvFile;
+        long rowsRead = 0;
+        long rowsInserted = 0;
+        long rowsRejected = 0;
+        long rowsMerged = 0; // Duplicates merged into an earlier row by --dedup, or repeated junction pairs
+        long wallNanos = 0;
+        long jdbcNanos = 0;
+        final long[] commitLatencies = new long[COMMIT_BUCKETS_MS.length + 1]; // Commits per bucket
+        long maxCommitNanos = 0;
+        long batches = 0;
+        int minBatchSize = 0;
+        int maxBatchSize = 0;
+        int lastBatchSize = 0;
+        boolean failed = false; // The load stopped with an error, so the table may hold only part of the file
+
+        TableStats(String table, String csvFile) {
+            this.table = table;
+            this.csvFile = csvFile;
+        }
+
+        /**
+         * Records the duration of one commit.
+         * @param nanos The time the commit took.
+         */
+        void recordCommit(long nanos) {
+            long millis = nanos / 1_000_000;
+            int bucket = 0;
+            while (bucket < COMMIT_BUCKETS_MS.length && millis >= COMMIT_BUCKETS_MS[bucket]) bucket++;
+            commitLatencies[bucket]++;
+            maxCommitNanos = Math.max(maxCommitNanos, nanos);
+        }
+
+        /**
+         * Records the number of rows written in one batch, which is below the
+         * batch size for the last batch of a table.
+         * @param size The rows in the batch.
+         */
+        void recordBatch(int size) {
+            minBatchSize = batches == 0 ? size : Math.min(minBatchSize, size);
+            maxBatchSize = Math.max(maxBatchSize, size);
+            lastBatchSize = size;
+            batches++;
+        }
+
+        long commits() {
+            long commits = 0;
+            for (long count : commitLatencies) commits += count;
+            return commits;
+        }
+
+        long parseNanos() {
+            return Math.max(0, wallNanos - jdbcNanos);
+        }
+
+        double rowsPerSecond() {
+            return wallNanos == 0 ? 0 : rowsInserted * 1e9 / wallNanos;
+        }
+    }
+
+    /**
+     * Adds a table to the report, in load order.
+     * @param spec The table being loaded.
+     * @return The table's metrics, to be filled in during its load.
+     */
+    TableStats table(CsvTableSpec spec) {
+        TableStats stats = new TableStats(spec.table, spec.csvFile);
+        tables.add(stats);
+        return stats;
+    }
+
+    /**
+     * Counts rows that were inserted but removed again after the load, such
+     * as the foreign key orphans of a fast load, as rejected instead.
+     * @param table The table the rows were removed from; ignored if it was not loaded from a CSV file.
+     * @param rows The number of rows removed.
+     */
+    void recordRemoved(String table, long rows) {
+        TableStats stats = stats(table);
+        if (stats != null) {
+            stats.rowsInserted -= rows;
+            stats.rowsRejected += rows;
+        }
+    }
+
+    /**
+     * @param table The table name.
+     * @return The metrics of the table, or null if it was not loaded from a CSV file.
+     */
+    TableStats stats(String table) {
+        for (TableStats stats : tables) {
+            if (stats.table.equals(table)) return stats;
+        }
+        return null;
+    }
+
+    /**
+     * Marks the end of the load, including any work done after the last table.
+     */
+    void finish() {
+        totalNanos = System.nanoTime() - startNanos;
+    }
+
+    /**
+     * Prints the per-table summary.
+     */
+    void printSummary() {
+        System.out.println(String.format(Locale.ROOT, "%-16s %10s %10s %9s %9s %9s %9s %11s %8s",
+            "Table", "Read", "Inserted", "Rejected", "Merged", "Parse s", "JDBC s", "Rows/s", "Commits"));
+        long read = 0, inserted = 0, rejected = 0;
+        for (TableStats stats : tables) {
+            System.out.println(String.format(Locale.ROOT, "%-16s %10d %10d %9d %9d %9.2f %9.2f %11.0f %8d",
+                stats.table, stats.rowsRead, stats.rowsInserted, stats.rowsRejected, stats.rowsMerged,
+                stats.parseNanos() / 1e9, stats.jdbcNanos / 1e9, stats.rowsPerSecond(), stats.commits()));
+            if (stats.commits() > 0) {
+                System.out.println("    commit latency: " + histogram(stats) +
+                    String.format(Locale.ROOT, " (max %.1f ms)", stats.maxCommitNanos / 1e6));
+            }
+            if (stats.minBatchSize != stats.maxBatchSize) {
+                System.out.println("    rows per batch: " + stats.minBatchSize + " to " + stats.maxBatchSize + ", last " +
+                    stats.lastBatchSize + " (" + stats.batches + " batches)");
+            }
+            read += stats.rowsRead;
+            inserted += stats.rowsInserted;
+            rejected += stats.rowsRejected;
+        }
+        System.out.println(String.format(Locale.ROOT, "Total: %d read, %d inserted, %d rejected in %.2f s",
+            read, inserted, rejected, totalNanos / 1e9));
+    }
+
+    /**
+     * Formats the non-empty latency buckets of a table, such as "<1ms 3, <5ms 1".
+     */
+    private static String histogram(TableStats stats) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < stats.commitLatencies.length; i++) {
+            if (stats.commitLatencies[i] == 0) continue;
+            if (text.length() > 0) text.append(", ");
+            text.append(bucketLabel(i)).append(' ').append(stats.commitLatencies[i]);
+        }
+        return text.toString();
+    }
+
+    private static String bucketLabel(int bucket) {
+        return bucket < COMMIT_BUCKETS_MS.length ? "<" + COMMIT_BUCKETS_MS[bucket] + "ms"
+            : ">=" + COMMIT_BUCKETS_MS[COMMIT_BUCKETS_MS.length - 1] + "ms";
+    }
+
+    /**
+     * @return The report as JSON.
+     */
+    JSONObject toJson() {
+        JSONObject report = new JSONObject();
+        report.put("finished_at", Instant.now().toString());
+        report.put("total_seconds", totalNanos / 1e9);
+        JSONArray tableArray = new JSONArray();
+        for (TableStats stats : tables) {
+            JSONObject table = new JSONObject();
+            table.put("table", stats.table);
+            table.put("csv_file", stats.csvFile);
+            table.put("rows_read", stats.rowsRead);
+            table.put("rows_inserted", stats.rowsInserted);
+            table.put("rows_rejected", stats.rowsRejected);
+            table.put("rows_merged", stats.rowsMerged);
+            table.put("wall_seconds", stats.wallNanos / 1e9);
+            table.put("parse_seconds", stats.parseNanos() / 1e9);
+            table.put("jdbc_seconds", stats.jdbcNanos / 1e9);
+            table.put("rows_per_second", stats.rowsPerSecond());
+            table.put("commits", stats.commits());
+            table.put("max_commit_ms", stats.maxCommitNanos / 1e6);
+            JSONArray histogram = new JSONArray(); // Buckets in ascending order; the last has no upper bound
+            for (int i = 0; i < stats.commitLatencies.length; i++) {
+                JSONObject bucket = new JSONObject();
+                if (i < COMMIT_BUCKETS_MS.length) bucket.put("below_ms", COMMIT_BUCKETS_MS[i]);
+                bucket.put("commits", stats.commitLatencies[i]);
+                histogram.put(bucket);
+            }
+            table.put("commit_latency", histogram);
+            JSONObject batchSize = new JSONObject();
+            batchSize.put("min", stats.minBatchSize);
+            batchSize.put("max", stats.maxBatchSize);
+            batchSize.put("last", stats.lastBatchSize);
+            table.put("batches", stats.batches);
+            table.put("batch_size", batchSize);
+            tableArray.put(table);
+        }
+        report.put("tables", tableArray);
+        return report;
+    }
+
+    /**
+     * Writes the report as JSON.
+     * @param file The file to write.
+     * @throws IOException If the file cannot be written.
+     */
+    void writeJson(String file) throws IOException {
+        try (Writer writer = Files.newBufferedWriter(Paths.get(file), StandardCharsets.UTF_8)) {
+            toJson().write(writer, 2, 0);
+        }
+    }
+}
@@ -1,24 +1,23 @@
 package src.main;
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
 import java.sql.Connection;
 import java.sql.DatabaseMetaData;
 import java.sql.DriverManager;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.sql.Statement;
 
 /**
  * InitialiseDB class creates and initializes the movie database schema.
- * It deletes any existing database file, creates a new one, and executes
- * the DDL statements to create all required tables.
+ * A new database is created from schema.ddl, and an existing one is brought
+ * up to date by applying the pending scripts in migrations/ (see
+ * SchemaMigrator), keeping its rows. With --rebuild the existing database
+ * file is deleted first and a new one created.
  */
 public class InitialiseDB {
     /**
      * Main method that initializes the database.
-     * @param args Command line arguments (not used)
+     * @param args Command line arguments: --rebuild to delete and recreate the database
      */
     public static void main(String[] args) {
         // Load JDBC driver
@@ -32,15 +31,27 @@ public class InitialiseDB {
         
         String dbFile = "database.db";
         String ddlFile = "schema.ddl";
+        boolean rebuild = false;
+        for (String arg : args) {
+            if (arg.equals("--rebuild")) {
+                rebuild = true;
+            } else {
+                System.err.println("Unknown option: " + arg);
+                System.err.println("Usage: java InitialiseDB [--rebuild]");
+                return;
+            }
+        }
         
-        // Delete existing database file if it exists
+        // Delete existing database file if a rebuild was asked for
         File file = new File(dbFile);
-        if (file.exists()) {
+        boolean existed = file.exists();
+        if (existed && rebuild) {
             if (!file.delete()) {
                 System.err.println("Failed to delete the existing database file.");
                 return;
             }
             System.out.println("Existing database file deleted.");
+            existed = false;
         }
         
         // Create a connection to an SQLite database
@@ -49,10 +60,11 @@ public class InitialiseDB {
                 System.err.println("Failed to create database connection.");
                 return;
             }
-            System.out.println("New database file created: " + dbFile);
+            System.out.println(existed ? "Migrating existing database: " + dbFile
+                    : "New database file created: " + dbFile);
             
-            // Execute DDL statements
-            executeDDL(connection, ddlFile);
+            // Create the schema or apply the pending migrations
+            SchemaMigrator.migrate(connection, ddlFile, SchemaMigrator.MIGRATIONS_DIR);
             
             // Verify tables were created
             if (verifyTables(connection)) {
@@ -64,37 +76,8 @@ public class InitialiseDB {
         } catch (SQLException e) {
             System.err.println("SQL error while creating database: " + e.getMessage());
             e.printStackTrace();
-        }
-    }
-    
-    /**
-     * Executes the DDL statements from the specified file.
-     * @param connection The database connection
-     * @param ddlFile The path to the DDL file
-     */
-    private static void executeDDL(Connection connection, String ddlFile) {
-        try (BufferedReader br = new BufferedReader(new FileReader(ddlFile));
-            Statement statement = connection.createStatement()) {
-            String line;
-            StringBuilder sql = new StringBuilder();
-            
-            while ((line = br.readLine()) != null) { //Read DDL
-                line = line.trim();
-                if (!line.isEmpty() && !line.startsWith("--")) { // Ignore empty lines and comments
-                    sql.append(line).append(" ");
-                    if (line.endsWith(";")) { // Execute complete SQL statements
-                        statement.executeUpdate(sql.toString());
-                        sql.setLength(0); // Reset the StringBuilder
-                    }
-                }
-            }
-            System.out.println("DDL statements executed successfully.");
         } catch (IOException e) {
-            System.err.println("Error reading DDL file: " + e.getMessage());
-            throw new RuntimeException("DDL file reading failed", e);
-        } catch (SQLException e) {
-            System.err.println("SQL error executing DDL file: " + e.getMessage());
-            throw new RuntimeException("DDL execution failed", e);
+            System.err.println("Error reading schema scripts: " + e.getMessage());
         }
     }
     
@@ -103,7 +86,7 @@ public class InitialiseDB {
      * @param connection The database connection
      * @return true if all tables exist, false otherwise
      */
-    private static boolean verifyTables(Connection connection) {
+    static boolean verifyTables(Connection connection) {
         // List of all tables defined in the DDL file
         String[] expectedTables = {
             "Actors", 
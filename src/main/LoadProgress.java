@@ -0,0 +1,95 @@
+package src.main;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * LoadProgress is the checkpoint of one CSV file during a full load: how far
+ * into the file the committed rows reach. It is saved in the Load_Progress
+ * table inside the same transaction as the rows it describes, so after a crash
+ * the table always matches the data that actually made it to disk.
+ */
+public class LoadProgress {
+    final String csvFile;
+    long byteOffset = 0; // Byte offset just past the last committed record
+    long nextLine = 1; // Line number at byteOffset
+    boolean completed = false;
+
+    LoadProgress(String csvFile) {
+        this.csvFile = csvFile;
+    }
+
+    /**
+     * Creates the Load_Progress table if it does not exist yet.
+     * @param connection The database connection.
+     * @throws SQLException If the table cannot be created.
+     */
+    static void ensureTable(Connection connection) throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("CREATE TABLE IF NOT EXISTS Load_Progress (" +
+                "csv_file TEXT PRIMARY KEY, " +
+                "byte_offset INTEGER NOT NULL, " +
+                "line_number INTEGER NOT NULL, " +
+                "completed INTEGER NOT NULL)");
+        }
+    }
+
+    /**
+     * Forgets all checkpoints, for a load that starts from empty tables.
+     * @param connection The database connection.
+     * @throws SQLException If the table cannot be cleared.
+     */
+    static void clear(Connection connection) throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("DELETE FROM Load_Progress;");
+        }
+    }
+
+    /**
+     * Reads the checkpoint of a file.
+     * @param connection The database connection.
+     * @param csvFile The CSV file path.
+     * @return The saved checkpoint, or a checkpoint at the start of the file if none was saved.
+     * @throws SQLException If the table cannot be read.
+     */
+    static LoadProgress lookup(Connection connection, String csvFile) throws SQLException {
+        LoadProgress progress = new LoadProgress(csvFile);
+        try (PreparedStatement pstmt = connection.prepareStatement(
+                "SELECT byte_offset, line_number, completed FROM Load_Progress WHERE csv_file = ?")) {
+            pstmt.setString(1, csvFile);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (rs.next()) {
+                    progress.byteOffset = rs.getLong("byte_offset");
+                    progress.nextLine = rs.getLong("line_number");
+                    progress.completed = rs.getInt("completed") != 0;
+                }
+            }
+        }
+        return progress;
+    }
+
+    /**
+     * Writes the checkpoint as part of the connection's open transaction.
+     * @param connection The database connection.
+     * @throws SQLException If the row cannot be written.
+     */
+    void save(Connection connection) throws SQLException {
+        try (PreparedStatement pstmt = connection.prepareStatement(
+                "INSERT OR REPLACE INTO Load_Progress (csv_file, byte_offset, line_number, completed) VALUES (?, ?, ?, ?)")) {
+            pstmt.setString(1, csvFile);
+            pstmt.setLong(2, byteOffset);
+            pstmt.setLong(3, nextLine);
+            pstmt.setInt(4, completed ? 1 : 0);
+            pstmt.executeUpdate();
+        }
+    }
+
+    /**
+     * @return true if the file has been started but not finished.
+     */
+    boolean isPartial() {
+        return !completed && byteOffset > 0;
+    }
+}
@@ -0,0 +1,419 @@
+package src.main;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * MappedCsvReader reads a UTF-8 CSV file through FileChannel.map instead of a
+ * decoding Reader. Record and field boundaries are found by scanning the mapped
+ * bytes directly, and a field is only decoded when the caller reads it.
+ *
+ * The file is mapped one segment at a time, so files larger than 2 GB work.
+ * When a record crosses the end of a segment, the next segment is mapped from
+ * the start of that record. Parsing follows the same RFC 4180 rules as
+ * CsvTokenizer.
+ */
+public class MappedCsvReader implements CsvRecordReader {
+    private static final int DEFAULT_SEGMENT_SIZE = 256 * 1024 * 1024;
+
+    private static final int START_FIELD = 0;
+    private static final int UNQUOTED = 1;
+    private static final int QUOTED = 2;
+    private static final int QUOTE_IN_QUOTED = 3;
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final long fileSize;
+    private int segmentSize;
+
+    private MappedByteBuffer buffer;
+    private long segmentStart = 0;
+    private int pos = 0;
+
+    // Current record: field byte ranges in the mapped segment, or in scratch
+    // when a quoted field had to be unescaped
+    private int recordStart = 0;
+    private int recordEnd = 0;
+    private int[] fieldStart = new int[16];
+    private int[] fieldEnd = new int[16];
+    private boolean[] fieldInScratch = new boolean[16];
+    private int fieldCount = 0;
+    private byte[] scratch = new byte[1024];
+    private int scratchLength = 0;
+    private byte[] decodeBuffer = new byte[1024];
+
+    private FieldView[] views = new FieldView[0];
+    private CharSequence[] fields = new CharSequence[0];
+
+    private long currentLine = 1;
+    private long recordLine = 0;
+
+    /**
+     * Opens and maps the given file.
+     * @param path The CSV file path.
+     * @throws IOException If the file cannot be opened or mapped.
+     */
+    public MappedCsvReader(String path) throws IOException {
+        this(path, DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * Opens the given file with a specific mapping segment size.
+     * @param path The CSV file path.
+     * @param segmentSize Maximum number of bytes mapped at a time.
+     * @throws IOException If the file cannot be opened or mapped.
+     */
+    public MappedCsvReader(String path, int segmentSize) throws IOException {
+        this(path, segmentSize, 0, 1);
+    }
+
+    /**
+     * Opens the given file and starts reading part way through it.
+     * @param path The CSV file path.
+     * @param startOffset Byte offset of the first record to read.
+     * @param firstLine Line number at that offset.
+     * @throws IOException If the file cannot be opened or mapped.
+     */
+    public MappedCsvReader(String path, long startOffset, long firstLine) throws IOException {
+        this(path, DEFAULT_SEGMENT_SIZE, startOffset, firstLine);
+    }
+
+    private MappedCsvReader(String path, int segmentSize, long startOffset, long firstLine) throws IOException {
+        this.file = new RandomAccessFile(path, "r");
+        this.channel = file.getChannel();
+        this.fileSize = channel.size();
+        this.segmentSize = segmentSize;
+        this.currentLine = firstLine;
+        map(Math.min(startOffset, fileSize));
+    }
+
+    @Override
+    public boolean next() throws IOException {
+        while (true) {
+            if (!readRecord()) {
+                return false;
+            }
+            if (!isBlankRecord()) {
+                return true;
+            }
+        }
+    }
+
+    @Override
+    public int fieldCount() {
+        return fieldCount;
+    }
+
+    @Override
+    public CharSequence field(int index) {
+        return views[index];
+    }
+
+    @Override
+    public CharSequence[] fields() {
+        if (fields.length != fieldCount) {
+            fields = Arrays.copyOf(views, fieldCount);
+        }
+        return fields;
+    }
+
+    @Override
+    public String rawRecord() {
+        return decode(recordStart, recordEnd, false);
+    }
+
+    @Override
+    public long lineNumber() {
+        return recordLine;
+    }
+
+    @Override
+    public long byteOffset() {
+        return segmentStart + pos;
+    }
+
+    @Override
+    public long nextLine() {
+        return currentLine;
+    }
+
+    /**
+     * Reads one record, remapping the file when the record runs past the
+     * end of the current segment.
+     * @return true if a record was read, false at end of file.
+     * @throws IOException If the file cannot be mapped.
+     */
+    private boolean readRecord() throws IOException {
+        while (true) {
+            long lineAtStart = currentLine;
+            int result = scanRecord();
+            if (result >= 0) {
+                for (int i = 0; i < fieldCount; i++) {
+                    views[i].decoded = null;
+                    views[i].ascii = 0;
+                }
+                return result == 1;
+            }
+            // The record crosses the segment end: map again from its first byte
+            currentLine = lineAtStart;
+            long absoluteStart = segmentStart + recordStart;
+            if (absoluteStart == segmentStart && segmentSize < Integer.MAX_VALUE) {
+                // A single record is larger than the segment
+                segmentSize = (int) Math.min(Integer.MAX_VALUE, segmentSize * 2L);
+            }
+            map(absoluteStart);
+        }
+    }
+
+    /**
+     * Scans one record starting at the current position.
+     * @return 1 if a record was read, 0 at end of file, or -1 if the segment
+     *         ended before the record did.
+     */
+    private int scanRecord() {
+        int limit = buffer == null ? 0 : buffer.limit();
+        boolean lastSegment = segmentStart + limit >= fileSize;
+
+        recordStart = pos;
+        recordLine = currentLine;
+        fieldCount = 0;
+        scratchLength = 0;
+
+        int state = START_FIELD;
+        int start = pos;
+        int end = pos;
+        int closingQuote = pos;
+        boolean inScratch = false;
+
+        while (true) {
+            if (pos >= limit) {
+                if (!lastSegment) return -1;
+                if (pos == recordStart) return 0;
+                recordEnd = pos;
+                endField(start, end, inScratch);
+                return 1;
+            }
+            byte b = buffer.get(pos++);
+
+            if (state == QUOTED) {
+                if (b == '"') {
+                    state = QUOTE_IN_QUOTED;
+                    closingQuote = pos - 1;
+                } else {
+                    if (b == '\n') currentLine++;
+                    if (inScratch) appendScratch(b);
+                    if (!isWhitespace(b)) end = inScratch ? scratchLength : pos;
+                }
+                continue;
+            }
+
+            if (b == '\n' || b == '\r') {
+                currentLine++;
+                recordEnd = pos - 1;
+                if (b == '\r') {
+                    // A CR at the segment end may be half of a CRLF: map again so that
+                    // byteOffset() and nextLine() are past the whole line terminator
+                    if (pos == limit && !lastSegment) return -1;
+                    if (pos < limit && buffer.get(pos) == '\n') pos++;
+                }
+                endField(start, end, inScratch);
+                return 1;
+            }
+
+            if (b == ',') {
+                endField(start, end, inScratch);
+                inScratch = false;
+                start = pos;
+                end = pos;
+                state = START_FIELD;
+                continue;
+            }
+
+            switch (state) {
+                case START_FIELD:
+                    if (b == '"') {
+                        state = QUOTED;
+                        start = pos;
+                        end = pos;
+                    } else if (!isWhitespace(b)) {
+                        start = pos - 1;
+                        end = pos;
+                        state = UNQUOTED;
+                    }
+                    break;
+                case UNQUOTED:
+                    if (inScratch) appendScratch(b);
+                    if (!isWhitespace(b)) end = inScratch ? scratchLength : pos;
+                    break;
+                case QUOTE_IN_QUOTED:
+                    if (isWhitespace(b)) break;
+                    // An escaped quote or text after the closing quote: the field
+                    // no longer matches the file bytes, so copy it to scratch
+                    if (!inScratch) {
+                        int copyStart = scratchLength;
+                        for (int i = start; i < closingQuote; i++) appendScratch(buffer.get(i));
+                        start = copyStart;
+                        end = scratchLength;
+                        inScratch = true;
+                    }
+                    appendScratch(b);
+                    end = scratchLength;
+                    state = b == '"' ? QUOTED : UNQUOTED;
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Records the boundaries of a finished field, trimming leading whitespace.
+     */
+    private void endField(int start, int end, boolean inScratch) {
+        while (start < end && isWhitespace(inScratch ? scratch[start] : buffer.get(start))) start++;
+        if (end < start) end = start;
+
+        if (fieldCount == fieldStart.length) {
+            fieldStart = Arrays.copyOf(fieldStart, fieldCount * 2);
+            fieldEnd = Arrays.copyOf(fieldEnd, fieldCount * 2);
+            fieldInScratch = Arrays.copyOf(fieldInScratch, fieldCount * 2);
+        }
+        fieldStart[fieldCount] = start;
+        fieldEnd[fieldCount] = end;
+        fieldInScratch[fieldCount] = inScratch;
+        if (fieldCount == views.length) {
+            views = Arrays.copyOf(views, Math.max(16, fieldCount * 2));
+            for (int i = fieldCount; i < views.length; i++) {
+                views[i] = new FieldView(i);
+            }
+        }
+        fieldCount++;
+    }
+
+    /**
+     * @return true if the current record holds nothing but whitespace.
+     */
+    private boolean isBlankRecord() {
+        for (int i = recordStart; i < recordEnd; i++) {
+            if (!isWhitespace(buffer.get(i))) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Maps the segment of the file that starts at the given offset.
+     * @param offset Absolute byte offset of the new segment.
+     * @throws IOException If the mapping fails.
+     */
+    private void map(long offset) throws IOException {
+        long length = Math.min(segmentSize, fileSize - offset);
+        segmentStart = offset;
+        pos = 0;
+        buffer = length > 0 ? channel.map(FileChannel.MapMode.READ_ONLY, offset, length) : null;
+    }
+
+    /**
+     * Decodes a byte range of the segment or scratch buffer as UTF-8.
+     */
+    private String decode(int start, int end, boolean inScratch) {
+        int length = end - start;
+        if (inScratch) {
+            return new String(scratch, start, length, StandardCharsets.UTF_8);
+        }
+        if (decodeBuffer.length < length) {
+            decodeBuffer = new byte[Math.max(length, decodeBuffer.length * 2)];
+        }
+        for (int i = 0; i < length; i++) {
+            decodeBuffer[i] = buffer.get(start + i);
+        }
+        return new String(decodeBuffer, 0, length, StandardCharsets.UTF_8);
+    }
+
+    private void appendScratch(byte b) {
+        if (scratchLength == scratch.length) {
+            scratch = Arrays.copyOf(scratch, scratchLength * 2);
+        }
+        scratch[scratchLength++] = b;
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\t';
+    }
+
+    @Override
+    public void close() throws IOException {
+        buffer = null;
+        channel.close();
+        file.close();
+    }
+
+    /**
+     * A lazily decoded view over one field of the current record. Pure ASCII
+     * fields are read straight from the mapped bytes; anything else is decoded
+     * as UTF-8 the first time it is used.
+     */
+    private final class FieldView implements CharSequence {
+        private final int index;
+        private String decoded;
+        private int ascii; // 0 = not checked yet, 1 = pure ASCII, 2 = needs decoding
+
+        FieldView(int index) {
+            this.index = index;
+        }
+
+        private byte byteAt(int i) {
+            int at = fieldStart[index] + i;
+            return fieldInScratch[index] ? scratch[at] : buffer.get(at);
+        }
+
+        private boolean isAscii() {
+            if (ascii == 0) {
+                ascii = 1;
+                int length = fieldEnd[index] - fieldStart[index];
+                for (int i = 0; i < length; i++) {
+                    if (byteAt(i) < 0) {
+                        ascii = 2;
+                        break;
+                    }
+                }
+            }
+            return ascii == 1;
+        }
+
+        private String decodeField() {
+            if (decoded == null) {
+                decoded = decode(fieldStart[index], fieldEnd[index], fieldInScratch[index]);
+            }
+            return decoded;
+        }
+
+        @Override
+        public int length() {
+            if (decoded == null && isAscii()) {
+                return fieldEnd[index] - fieldStart[index];
+            }
+            return decodeField().length();
+        }
+
+        @Override
+        public char charAt(int i) {
+            if (decoded == null && isAscii()) {
+                return (char) byteAt(i);
+            }
+            return decodeField().charAt(i);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return toString().substring(start, end);
+        }
+
+        @Override
+        public String toString() {
+            return decodeField();
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package src.main;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * MovieGenres splits the comma-joined genre text of each movie ("Action,
+ * Adventure, Sci-Fi") into the Genres and Movie_Genres tables of migration
+ * 004, and sets the movie's genre_mask bitmask. Genre ids are given out in
+ * the order the genres are first seen, and bit (genre_id - 1) of the mask
+ * stands for the genre; the first 63 genres have a bit, which covers every
+ * OMDb genre, and any further ones are only in Movie_Genres.
+ *
+ * Movies that still need splitting have a NULL genre_mask: new rows start
+ * that way, and a trigger resets it when a movie's genre text changes. Every
+ * load ends with update(), which only visits those rows.
+ */
+public class MovieGenres {
+    public static final int MASK_BITS = 63; // Bit 63 would make the mask negative
+    private static final int CHUNK_SIZE = 10000; // Movies read per query, so the read cursor never sees the updates
+
+    /**
+     * Splits the genres of the movies whose genre_mask is NULL, in one
+     * transaction. Does nothing on a database without the Genres table.
+     * @param connection The database connection.
+     * @param bulk true after a full load, when every movie is new: the indexes
+     *             on Movie_Genres and on genre_mask are then dropped and built
+     *             once at the end instead of updated for every movie.
+     * @throws SQLException If the genres cannot be read or written.
+     */
+    static void update(Connection connection, boolean bulk) throws SQLException {
+        if (!hasGenres(connection)) return;
+        try (Statement stmt = connection.createStatement();
+            ResultSet rs = stmt.executeQuery("SELECT 1 FROM Movies WHERE genre_mask IS NULL LIMIT 1")) {
+            if (!rs.next()) return; // Nothing to split, e.g. after a snapshot import
+        }
+        long start = System.nanoTime();
+        Map<String, Integer> genreIds = genreIds(connection);
+        int genresBefore = genreIds.size();
+        int nextId = genreIds.values().stream().max(Integer::compare).orElse(0) + 1;
+        long movies = 0;
+
+        boolean previousAutoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+        List<String> droppedIndexes = bulk ? dropGenreIndexes(connection) : new ArrayList<>();
+        try (PreparedStatement select = connection.prepareStatement("SELECT movie_id, genre FROM Movies " +
+                "WHERE movie_id > ? AND genre_mask IS NULL ORDER BY movie_id LIMIT " + CHUNK_SIZE);
+            PreparedStatement insertGenre = connection.prepareStatement(
+                "INSERT INTO Genres (genre_id, name) VALUES (?, ?)");
+            PreparedStatement insertLink = connection.prepareStatement(
+                "INSERT INTO Movie_Genres (movie_id, genre_id) VALUES (?, ?)");
+            PreparedStatement setMask = connection.prepareStatement(
+                "UPDATE Movies SET genre_mask = ? WHERE movie_id = ?")) {
+            long lastId = 0;
+            while (true) {
+                List<Long> ids = new ArrayList<>();
+                List<String> texts = new ArrayList<>();
+                select.setLong(1, lastId);
+                try (ResultSet rs = select.executeQuery()) {
+                    while (rs.next()) {
+                        ids.add(rs.getLong(1));
+                        texts.add(rs.getString(2));
+                    }
+                }
+                if (ids.isEmpty()) break;
+
+                for (int i = 0; i < ids.size(); i++) {
+                    long mask = 0;
+                    for (String genre : split(texts.get(i))) {
+                        String key = genre.toLowerCase(Locale.ROOT);
+                        Integer genreId = genreIds.get(key);
+                        if (genreId == null) {
+                            genreId = nextId++;
+                            genreIds.put(key, genreId);
+                            insertGenre.setInt(1, genreId);
+                            insertGenre.setString(2, genre);
+                            insertGenre.executeUpdate();
+                        }
+                        if (genreId <= MASK_BITS) {
+                            mask |= 1L << (genreId - 1);
+                        }
+                        insertLink.setLong(1, ids.get(i));
+                        insertLink.setInt(2, genreId);
+                        insertLink.addBatch();
+                    }
+                    setMask.setLong(1, mask);
+                    setMask.setLong(2, ids.get(i));
+                    setMask.addBatch();
+                }
+                insertLink.executeBatch();
+                setMask.executeBatch();
+                movies += ids.size();
+                lastId = ids.get(ids.size() - 1);
+            }
+            try (Statement stmt = connection.createStatement()) {
+                for (String sql : droppedIndexes) {
+                    stmt.execute(sql);
+                }
+            }
+            connection.commit();
+        } catch (SQLException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(previousAutoCommit);
+        }
+        if (movies > 0) {
+            System.out.printf("Split the genres of %d movie(s) (%d new genre(s)) in %.2f s%n",
+                movies, genreIds.size() - genresBefore, (System.nanoTime() - start) / 1e9);
+        }
+    }
+
+    /**
+     * Drops the indexes that splitting writes to: those of Movie_Genres and
+     * those that include Movies.genre_mask.
+     * @return Their CREATE INDEX statements.
+     */
+    private static List<String> dropGenreIndexes(Connection connection) throws SQLException {
+        List<String> names = new ArrayList<>();
+        List<String> indexes = new ArrayList<>();
+        try (Statement stmt = connection.createStatement()) {
+            try (ResultSet rs = stmt.executeQuery("SELECT name, sql FROM sqlite_master WHERE type = 'index' " +
+                    "AND sql IS NOT NULL AND (tbl_name = 'Movie_Genres' OR sql LIKE '%genre_mask%')")) {
+                while (rs.next()) {
+                    names.add(rs.getString("name"));
+                    indexes.add(rs.getString("sql"));
+                }
+            }
+            for (String name : names) {
+                stmt.execute("DROP INDEX \"" + name + "\";");
+            }
+        }
+        return indexes;
+    }
+
+    /**
+     * Empties Genres and Movie_Genres, for a full load that replaces every
+     * movie; the genre ids are then given out again from 1.
+     * @param connection The database connection.
+     * @throws SQLException If the tables cannot be cleared.
+     */
+    static void clear(Connection connection) throws SQLException {
+        if (!hasGenres(connection)) return;
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("DELETE FROM Movie_Genres;");
+            stmt.execute("DELETE FROM Genres;");
+        }
+    }
+
+    /**
+     * Splits a genre text at its commas.
+     * @param text The genre text, e.g. "Action, Adventure, Sci-Fi"; may be null.
+     * @return The trimmed, non-empty genre names, each once.
+     */
+    static Set<String> split(String text) {
+        Set<String> genres = new LinkedHashSet<>();
+        if (text == null) return genres;
+        Set<String> seen = new LinkedHashSet<>();
+        for (String part : text.split(",")) {
+            String genre = part.trim();
+            if (!genre.isEmpty() && seen.add(genre.toLowerCase(Locale.ROOT))) {
+                genres.add(genre);
+            }
+        }
+        return genres;
+    }
+
+    /**
+     * @return The genre ids by lower-case name.
+     */
+    private static Map<String, Integer> genreIds(Connection connection) throws SQLException {
+        Map<String, Integer> ids = new TreeMap<>();
+        try (Statement stmt = connection.createStatement();
+            ResultSet rs = stmt.executeQuery("SELECT genre_id, name FROM Genres")) {
+            while (rs.next()) {
+                ids.put(rs.getString(2).toLowerCase(Locale.ROOT), rs.getInt(1));
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * @return true if the database has the genre tables of migration 004.
+     */
+    static boolean hasGenres(Connection connection) throws SQLException {
+        try (ResultSet rs = connection.getMetaData().getTables(null, null, "Genres", null)) {
+            return rs.next();
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package src.main;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * MovieSearch maintains the Movie_Search full-text index (migration 003)
+ * around bulk loads. Its triggers index one movie per row change, which is
+ * right for incremental and watch-mode loads but slow for a full load, where
+ * every movie is deleted and inserted again. A full load therefore drops the
+ * triggers first, and afterwards rebuilds the index from Movies in one pass
+ * and puts the triggers back. The dropped triggers are kept on record by
+ * SuspendedTriggers, so a load that never gets to the rebuild is finished
+ * by recover() on the next run.
+ */
+public class MovieSearch {
+    static final String INDEX_TABLE = "Movie_Search";
+
+    /**
+     * Drops the triggers that keep Movie_Search in step with Movies, saving
+     * them with SuspendedTriggers until rebuild puts them back.
+     * @param connection The database connection, outside a transaction.
+     * @throws SQLException If the triggers cannot be saved or dropped.
+     */
+    public static void suspendTriggers(Connection connection) throws SQLException {
+        if (!hasIndex(connection)) return;
+        SuspendedTriggers.suspend(connection, INDEX_TABLE,
+            "tbl_name = 'Movies' AND sql LIKE '%" + INDEX_TABLE + "%'");
+    }
+
+    /**
+     * Rebuilds Movie_Search from Movies and recreates its suspended triggers,
+     * in one transaction.
+     * @param connection The database connection, outside a transaction.
+     * @throws SQLException If the index or the triggers cannot be written.
+     */
+    static void rebuild(Connection connection) throws SQLException {
+        if (!hasIndex(connection)) return;
+        long start = System.nanoTime();
+        boolean previousAutoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("INSERT INTO " + INDEX_TABLE + " (" + INDEX_TABLE + ") VALUES ('rebuild');");
+            SuspendedTriggers.restore(connection, INDEX_TABLE);
+            connection.commit();
+        } catch (SQLException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(previousAutoCommit);
+        }
+        System.out.printf("Rebuilt the %s index in %.2f s%n", INDEX_TABLE, (System.nanoTime() - start) / 1e9);
+    }
+
+    /**
+     * Finishes the work of a load that suspended the triggers and never put
+     * them back, because it failed or the process died: the index is rebuilt
+     * and the triggers are recreated. Does nothing otherwise.
+     * @param connection The database connection, outside a transaction.
+     * @return true if the index was rebuilt.
+     * @throws SQLException If the index or the triggers cannot be written.
+     */
+    static boolean recover(Connection connection) throws SQLException {
+        if (!SuspendedTriggers.pending(connection, INDEX_TABLE)) return false;
+        System.out.println("Restoring the " + INDEX_TABLE + " triggers suspended by an unfinished load...");
+        rebuild(connection);
+        return true;
+    }
+
+    private static boolean hasIndex(Connection connection) throws SQLException {
+        try (ResultSet rs = connection.getMetaData().getTables(null, null, INDEX_TABLE, null)) {
+            return rs.next();
+        }
+    }
+
+    /**
+     * Turns what a user typed into an FTS5 query that matches movies holding
+     * every word. Each word is quoted, so punctuation and FTS5 operators in the
+     * input are searched for as text instead of failing the query.
+     * @param input The search words.
+     * @return The MATCH expression, or an empty string if there are no words.
+     */
+    public static String matchExpression(String input) {
+        StringBuilder match = new StringBuilder();
+        for (String word : input.trim().split("\\s+")) {
+            if (word.isEmpty()) continue;
+            if (match.length() > 0) match.append(' ');
+            match.append('"').append(word.replace("\"", "\"\"")).append('"');
+        }
+        return match.toString();
+    }
+}
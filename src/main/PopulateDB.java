@@ -1,16 +1,208 @@
 package src.main;
 import java.io.*;
 import java.sql.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Scanner;
-import java.util.regex.Pattern;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
 
 public class PopulateDB {
+    private static final int DEFAULT_BATCH_SIZE = 1000;
+    private static final int GZIP_BUFFER_SIZE = 64 * 1024; // Compressed bytes read per inflate call
+    private static final int READ_AHEAD_BLOCK_SIZE = 256 * 1024; // Decompressed bytes per read-ahead block
+    private static final int READ_AHEAD_BLOCKS = 4; // Blocks decompressed ahead of the parser
+    private static final long DEFAULT_BATCH_MEMORY = 64L << 20; // Staged rows per batch under --target-commit-ms
+    private static final long DEFAULT_WATCH_DELAY = 500; // Milliseconds appends are collected before they are committed
+    private static final long DEFAULT_DEDUP_MEMORY = 256L << 20; // Bytes of deduplication index before spilling to disk
+
+    // Entity tables whose duplicate rows --dedup merges, keyed on normalized name plus birthday
+    static final Set<String> DEDUP_TABLES = new HashSet<>(Arrays.asList("Actors", "Directors"));
+
+    // CSV files in load order: entity tables first, then the junction tables that refer to them
+    static final CsvTableSpec[] TABLES = {
+        CsvTableSpec.entity("csvfiles/actors.csv", "Actors", "actor_id", "name", "birthday"),
+        CsvTableSpec.entity("csvfiles/movies.csv", "Movies", "movie_id",
+            "title", "release_date", "running_time", "genre", "plot", "ratings"),
+        CsvTableSpec.entity("csvfiles/directors.csv", "Directors", "director_id", "name", "birthday"),
+        CsvTableSpec.entity("csvfiles/awards.csv", "Awards", "award_id", "name", "category"),
+        CsvTableSpec.junction("csvfiles/movie_actors.csv", "Movie_Actors", "movie_id", "Movies", "actor_id", "Actors"),
+        CsvTableSpec.junction("csvfiles/movie_director.csv", "Movie_Director", "movie_id", "Movies", "director_id", "Directors"),
+        CsvTableSpec.junction("csvfiles/movie_awards.csv", "Movie_Awards", "movie_id", "Movies", "award_id", "Awards"),
+        CsvTableSpec.junction("csvfiles/actor_awards.csv", "Actor_Awards", "actor_id", "Actors", "award_id", "Awards"),
+        CsvTableSpec.junction("csvfiles/director_awards.csv", "Director_Awards", "director_id", "Directors", "award_id", "Awards")
+    };
+
+    /**
+     * Command line options accepted by PopulateDB.
+     */
+    private static class Options {
+        int batchSize = DEFAULT_BATCH_SIZE; // Rows per executeBatch call
+        int commitEvery = 0; // Batches per transaction, 0 means one transaction per table
+        long targetCommitMillis = 0; // Time each batch and its commit should take; 0 keeps the batch size fixed
+        long batchMemory = DEFAULT_BATCH_MEMORY; // Memory cap of one batch's staged rows when the size adapts
+        int parallel = 1; // Parse threads; more than 1 enables the pipelined loader
+        boolean mmap = false; // Read CSV files through memory-mapped segments
+        boolean incremental = false; // Apply only the rows that changed since the last load
+        boolean fastLoad = false; // Bulk-load PRAGMAs with indexes and foreign key checks deferred
+        boolean buildAside = false; // Build a new database file and rename it over the live one
+        boolean resume = false; // Continue an interrupted load from its last checkpoint
+        String reportFile = null; // Where to write the JSON load report, if anywhere
+        boolean dedup = false; // Merge duplicate actors and directors
+        long dedupMemory = DEFAULT_DEDUP_MEMORY; // Memory budget of the deduplication index
+        int staged = 1; // Tables loaded at once into staging files; more than 1 enables staged loading
+        boolean watch = false; // Keep running after the load and apply rows appended to the CSV files
+        long watchDelay = DEFAULT_WATCH_DELAY; // Longest wait between an append and its commit, besides the load itself
+        String exportSnapshot = null; // Where to write a binary snapshot of the loaded tables, if anywhere
+        String fromSnapshot = null; // Snapshot to load instead of the CSV files
+        boolean tailing = false; // Set by watch mode: continue completed files, reading complete lines only
+
+        /**
+         * Parses the command line arguments.
+         * @param args The command line arguments.
+         * @return The parsed options, or null if they cannot be used together.
+         */
+        static Options parse(String[] args) {
+            Options options = new Options();
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--batch-size":
+                        options.batchSize = Integer.parseInt(args[++i]);
+                        break;
+                    case "--commit-every":
+                        options.commitEvery = Integer.parseInt(args[++i]);
+                        break;
+                    case "--target-commit-ms":
+                        options.targetCommitMillis = Long.parseLong(args[++i]);
+                        break;
+                    case "--batch-memory":
+                        options.batchMemory = parseSize(args[++i]);
+                        break;
+                    case "--parallel":
+                        options.parallel = Integer.parseInt(args[++i]);
+                        break;
+                    case "--mmap":
+                        options.mmap = true;
+                        break;
+                    case "--incremental":
+                        options.incremental = true;
+                        break;
+                    case "--fast-load":
+                        options.fastLoad = true;
+                        break;
+                    case "--build-aside":
+                        options.buildAside = true;
+                        break;
+                    case "--resume":
+                        options.resume = true;
+                        break;
+                    case "--report":
+                        options.reportFile = args[++i];
+                        break;
+                    case "--dedup":
+                        options.dedup = true;
+                        break;
+                    case "--dedup-memory":
+                        options.dedupMemory = parseSize(args[++i]);
+                        break;
+                    case "--staged":
+                        options.staged = Integer.parseInt(args[++i]);
+                        break;
+                    case "--watch":
+                        options.watch = true;
+                        break;
+                    case "--watch-delay":
+                        options.watchDelay = Long.parseLong(args[++i]);
+                        break;
+                    case "--export-snapshot":
+                        options.exportSnapshot = args[++i];
+                        break;
+                    case "--from-snapshot":
+                        options.fromSnapshot = args[++i];
+                        break;
+                    default:
+                        System.err.println("Ignoring unknown option: " + args[i]);
+                }
+            }
+            // A build-aside load always starts a new file from the CSV files
+            if (options.buildAside) {
+                String conflict = options.incremental ? "--incremental" : options.resume ? "--resume"
+                    : options.watch ? "--watch" : options.fromSnapshot != null ? "--from-snapshot"
+                    : options.exportSnapshot != null ? "--export-snapshot" : null;
+                if (conflict != null) {
+                    System.err.println("Error: --build-aside cannot be combined with " + conflict + ".");
+                    System.err.println("Usage: java PopulateDB --build-aside [--batch-size N] [--commit-every N] " +
+                        "[--target-commit-ms N] [--parallel N] [--mmap] [--fast-load] [--report FILE] [--dedup] [--staged N]");
+                    return null;
+                }
+            }
+            return options;
+        }
+
+        /**
+         * Parses a byte count with an optional k, m or g suffix, such as 256m.
+         */
+        private static long parseSize(String value) {
+            String number = value.toLowerCase(Locale.ROOT);
+            int shift = 0;
+            if (number.endsWith("k")) shift = 10;
+            else if (number.endsWith("m")) shift = 20;
+            else if (number.endsWith("g")) shift = 30;
+            if (shift > 0) number = number.substring(0, number.length() - 1);
+            return Long.parseLong(number) << shift;
+        }
+    }
+
     /**
      * Populates the database with data from CSV files.
+     * Options: --batch-size N (rows per batch, default 1000) and
+     * --commit-every N (batches per transaction, default one transaction per table),
+     * --target-commit-ms N (commit every batch and size batches to take about N ms, starting from --batch-size)
+     * and --batch-memory SIZE (the memory cap of one such batch, default 64m),
+     * --parallel N (parse CSV rows on N threads while one thread writes),
+     * --mmap (read CSV files through FileChannel.map),
+     * --incremental (skip unchanged files and apply only changed rows of the others),
+     * --fast-load (bulk-load settings for a full rebuild, foreign keys checked once at the end),
+     * --build-aside (load a new database file next to the live one and swap it in atomically; not combined
+     * with --incremental, --resume, --watch or the snapshot options),
+     * --resume (continue an interrupted load from the checkpoints in Load_Progress),
+     * --report FILE (also write the load metrics as JSON to FILE),
+     * --dedup (merge duplicate actors and directors) and --dedup-memory SIZE (its index budget, e.g. 256m),
+     * --staged N (load up to N tables at once into staging files, then merge them with ATTACH),
+     * --watch (after the load, keep applying rows appended to the CSV files until interrupted) and
+     * --watch-delay MS (how long appends are collected into one commit, default 500),
+     * --export-snapshot FILE (after the load, write the tables to a binary snapshot) and
+     * --from-snapshot FILE (replace the tables with the contents of a snapshot instead of reading the CSV files).
      * @param args
      */
     public static void main(String[] args) {
         String dbFile = "database.db";
+        Options options = Options.parse(args);
+        if (options == null) {
+            return;
+        }
+
+        if (options.buildAside) {
+            buildAside(dbFile, options);
+            return;
+        }
         
         // First check if database exists
         File db = new File(dbFile);
@@ -47,23 +239,6 @@ public class PopulateDB {
             }
         }
 
-        String[] csvFiles = {
-            "csvfiles/actors.csv", "csvfiles/movies.csv", "csvfiles/directors.csv",
-            "csvfiles/awards.csv", "csvfiles/movie_actors.csv", "csvfiles/movie_director.csv",
-            "csvfiles/movie_awards.csv", "csvfiles/actor_awards.csv", "csvfiles/director_awards.csv"
-        };
-        String[] insertSQLs = {
-            "INSERT INTO Actors (name, birthday) VALUES (?, ?)",
-            "INSERT INTO Movies (title, release_date, running_time, genre, plot, ratings) VALUES (?, ?, ?, ?, ?, ?)",
-            "INSERT INTO Directors (name, birthday) VALUES (?, ?)",
-            "INSERT INTO Awards (name, category) VALUES (?, ?)",
-            "INSERT INTO Movie_Actors (movie_id, actor_id) VALUES (?, ?)",
-            "INSERT INTO Movie_Director (movie_id, director_id) VALUES (?, ?)",
-            "INSERT INTO Movie_Awards (movie_id, award_id) VALUES (?, ?)",
-            "INSERT INTO Actor_Awards (actor_id, award_id) VALUES (?, ?)",
-            "INSERT INTO Director_Awards (director_id, award_id) VALUES (?, ?)"
-        };
-        
         // Tables to clear in order that respects foreign key constraints
         String[] tablesToClear = {
             "Actor_Awards", "Director_Awards", "Movie_Awards",
@@ -74,44 +249,83 @@ public class PopulateDB {
         try (Connection connection = DriverManager.getConnection("jdbc:sqlite:" + dbFile)) {
             Statement stmt = connection.createStatement();
             stmt.execute("PRAGMA foreign_keys = ON;");
-            
-            // Clear all existing data
-            System.out.println("Clearing existing data...");
-            for (String table : tablesToClear) {
-                try {
-                    stmt.execute("DELETE FROM " + table + ";");
-                    System.out.println("Cleared table: " + table);
-                } catch (SQLException e) {
-                    // Handle SQL exceptions with error codes
-                    if (e.getErrorCode() == 1) { // SQLITE_ERROR
-                        System.err.println("Error: Table " + table + " doesn't exist or cannot be cleared.");
-                    } else if (e.getErrorCode() == 8) { // SQLITE_READONLY
-                        System.err.println("Error: Database is read-only. Cannot clear table " + table);
-                    } else {
-                        System.err.println("SQL Error " + e.getErrorCode() + " clearing table " + table + ": " + e.getMessage());
-                    }
-                }
+            DeltaLoader.ensureMetadataTable(connection);
+            LoadProgress.ensureTable(connection);
+            int restored = FastLoad.restoreIndexes(connection);
+            if (restored > 0) {
+                System.out.println("Recreated " + restored + " index(es) dropped by an unfinished fast load.");
             }
-            
-            // Reset auto-increment counters (SQLite specific)
+            MovieSearch.recover(connection);
+            QuerySummaries.recover(connection);
+
+            if (options.incremental) {
+                DeltaLoader.apply(connection);
+                MovieGenres.update(connection, false);
+                return;
+            }
+
+            // The search index and the query summaries are rebuilt once after the load rather than updated per row
+            MovieSearch.suspendTriggers(connection);
+            QuerySummaries.suspendTriggers(connection);
+            FastLoad fastLoad = options.fastLoad ? new FastLoad(connection) : null;
             try {
-                stmt.execute("DELETE FROM sqlite_sequence;");
-            } catch (SQLException e) {
-                if (e.getErrorCode() == 1) { // SQLITE_ERROR
-                    System.out.println("Note: sqlite_sequence table doesn't exist (this is normal for empty databases)");
-                } else {
-                    System.err.println("SQL Error " + e.getErrorCode() + " clearing sqlite_sequence: " + e.getMessage());
+                if (options.fromSnapshot != null) {
+                    loadSnapshot(connection, options, fastLoad);
+                    return;
                 }
-            }
             
-            // Populate with new data
-            for (int i = 0; i < csvFiles.length; i++) {
-                boolean isUploaded = populateTable(connection, csvFiles[i], insertSQLs[i]);
-                if (isUploaded) {
-                    System.out.println(csvFiles[i] + " uploaded successfully.");
+                if (options.resume) {
+                    System.out.println("Resuming the previous load from its last checkpoint...");
+                } else {
+                    // Clear the tables and the old checkpoints together, so a crash
+                    // cannot leave checkpoints that describe rows which are gone
+                    connection.setAutoCommit(false);
+                    // Clear all existing data
+                    System.out.println("Clearing existing data...");
+                    MovieGenres.clear(connection);
+                    for (String table : tablesToClear) {
+                        try {
+                            stmt.execute("DELETE FROM " + table + ";");
+                            System.out.println("Cleared table: " + table);
+                        } catch (SQLException e) {
+                            // Handle SQL exceptions with error codes
+                            if (e.getErrorCode() == 1) { // SQLITE_ERROR
+                                System.err.println("Error: Table " + table + " doesn't exist or cannot be cleared.");
+                            } else if (e.getErrorCode() == 8) { // SQLITE_READONLY
+                                System.err.println("Error: Database is read-only. Cannot clear table " + table);
+                            } else {
+                                System.err.println("SQL Error " + e.getErrorCode() + " clearing table " + table + ": " + e.getMessage());
+                            }
+                        }
+                    }
+            
+                    // Reset auto-increment counters (SQLite specific)
+                    try {
+                        stmt.execute("DELETE FROM sqlite_sequence;");
+                    } catch (SQLException e) {
+                        if (e.getErrorCode() == 1) { // SQLITE_ERROR
+                            System.out.println("Note: sqlite_sequence table doesn't exist (this is normal for empty databases)");
+                        } else {
+                            System.err.println("SQL Error " + e.getErrorCode() + " clearing sqlite_sequence: " + e.getMessage());
+                        }
+                    }
+                    LoadProgress.clear(connection);
+                    connection.commit();
+                    connection.setAutoCommit(true);
                 }
+
+                // Populate with new data
+                loadTables(connection, options, fastLoad);
+            } finally {
+                finishLoad(connection, fastLoad);
             }
             System.out.println("Database repopulated successfully.");
+            if (options.exportSnapshot != null) {
+                exportSnapshot(connection, options.exportSnapshot);
+            }
+            if (options.watch) {
+                watch(connection, options);
+            }
         } catch (SQLException e) {
             // Handle connection errors
             if (e.getErrorCode() == 0) { // SQLITE_CANTOPEN
@@ -129,91 +343,874 @@ public class PopulateDB {
     }
 
     /**
-     * Populates a table in the database with data from a CSV file.
+     * Loads every CSV file into its table and records the file fingerprints.
+     * The ids of each entity table are collected once it is loaded, and the
+     * junction tables are checked against them in memory, so SQLite's per-row
+     * foreign key checks are switched off while the junction rows go in.
+     * With --staged, the entity tables and then the junction tables are each
+     * loaded side by side (see loadStaged).
+     * @param connection The database connection, with empty tables.
+     * @param options The load options.
+     * @param fastLoad The fast-load settings to finish after the load, or null.
+     * @return The load report, with the rows read, rejected and merged per table.
+     * @throws SQLException If the fast-load settings or the fingerprints cannot be written.
+     */
+    private static IngestReport loadTables(Connection connection, Options options, FastLoad fastLoad) throws SQLException {
+        IngestReport report = new IngestReport();
+        Map<String, int[]> canonicalRows = options.dedup ? findDuplicates(options) : new HashMap<>();
+        Map<String, BitSet> entityIds = new HashMap<>();
+        if (options.staged > 1 && options.resume) {
+            System.out.println("Staged loading cannot resume from checkpoints, loading one table at a time.");
+        }
+        if (options.staged > 1 && !options.resume) {
+            List<CsvTableSpec> entities = new ArrayList<>();
+            List<CsvTableSpec> junctions = new ArrayList<>();
+            for (CsvTableSpec spec : TABLES) {
+                (spec.isJunction() ? junctions : entities).add(spec);
+            }
+            loadStaged(connection, entities, options, entityIds, canonicalRows, report);
+            loadStaged(connection, junctions, options, entityIds, canonicalRows, report);
+        } else {
+            for (CsvTableSpec spec : TABLES) {
+                loadTable(connection, spec, options, entityIds, canonicalRows, report);
+            }
+        }
+
+        // Split before the fast-load indexes are rebuilt, so they are built once
+        MovieGenres.update(connection, true);
+        if (fastLoad != null) {
+            fastLoad.finish(report);
+        }
+        analyze(connection);
+
+        // Remember what was loaded so the next --incremental run can skip unchanged files
+        DeltaLoader.recordFingerprints(connection);
+
+        report.finish();
+        report.printSummary();
+        if (options.reportFile != null) {
+            try {
+                report.writeJson(options.reportFile);
+            } catch (IOException e) {
+                System.err.println("Error writing load report " + options.reportFile + ": " + e.getMessage());
+            }
+        }
+        return report;
+    }
+
+    /**
+     * Loads one CSV file straight into its table.
      * @param connection The database connection.
-     * @param csvFile The path to the CSV file.
-     * @param insertSQL The SQL insert statement.
-     * @return true if data was uploaded, false otherwise.
+     * @param spec The table to load.
+     * @param options The load options.
+     * @param entityIds Ids of the entity tables loaded so far; updated after an entity table.
+     * @param canonicalRows The canonical row of each CSV row of the deduplicated tables.
+     * @param report The load report.
+     * @throws SQLException If foreign key enforcement or the table's ids cannot be read or changed.
      */
-    private static boolean populateTable(Connection connection, String csvFile, String insertSQL) {
-        boolean isUploaded = false;
-        try (BufferedReader br = new BufferedReader(new FileReader(csvFile));
-            PreparedStatement pstmt = connection.prepareStatement(insertSQL)) {
-    
-            String line;
-            boolean firstLine = true;
-            boolean hasData = false;
-            int expectedColumns = insertSQL.split("\\?").length - 1;
-            Pattern pattern = Pattern.compile(",(?=(?:[^\"]*\"[^\"]*\")*[^\"]*$)");
-
-            while ((line = br.readLine()) != null) {
-                if (firstLine) {
-                    firstLine = false;
+    private static void loadTable(Connection connection, CsvTableSpec spec, Options options, Map<String, BitSet> entityIds,
+                                  Map<String, int[]> canonicalRows, IngestReport report) throws SQLException {
+        BitSet[] parentIds = parentIdsFor(spec, entityIds);
+
+        boolean skipForeignKeys = parentIds != null && foreignKeysEnabled(connection);
+        if (skipForeignKeys) {
+            setForeignKeys(connection, false);
+        }
+        boolean isUploaded;
+        try {
+            isUploaded = populateTable(connection, spec, options, parentIds, canonicalRows, report.table(spec));
+        } finally {
+            if (skipForeignKeys) {
+                setForeignKeys(connection, true);
+            }
+        }
+        if (isUploaded) {
+            System.out.println(spec.csvFile + " uploaded successfully.");
+        }
+
+        if (!spec.isJunction()) {
+            BitSet ids = loadIds(connection, spec);
+            if (ids != null) {
+                entityIds.put(spec.table, ids);
+            }
+        }
+    }
+
+    /**
+     * Loads independent tables side by side. SQLite allows one writer per
+     * file, so each table is loaded on its own thread into its own temporary
+     * staging database, created next to the main database file so that it is
+     * on the same filesystem. The main database then ATTACHes each staging file
+     * and copies the table over with INSERT ... SELECT, in load order, while the
+     * tables after it may still be loading. Every staging file is deleted at
+     * the end, also when a merge fails.
+     * @param connection The main database connection.
+     * @param specs Tables that do not depend on each other, in load order.
+     * @param options The load options.
+     * @param entityIds Ids of the entity tables loaded so far; updated after entity tables.
+     * @param canonicalRows The canonical row of each CSV row of the deduplicated tables.
+     * @param report The load report.
+     * @throws SQLException If a staging file cannot be merged.
+     */
+    private static void loadStaged(Connection connection, List<CsvTableSpec> specs, Options options,
+                                   Map<String, BitSet> entityIds, Map<String, int[]> canonicalRows,
+                                   IngestReport report) throws SQLException {
+        File directory = databaseDirectory(connection);
+        List<File> stagingFiles = Collections.synchronizedList(new ArrayList<>());
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(options.staged, specs.size()));
+        List<Future<File>> staged = new ArrayList<>();
+        List<BitSet[]> parentIds = new ArrayList<>();
+        List<IngestReport.TableStats> stats = new ArrayList<>();
+        try {
+            for (CsvTableSpec spec : specs) {
+                String ddl = tableDDL(connection, spec.table);
+                BitSet[] parents = parentIdsFor(spec, entityIds);
+                IngestReport.TableStats tableStats = report.table(spec);
+                parentIds.add(parents);
+                stats.add(tableStats);
+                staged.add(pool.submit(() -> stageTable(directory, stagingFiles, ddl, spec, options, parents,
+                    canonicalRows, tableStats)));
+            }
+            for (int i = 0; i < specs.size(); i++) {
+                CsvTableSpec spec = specs.get(i);
+                File file;
+                try {
+                    file = staged.get(i).get();
+                } catch (ExecutionException e) {
+                    System.err.println("Unexpected error staging " + spec.csvFile + ": " + e.getCause());
+                    stats.get(i).failed = true;
                     continue;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new SQLException("Interrupted while staging " + spec.csvFile, e);
                 }
-
-                if (line.trim().isEmpty()) continue;
-                
-                // Using regex to split only on commas not inside quotes
-                String[] data = pattern.split(line, -1);
-                
-                // Clean up quoted fields
-                for (int i = 0; i < data.length; i++) {
-                    data[i] = data[i].trim();
-                    if (data[i].startsWith("\"") && data[i].endsWith("\"")) {
-                        data[i] = data[i].substring(1, data[i].length() - 1);
+                if (file == null) continue;
+                try {
+                    mergeStagedTable(connection, spec, file, parentIds.get(i) != null, stats.get(i));
+                    System.out.println(spec.csvFile + " uploaded successfully.");
+                } finally {
+                    file.delete();
+                }
+                if (!spec.isJunction()) {
+                    BitSet ids = loadIds(connection, spec);
+                    if (ids != null) {
+                        entityIds.put(spec.table, ids);
                     }
                 }
+            }
+        } finally {
+            pool.shutdownNow();
+            try {
+                // Tables still loading after a failed merge close their files before they are deleted
+                pool.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            synchronized (stagingFiles) {
+                for (File file : stagingFiles) {
+                    file.delete();
+                }
+            }
+        }
+    }
+
+    /**
+     * @return The directory of the connection's main database file, or null
+     *         for an in-memory database, which stages in the temporary directory.
+     */
+    private static File databaseDirectory(Connection connection) throws SQLException {
+        try (Statement stmt = connection.createStatement();
+            ResultSet rs = stmt.executeQuery("PRAGMA database_list")) {
+            while (rs.next()) {
+                String file = rs.getString("file");
+                if ("main".equals(rs.getString("name")) && file != null && !file.isEmpty()) {
+                    return new File(file).getAbsoluteFile().getParentFile();
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Loads one table into a new staging database. Runs on a worker thread.
+     * @param directory Where the staging file is created.
+     * @param stagingFiles Every staging file created, for deletion once the tables are merged.
+     * @param ddl The CREATE TABLE statement of the table.
+     * @return The staging file if rows were loaded, or null.
+     */
+    private static File stageTable(File directory, List<File> stagingFiles, String ddl, CsvTableSpec spec,
+                                   Options options, BitSet[] parentIds, Map<String, int[]> canonicalRows,
+                                   IngestReport.TableStats stats) {
+        File file = null;
+        boolean isUploaded = false;
+        try {
+            file = File.createTempFile("staging-" + spec.table + "-", ".db", directory);
+            stagingFiles.add(file);
+            try (Connection stage = DriverManager.getConnection("jdbc:sqlite:" + file.getPath());
+                Statement stmt = stage.createStatement()) {
+                // The file is thrown away after the merge, so it needs no durability
+                stmt.execute("PRAGMA journal_mode = OFF;");
+                stmt.execute("PRAGMA synchronous = OFF;");
+                stmt.execute(ddl);
+                LoadProgress.ensureTable(stage);
+                isUploaded = populateTable(stage, spec, options, parentIds, canonicalRows, stats);
+            }
+        } catch (IOException e) {
+            System.err.println("Error: Cannot create a staging file for " + spec.csvFile + ": " + e.getMessage());
+            stats.failed = true;
+        } catch (SQLException e) {
+            System.err.println("SQL Error " + e.getErrorCode() + " staging " + spec.csvFile + ": " + e.getMessage());
+            stats.failed = true;
+        }
+        if (!isUploaded && file != null) {
+            file.delete();
+            return null;
+        }
+        return file;
+    }
+
+    /**
+     * Copies a staged table and its checkpoint into the main database in one transaction.
+     * @param validated true if the rows were checked against the parent ids while staging,
+     *                  so foreign keys need not be checked again.
+     */
+    private static void mergeStagedTable(Connection connection, CsvTableSpec spec, File file, boolean validated,
+                                         IngestReport.TableStats stats) throws SQLException {
+        long start = System.nanoTime();
+        boolean skipForeignKeys = validated && foreignKeysEnabled(connection);
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("ATTACH DATABASE '" + file.getPath().replace("'", "''") + "' AS staging;");
+            if (skipForeignKeys) {
+                setForeignKeys(connection, false);
+            }
+            boolean previousAutoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(false);
+            try {
+                stmt.executeUpdate("INSERT INTO main." + spec.table + " SELECT * FROM staging." + spec.table + ";");
+                stmt.executeUpdate("INSERT OR REPLACE INTO main.Load_Progress SELECT * FROM staging.Load_Progress;");
+                connection.commit();
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(previousAutoCommit);
+                if (skipForeignKeys) {
+                    setForeignKeys(connection, true);
+                }
+                stmt.execute("DETACH DATABASE staging;");
+            }
+        }
+        long nanos = System.nanoTime() - start;
+        stats.jdbcNanos += nanos;
+        stats.wallNanos += nanos;
+    }
+
+    /**
+     * @return The CREATE TABLE statement of a table in the main database.
+     */
+    private static String tableDDL(Connection connection, String table) throws SQLException {
+        try (PreparedStatement pstmt = connection.prepareStatement(
+                "SELECT sql FROM sqlite_master WHERE type = 'table' AND name = ?")) {
+            pstmt.setString(1, table);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (!rs.next()) throw new SQLException("Table " + table + " does not exist");
+                return rs.getString(1);
+            }
+        }
+    }
+
+    /**
+     * Collects the ids of a junction table's parent tables, for checking its rows in memory.
+     * @return The ids per column, or null for an entity table or if a parent's ids are
+     *         unknown, in which case SQLite has to check the foreign keys.
+     */
+    private static BitSet[] parentIdsFor(CsvTableSpec spec, Map<String, BitSet> entityIds) {
+        if (!spec.isJunction()) return null;
+        BitSet[] parentIds = new BitSet[spec.parentTables.length];
+        for (int i = 0; i < parentIds.length; i++) {
+            parentIds[i] = entityIds.get(spec.parentTables[i]);
+            if (parentIds[i] == null) return null;
+        }
+        return parentIds;
+    }
+
+    /**
+     * Scans the deduplicated entity files for rows that describe the same person.
+     * @param options The load options.
+     * @return The canonical row of each CSV row, by table. A table whose file
+     *         cannot be scanned is left out and loaded without deduplication.
+     */
+    private static Map<String, int[]> findDuplicates(Options options) {
+        Map<String, int[]> canonicalRows = new HashMap<>();
+        for (CsvTableSpec spec : TABLES) {
+            if (!DEDUP_TABLES.contains(spec.table)) continue;
+            try {
+                int[] canonical = EntityDeduplicator.scan(resolveCsvFile(spec.csvFile), options.dedupMemory);
+                canonicalRows.put(spec.table, canonical);
+                System.out.println(spec.csvFile + ": " + EntityDeduplicator.duplicates(canonical) +
+                    " duplicate row(s) will be merged.");
+            } catch (IOException e) {
+                System.err.println("Error scanning " + spec.csvFile + " for duplicates, loading it as is: " + e.getMessage());
+            }
+        }
+        return canonicalRows;
+    }
+
+    /**
+     * Reads the primary keys of an entity table into a bitset.
+     * @param connection The database connection.
+     * @param spec The entity table.
+     * @return The ids, or null if an id does not fit in a bitset index, in
+     *         which case the table's children are left to SQLite's own checks.
+     * @throws SQLException If the ids cannot be read.
+     */
+    private static BitSet loadIds(Connection connection, CsvTableSpec spec) throws SQLException {
+        BitSet ids = new BitSet();
+        try (Statement stmt = connection.createStatement();
+            ResultSet rs = stmt.executeQuery("SELECT " + spec.primaryKey + " FROM " + spec.table)) {
+            while (rs.next()) {
+                long id = rs.getLong(1);
+                if (id < 0 || id > Integer.MAX_VALUE) return null;
+                ids.set((int) id);
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * @return true if the connection currently enforces foreign keys.
+     */
+    private static boolean foreignKeysEnabled(Connection connection) throws SQLException {
+        try (Statement stmt = connection.createStatement();
+            ResultSet rs = stmt.executeQuery("PRAGMA foreign_keys;")) {
+            return rs.next() && rs.getInt(1) == 1;
+        }
+    }
+
+    /**
+     * Turns foreign key enforcement on or off; must be called outside a transaction.
+     */
+    private static void setForeignKeys(Connection connection, boolean on) throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("PRAGMA foreign_keys = " + (on ? "ON" : "OFF") + ";");
+        }
+    }
+
+    /**
+     * Completes a full load, whether it succeeded or failed: finishes the fast
+     * load if the load did not get that far, so its dropped indexes come back,
+     * then rebuilds the search index and the query summaries and recreates the
+     * triggers that were suspended for it.
+     * @param connection The database connection.
+     * @param fastLoad The fast-load settings, or null.
+     * @throws SQLException If any of them fails.
+     */
+    private static void finishLoad(Connection connection, FastLoad fastLoad) throws SQLException {
+        try {
+            if (fastLoad != null) {
+                fastLoad.finish(null); // Does nothing once the load has finished it
+            }
+        } finally {
+            try {
+                MovieSearch.rebuild(connection);
+            } finally {
+                QuerySummaries.rebuild(connection);
+            }
+        }
+    }
 
-                // Verify column count
-                if (data.length != expectedColumns) {
-                    System.err.println("Column mismatch in " + csvFile + ": expected " + 
-                    expectedColumns + " but got " + data.length);
-                    System.err.println("Problem line: " + line);
+    /**
+     * Reloads the database without touching the live file until the new one is
+     * complete. A fresh database is created next to the live one from schema.ddl
+     * and the migrations, loaded and verified, and then renamed over the live
+     * file in one atomic step.
+     * QueryDB opens the database on every call, so a call either sees the old
+     * generation or the new one, never an empty or half-loaded table. Connections
+     * that are already open keep reading the old file until they close.
+     * @param dbFile The live database file.
+     * @param options The load options.
+     */
+    private static void buildAside(String dbFile, Options options) {
+        File building = new File(dbFile + ".building");
+        if (building.exists() && !building.delete()) {
+            System.err.println("Error: Cannot remove leftover build file " + building);
+            return;
+        }
+
+        boolean verified = false;
+        try (Connection connection = DriverManager.getConnection("jdbc:sqlite:" + building.getPath())) {
+            SchemaMigrator.migrate(connection, "schema.ddl", SchemaMigrator.MIGRATIONS_DIR);
+            connection.createStatement().execute("PRAGMA foreign_keys = ON;");
+            DeltaLoader.ensureMetadataTable(connection);
+            LoadProgress.ensureTable(connection);
+
+            System.out.println("Building new database in " + building + "...");
+            MovieSearch.suspendTriggers(connection);
+            QuerySummaries.suspendTriggers(connection);
+            FastLoad fastLoad = options.fastLoad ? new FastLoad(connection) : null;
+            IngestReport report;
+            try {
+                report = loadTables(connection, options, fastLoad);
+            } finally {
+                finishLoad(connection, fastLoad);
+            }
+            verified = InitialiseDB.verifyTables(connection) && verifyRowCounts(connection, report);
+        } catch (SQLException e) {
+            System.err.println("SQL Error " + e.getErrorCode() + " building " + building + ": " + e.getMessage());
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Error building " + building + ": " + e.getMessage());
+        }
+
+        if (!verified) {
+            System.err.println("New database failed verification; " + dbFile + " was left unchanged.");
+            building.delete();
+            return;
+        }
+
+        try {
+            Files.move(building.toPath(), Paths.get(dbFile),
+                StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            System.out.println("Database repopulated successfully and swapped into " + dbFile + ".");
+        } catch (IOException e) {
+            System.err.println("Error: Cannot move " + building + " over " + dbFile + ": " + e.getMessage());
+            building.delete();
+        }
+    }
+
+    /**
+     * Checks that every table holds exactly the rows of its CSV file that the
+     * load accepted: the file's data rows minus those rejected or merged into
+     * another row. A table whose load stopped with an error never passes,
+     * since it may hold only part of its file.
+     * @param connection The database connection.
+     * @param report The report of the load.
+     * @return true if every table was loaded completely, false otherwise.
+     * @throws SQLException If the counts cannot be read.
+     */
+    private static boolean verifyRowCounts(Connection connection, IngestReport report) throws SQLException {
+        boolean countsValid = true;
+        try (PreparedStatement csvRows = connection.prepareStatement(
+                "SELECT row_count FROM Load_Metadata WHERE csv_file = ?");
+            Statement stmt = connection.createStatement()) {
+            for (CsvTableSpec spec : TABLES) {
+                IngestReport.TableStats stats = report.stats(spec.table);
+                if (stats == null || stats.failed) {
+                    System.err.println("Loading " + spec.csvFile + " into " + spec.table + " did not complete.");
+                    countsValid = false;
                     continue;
                 }
+                csvRows.setString(1, spec.csvFile);
+                long csvRowCount;
+                try (ResultSet rs = csvRows.executeQuery()) {
+                    csvRowCount = rs.next() ? rs.getLong(1) : 0;
+                }
+                long expected = csvRowCount - stats.rowsRejected - stats.rowsMerged;
+                long actual;
+                try (ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM " + spec.table)) {
+                    actual = rs.getLong(1);
+                }
+                if (actual != expected) {
+                    System.err.println("Table " + spec.table + " has " + actual + " rows but " + spec.csvFile + " has " +
+                        csvRowCount + ", of which " + stats.rowsRejected + " were rejected and " + stats.rowsMerged +
+                        " merged.");
+                    countsValid = false;
+                } else {
+                    System.out.println("Verified row count: " + spec.table + " " + actual + "/" + expected);
+                }
+            }
+        }
+        return countsValid;
+    }
+
+    /**
+     * @return The tables a snapshot holds: the data tables, parents first,
+     *         the split genres if the database has them, and the checkpoint
+     *         and fingerprint tables that describe them.
+     */
+    private static List<String> snapshotTables(Connection connection) throws SQLException {
+        List<String> tables = new ArrayList<>();
+        for (CsvTableSpec spec : TABLES) {
+            tables.add(spec.table);
+        }
+        if (MovieGenres.hasGenres(connection)) {
+            tables.add("Genres");
+            tables.add("Movie_Genres");
+        }
+        tables.add("Load_Progress");
+        tables.add("Load_Metadata");
+        return tables;
+    }
 
-                // Set parameters
-                for (int i = 0; i < data.length; i++) {
-                    String value = data[i].trim().isEmpty() ? null : data[i].trim();
-                    pstmt.setString(i + 1, value);
+    /**
+     * Writes the loaded tables to a binary snapshot file.
+     * @param connection The database connection.
+     * @param file The snapshot file.
+     */
+    private static void exportSnapshot(Connection connection, String file) {
+        long start = System.nanoTime();
+        try {
+            Snapshot.export(connection, file, snapshotTables(connection));
+            System.out.printf("Snapshot written to %s (%d KB) in %.2f s.%n", file, new File(file).length() >> 10,
+                (System.nanoTime() - start) / 1e9);
+        } catch (IOException e) {
+            System.err.println("Error writing snapshot " + file + ": " + e.getMessage());
+        } catch (SQLException e) {
+            System.err.println("SQL Error " + e.getErrorCode() + " writing snapshot " + file + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Replaces the tables with the contents of a snapshot file. The tables
+     * are only cleared inside the import transaction, so a missing or damaged
+     * snapshot leaves the database as it was.
+     * @param connection The database connection.
+     * @param options The load options.
+     * @param fastLoad The fast-load settings to finish after the import, or null.
+     * @throws SQLException If the fast-load settings cannot be restored.
+     */
+    private static void loadSnapshot(Connection connection, Options options, FastLoad fastLoad) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            long rows = Snapshot.importFrom(connection, options.fromSnapshot, options.batchSize);
+            System.out.printf("Imported %d rows from snapshot %s in %.2f s.%n", rows, options.fromSnapshot,
+                (System.nanoTime() - start) / 1e9);
+        } catch (FileNotFoundException e) {
+            System.err.println("Error: Snapshot file not found: " + options.fromSnapshot);
+        } catch (IOException e) {
+            System.err.println("Error reading snapshot " + options.fromSnapshot + ": " + e.getMessage());
+        } catch (SQLException e) {
+            System.err.println("SQL Error " + e.getErrorCode() + " importing snapshot " + options.fromSnapshot +
+                ": " + e.getMessage());
+        }
+        MovieGenres.update(connection, true);
+        if (fastLoad != null) {
+            fastLoad.finish(null);
+        }
+        analyze(connection);
+    }
+
+    /**
+     * Refreshes the table statistics the query planner uses. Without them it
+     * cannot tell a 50-row table from a million-row one, and may scan a whole
+     * junction index where a primary key seek from the smaller side would do.
+     * @param connection The database connection.
+     * @throws SQLException If the statistics cannot be written.
+     */
+    private static void analyze(Connection connection) throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("ANALYZE;");
+        }
+    }
+
+    /**
+     * Keeps the tables in step with rows appended to the CSV files until the
+     * thread is interrupted. Every file continues from its Load_Progress
+     * checkpoint, entity files before junction files so that new junction rows
+     * can refer to new entity rows. Junction rows are checked by SQLite's
+     * foreign keys, since the parent ids change as rows arrive.
+     * Compressed files are not watched, and appended rows are not deduplicated.
+     * @param connection The database connection, after the initial load.
+     * @param options The load options.
+     * @throws SQLException If the checkpoints cannot be read.
+     * @throws IOException If the CSV directory cannot be watched.
+     */
+    private static void watch(Connection connection, Options options) throws SQLException, IOException {
+        options.resume = true; // From here on every file continues from its checkpoint
+        options.tailing = true;
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("PRAGMA foreign_keys = ON;");
+        }
+        try (AppendWatcher watcher = new AppendWatcher(Paths.get("csvfiles"), options.watchDelay)) {
+            System.out.println("Watching csvfiles for appended rows, interrupt to stop.");
+            while (true) {
+                Map<String, Long> consumed = new LinkedHashMap<>();
+                for (CsvTableSpec spec : TABLES) {
+                    if (resolveCsvFile(spec.csvFile).equals(spec.csvFile)) {
+                        consumed.put(spec.csvFile, LoadProgress.lookup(connection, spec.csvFile).byteOffset);
+                    }
                 }
-                
-                try {
-                    pstmt.executeUpdate();
-                    hasData = true;
-                } catch (SQLException e) {
-                    // Handle specific SQLite error codes
-                    if (e.getErrorCode() == 19) { // SQLITE_CONSTRAINT (foreign key violation)
-                        System.err.println("Foreign key constraint violation inserting row: " + line);
-                        System.err.println("Details: " + e.getMessage());
-                    } else if (e.getErrorCode() == 1) { // SQLITE_ERROR (general error)
-                        System.err.println("SQL error inserting row: " + line);
-                        System.err.println("Details: " + e.getMessage());
-                    } else if (e.getErrorCode() == 1299) { // SQLITE_TOOBIG
-                        System.err.println("Data too large for column in row: " + line);
-                    } else {
-                        System.err.println("SQL Error " + e.getErrorCode() + " inserting row: " + line);
-                        System.err.println("Details: " + e.getMessage());
+                Set<String> grown = watcher.awaitAppends(consumed);
+                IngestReport report = new IngestReport();
+                for (CsvTableSpec spec : TABLES) {
+                    if (!grown.contains(spec.csvFile)) continue;
+                    IngestReport.TableStats stats = report.table(spec);
+                    populateTable(connection, spec, options, null, new HashMap<>(), stats);
+                    if (stats.rowsInserted > 0) {
+                        System.out.println("Applied " + stats.rowsInserted + " appended row(s) from " + spec.csvFile + ".");
                     }
                 }
+                MovieGenres.update(connection, false);
             }
+        } catch (InterruptedException e) {
+            System.out.println("Stopped watching the CSV files.");
+        }
+    }
+
+    /**
+     * Populates a table in the database with data from a CSV file.
+     * @param connection The database connection.
+     * @param spec The CSV file and the table it is loaded into.
+     * @param options The batching options.
+     * @param parentIds Ids of the parent rows per column of a junction table, used to
+     *                  reject orphan rows before they are inserted; null to rely on SQLite.
+     * @param canonicalRows The canonical row of each CSV row of the deduplicated tables.
+     * @param stats Where the table's load metrics are recorded.
+     * @return true if data was uploaded, false otherwise.
+     */
+    private static boolean populateTable(Connection connection, CsvTableSpec spec, Options options, BitSet[] parentIds,
+                                         Map<String, int[]> canonicalRows, IngestReport.TableStats stats) {
+        String csvFile = spec.csvFile;
+        boolean isUploaded = false;
+        long start = System.nanoTime();
+        int[] canonical = canonicalRows.get(spec.table);
+        try (RejectLog rejects = new RejectLog(spec.table, options.resume);
+            BatchInserter inserter = new BatchInserter(connection, canonical != null ? spec.withIdColumn() : spec,
+                options.batchSize, options.commitEvery, rejects)) {
+            LoadProgress progress = options.resume ? LoadProgress.lookup(connection, csvFile) : new LoadProgress(csvFile);
+            if (progress.completed && !options.tailing) {
+                System.out.println(csvFile + " was already loaded, skipping.");
+                return false;
+            }
+            if (progress.isPartial() && canonical != null) {
+                // Row ids are CSV positions, which are not known in the middle of the file
+                System.out.println("Restarting " + csvFile + " from the beginning to deduplicate it.");
+                try (Statement stmt = connection.createStatement()) {
+                    stmt.execute("DELETE FROM " + spec.table);
+                }
+                progress = new LoadProgress(csvFile);
+            } else if (progress.isPartial()) {
+                System.out.println("Resuming " + csvFile + " at line " + progress.nextLine + ".");
+            }
+            inserter.trackProgress(progress);
+            inserter.collectStats(stats);
+            if (options.targetCommitMillis > 0) {
+                inserter.adaptBatchSize(new BatchSizer(options.batchSize, options.targetCommitMillis, options.batchMemory));
+            }
+            if (canonical != null) {
+                inserter.deduplicate(canonical);
+            } else if (spec.isJunction()) {
+                int[][] parentMaps = {canonicalRows.get(spec.parentTables[0]), canonicalRows.get(spec.parentTables[1])};
+                if (parentMaps[0] != null || parentMaps[1] != null) {
+                    inserter.remapParents(parentMaps);
+                }
+            }
+            if (parentIds != null) {
+                inserter.validateParents(parentIds);
+            }
+            long offset = progress.byteOffset;
+            boolean skipHeader = offset == 0;
     
-            isUploaded = hasData;
+            int expectedColumns = spec.columns.length;
+            String path = resolveCsvFile(csvFile);
+            if (options.tailing) {
+                // The last line may still be being written, so only complete lines are read
+                long end = AppendWatcher.completeLinesEnd(path, offset);
+                try (CsvTokenizer csv = new CsvTokenizer(AppendWatcher.openRange(path, offset, end), progress.nextLine, offset)) {
+                    loadSequential(csv, csvFile, expectedColumns, inserter, skipHeader);
+                }
+            } else if (options.parallel > 1) {
+                loadPipelined(new IngestPipeline(openReader(path, offset), options.parallel, expectedColumns, csvFile,
+                    skipHeader, progress.nextLine, offset), inserter);
+            } else {
+                // Compressed files cannot be mapped, so they always go through the tokenizer
+                boolean mmap = options.mmap && !isGzipFile(path);
+                try (CsvRecordReader csv = mmap ? new MappedCsvReader(path, offset, progress.nextLine)
+                        : new CsvTokenizer(openReader(path, offset), progress.nextLine, offset)) {
+                    loadSequential(csv, csvFile, expectedColumns, inserter, skipHeader);
+                }
+            }
+    
+            isUploaded = inserter.finish();
+            stats.rowsInserted = inserter.getInsertedCount();
+            stats.rowsRejected = rejects.count();
+            rejects.printSummary(csvFile);
         } catch (FileNotFoundException e) {
             System.err.println("Error: CSV file not found: " + csvFile);
+            stats.failed = true;
         } catch (IOException e) {
             System.err.println("Error reading CSV file " + csvFile + ": " + e.getMessage());
+            stats.failed = true;
         } catch (SQLException e) {
             if (e.getErrorCode() == 0) { // SQLITE_CANTOPEN
                 System.err.println("Error: Cannot open database file while processing " + csvFile);
             } else {
                 System.err.println("SQL Error " + e.getErrorCode() + " preparing statement for " + csvFile + ": " + e.getMessage());
             }
+            stats.failed = true;
         } catch (Exception e) {
             System.err.println("Unexpected error populating table from " + csvFile + ": " + e.getMessage());
             e.printStackTrace();
+            stats.failed = true;
         }
+        stats.wallNanos = System.nanoTime() - start;
         return isUploaded;
     }
-}
\ No newline at end of file
+
+    /**
+     * Opens a CSV file for reading as UTF-8. If only a gzip-compressed copy
+     * (csvFile + ".gz") exists, that copy is read instead.
+     * @param csvFile The path to the CSV file.
+     * @return A reader over the file.
+     * @throws IOException If the file cannot be opened.
+     */
+    static Reader openReader(String csvFile) throws IOException {
+        return openReader(new FileInputStream(resolveCsvFile(csvFile)));
+    }
+
+    /**
+     * Opens a CSV file for reading as UTF-8, starting at a byte offset. Plain
+     * files are seeked; compressed files are decompressed up to the offset.
+     * @param path The path of the file to read, as returned by resolveCsvFile.
+     * @param offset Byte offset in the uncompressed data to start from.
+     * @return A reader positioned at the offset.
+     * @throws IOException If the file cannot be opened or is shorter than the offset.
+     */
+    static Reader openReader(String path, long offset) throws IOException {
+        FileInputStream file = new FileInputStream(path);
+        if (offset == 0) {
+            return openReader(file);
+        }
+        if (!isGzipFile(path)) {
+            file.getChannel().position(offset);
+            return openReader(file);
+        }
+        InputStream in = new GZIPInputStream(new BufferedInputStream(file, GZIP_BUFFER_SIZE), GZIP_BUFFER_SIZE);
+        long skipped = 0;
+        while (skipped < offset) {
+            long n = in.skip(offset - skipped);
+            if (n <= 0) {
+                in.close();
+                throw new IOException("File is shorter than its checkpoint: " + path);
+            }
+            skipped += n;
+        }
+        return new InputStreamReader(
+            new ReadAheadInputStream(in, READ_AHEAD_BLOCK_SIZE, READ_AHEAD_BLOCKS), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Wraps a raw CSV byte stream in a UTF-8 reader. Gzip data is recognised by
+     * its magic bytes and decompressed on a read-ahead thread, so inflating the
+     * next blocks overlaps with parsing and inserting the current one.
+     * @param in The file contents.
+     * @return A reader over the stream.
+     * @throws IOException If the stream cannot be read.
+     */
+    static Reader openReader(InputStream in) throws IOException {
+        BufferedInputStream buffered = new BufferedInputStream(in, GZIP_BUFFER_SIZE);
+        if (isGzip(buffered)) {
+            InputStream inflated = new GZIPInputStream(buffered, GZIP_BUFFER_SIZE);
+            return new InputStreamReader(
+                new ReadAheadInputStream(inflated, READ_AHEAD_BLOCK_SIZE, READ_AHEAD_BLOCKS), StandardCharsets.UTF_8);
+        }
+        return new InputStreamReader(buffered, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Finds the file to read for a CSV path: the path itself, or its .gz
+     * copy when only the compressed export is present in csvfiles/.
+     * @param csvFile The path to the CSV file.
+     * @return The path to read.
+     */
+    static String resolveCsvFile(String csvFile) {
+        if (!new File(csvFile).exists() && new File(csvFile + ".gz").exists()) {
+            return csvFile + ".gz";
+        }
+        return csvFile;
+    }
+
+    /**
+     * Checks for the gzip magic bytes without consuming them.
+     * @param in A stream that supports mark and reset.
+     * @return true if the stream starts with 1f 8b.
+     * @throws IOException If the stream cannot be read.
+     */
+    private static boolean isGzip(InputStream in) throws IOException {
+        in.mark(2);
+        int first = in.read();
+        int second = in.read();
+        in.reset();
+        return first == 0x1f && second == 0x8b;
+    }
+
+    /**
+     * Checks whether a file is gzip-compressed, by extension or magic bytes.
+     * @param path The file path.
+     * @return true if the file is gzip data.
+     * @throws IOException If the file cannot be read.
+     */
+    private static boolean isGzipFile(String path) throws IOException {
+        if (path.endsWith(".gz")) return true;
+        try (InputStream in = new BufferedInputStream(new FileInputStream(path), 2)) {
+            return isGzip(in);
+        }
+    }
+
+    /**
+     * Looks up the CSV description of a table.
+     * @param table The table name.
+     * @return The table's spec.
+     */
+    static CsvTableSpec specFor(String table) {
+        for (CsvTableSpec spec : TABLES) {
+            if (spec.table.equals(table)) return spec;
+        }
+        throw new IllegalArgumentException("Unknown table: " + table);
+    }
+
+    /**
+     * Reads CSV rows on the calling thread and queues them on the batch inserter.
+     * @param csv The CSV records.
+     * @param csvFile The path to the CSV file, used in error messages.
+     * @param expectedColumns Number of columns each row must have.
+     * @param inserter The batch inserter for the table.
+     * @param skipHeader true if reading starts at the header row.
+     * @throws IOException If the file cannot be read.
+     * @throws SQLException If a batch cannot be written.
+     */
+    private static void loadSequential(CsvRecordReader csv, String csvFile, int expectedColumns, BatchInserter inserter,
+                                       boolean skipHeader) throws IOException, SQLException {
+        if (skipHeader) {
+            csv.next(); // Skip the header row
+        }
+        while (csv.next()) {
+            inserter.markPosition(csv.byteOffset(), csv.nextLine());
+
+            // Verify column count
+            if (csv.fieldCount() != expectedColumns) {
+                inserter.reject(RejectLog.COLUMN_COUNT, csv.lineNumber(), csv.rawRecord(), "Column mismatch in " +
+                    csvFile + ": expected " + expectedColumns + " but got " + csv.fieldCount());
+                continue;
+            }
+
+            // Queue the field views for the next batch
+            inserter.add(csv.fields(), csv.rawRecord(), csv.lineNumber());
+        }
+    }
+
+    /**
+     * Loads a table through an IngestPipeline: parsing runs on worker threads
+     * while this thread drains the parsed rows into the batch inserter.
+     * @param pipeline The started pipeline over the CSV input; closed when done.
+     * @param inserter The batch inserter for the table.
+     * @throws IOException If the file cannot be read.
+     * @throws SQLException If a batch cannot be written.
+     */
+    private static void loadPipelined(IngestPipeline pipeline, BatchInserter inserter) throws IOException, SQLException {
+        try (IngestPipeline chunks = pipeline) {
+            IngestPipeline.ParsedChunk chunk;
+            while ((chunk = chunks.nextChunk()) != null) {
+                for (int i = 0; i < chunk.values.size(); i++) {
+                    inserter.markPosition(chunk.byteOffsets.get(i), chunk.nextLines.get(i));
+                    String[] values = chunk.values.get(i);
+                    if (values == null) {
+                        inserter.reject(RejectLog.COLUMN_COUNT, chunk.lineNumbers.get(i), chunk.lines.get(i),
+                            chunk.errors.get(i));
+                        continue;
+                    }
+                    inserter.add(values, chunk.lines.get(i), chunk.lineNumbers.get(i));
+                }
+            }
+        }
+    }
+}
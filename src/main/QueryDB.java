@@ -4,8 +4,67 @@ import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 
 public class QueryDB {
+    // The statements behind the query numbers, public so their plans can be checked
+    public static final String ALL_MOVIES_SQL = "SELECT title FROM Movies ORDER BY title";
+    public static final String ACTORS_IN_MOVIE_SQL = "SELECT a.name FROM Actors a " +
+                    "JOIN Movie_Actors ma ON a.actor_id = ma.actor_id " +
+                    "JOIN Movies m ON ma.movie_id = m.movie_id " +
+                    "WHERE m.title = ?";
+    public static final String PLOTS_FOR_ACTOR_AND_DIRECTOR_SQL = "SELECT m.plot FROM Movies m " +
+                    "JOIN Movie_Actors ma ON m.movie_id = ma.movie_id " +
+                    "JOIN Actors a ON ma.actor_id = a.actor_id " +
+                    "JOIN Movie_Director md ON m.movie_id = md.movie_id " +
+                    "JOIN Directors d ON md.director_id = d.director_id " +
+                    "WHERE a.name = ? AND d.name = ?";
+    public static final String DIRECTORS_FOR_ACTOR_SQL = "SELECT d.name FROM Directors d " +
+                    "JOIN Movie_Director md ON d.director_id = md.director_id " +
+                    "JOIN Movies m ON md.movie_id = m.movie_id " +
+                    "JOIN Movie_Actors ma ON m.movie_id = ma.movie_id " +
+                    "JOIN Actors a ON ma.actor_id = a.actor_id " +
+                    "WHERE a.name = ?";
+    // Queries 5 and 6 read the summary tables of migration 005 instead of grouping every award and cast row
+    public static final String OSCAR_MOVIES_SQL = "SELECT m.title, m.ratings, c.award_count AS oscar_count " +
+                    "FROM Movie_Award_Counts c " +
+                    "JOIN Movies m ON c.movie_id = m.movie_id " +
+                    "WHERE c.name = 'Oscar' AND c.award_count > 0 " +
+                    "AND m.ratings BETWEEN 7.0 AND 9.0 " +
+                    "ORDER BY m.ratings DESC";
+    public static final String AWARDED_ACTORS_SQL = "SELECT DISTINCT a.name AS actor_name " +
+                    "FROM Actor_Stats s " +
+                    "JOIN Actors a ON s.actor_id = a.actor_id " +
+                    "WHERE s.high_rated_movies > 0 AND s.award_count >= 2 " +
+                    "ORDER BY s.high_rated_movies DESC, s.award_count DESC, a.name";
+    // Query 7 goes through the Movie_Search full-text index; title matches weigh most, then genre, then plot
+    public static final int SEARCH_LIMIT = 20;
+    public static final String SEARCH_MOVIES_SQL = "SELECT m.title, m.ratings, " +
+                    "snippet(Movie_Search, 1, '[', ']', '...', 12) AS snippet " +
+                    "FROM Movie_Search " +
+                    "JOIN Movies m ON m.movie_id = Movie_Search.rowid " +
+                    "WHERE Movie_Search MATCH ? " +
+                    "ORDER BY bm25(Movie_Search, 10.0, 1.0, 2.0) " +
+                    "LIMIT " + SEARCH_LIMIT;
+    // Queries 8 and 9 filter on the split genres: one genre through the Movie_Genres index,
+    // several genres and a rating through the genre_mask bits of the rated movies
+    public static final String GENRE_MOVIES_SQL = "SELECT m.title, m.ratings FROM Genres g " +
+                    "JOIN Movie_Genres mg ON mg.genre_id = g.genre_id " +
+                    "JOIN Movies m ON m.movie_id = mg.movie_id " +
+                    "WHERE g.name = ? " +
+                    "ORDER BY m.title";
+    public static final String GENRE_IDS_SQL = "SELECT genre_id FROM Genres WHERE name = ?";
+    public static final String RATED_GENRE_MOVIES_SQL = "SELECT title, ratings FROM Movies " +
+                    "WHERE ratings >= ? AND genre_mask & ? = ? " +
+                    "ORDER BY ratings DESC, title";
+    public static final String[] QUERIES = {
+        ALL_MOVIES_SQL, ACTORS_IN_MOVIE_SQL, PLOTS_FOR_ACTOR_AND_DIRECTOR_SQL,
+        DIRECTORS_FOR_ACTOR_SQL, OSCAR_MOVIES_SQL, AWARDED_ACTORS_SQL
+    };
+
     /**
      * Queries the database based on the provided query number and parameters.
      * @param args The command line arguments.
@@ -52,8 +111,30 @@ public class QueryDB {
                 case 6:
                     complexQuery2(connection);
                     break;
+                case 7:
+                    if (args.length < 2) {
+                        System.out.println("Usage: ./queryDB.sh 7 <search_words>");
+                        return;
+                    }
+                    searchMovies(connection, String.join(" ", Arrays.copyOfRange(args, 1, args.length)));
+                    break;
+                case 8:
+                    if (args.length < 2) {
+                        System.out.println("Usage: ./queryDB.sh 8 <genre>");
+                        return;
+                    }
+                    listMoviesInGenre(connection, args[1]);
+                    break;
+                case 9:
+                    if (args.length < 3) {
+                        System.out.println("Usage: ./queryDB.sh 9 <min_rating> <genre> [<genre>...]");
+                        return;
+                    }
+                    listRatedMoviesInGenres(connection, Double.parseDouble(args[1]),
+                                            Arrays.copyOfRange(args, 2, args.length));
+                    break;
                 default:
-                    System.out.println("Invalid query number. Please choose a number between 1 and 6.");
+                    System.out.println("Invalid query number. Please choose a number between 1 and 9.");
             }
         } catch (SQLException e) {
             System.err.println("Error querying database: " + e.getMessage());
@@ -66,8 +147,7 @@ public class QueryDB {
  * @throws SQLException If an SQL error occurs.
  */
 private static void listAllMovies(Connection connection) throws SQLException {
-    String sql = "SELECT title FROM Movies ORDER BY title";  // Added ORDER BY for consistent ordering
-    try (PreparedStatement pstmt = connection.prepareStatement(sql);
+    try (PreparedStatement pstmt = connection.prepareStatement(ALL_MOVIES_SQL);
         ResultSet rs = pstmt.executeQuery()) {
         System.out.println("List of all movies:");
         int counter = 1;
@@ -89,11 +169,7 @@ private static void listAllMovies(Connection connection) throws SQLException {
      * @throws SQLException If an SQL error occurs.
      */
     private static void listActorsInMovie(Connection connection, String movieTitle) throws SQLException {
-        String sql = "SELECT a.name FROM Actors a " +
-                    "JOIN Movie_Actors ma ON a.actor_id = ma.actor_id " +
-                    "JOIN Movies m ON ma.movie_id = m.movie_id " +
-                    "WHERE m.title = ?";
-        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+        try (PreparedStatement pstmt = connection.prepareStatement(ACTORS_IN_MOVIE_SQL)) {
             pstmt.setString(1, movieTitle);
             try (ResultSet rs = pstmt.executeQuery()) {
                 System.out.println("Actors in movie '" + movieTitle + "':");
@@ -117,13 +193,7 @@ private static void listAllMovies(Connection connection) throws SQLException {
      * @throws SQLException If an SQL error occurs.
      */
     private static void listPlotsForActorAndDirector(Connection connection, String actorName, String directorName) throws SQLException {
-        String sql = "SELECT m.plot FROM Movies m " +
-                    "JOIN Movie_Actors ma ON m.movie_id = ma.movie_id " +
-                    "JOIN Actors a ON ma.actor_id = a.actor_id " +
-                    "JOIN Movie_Director md ON m.movie_id = md.movie_id " +
-                    "JOIN Directors d ON md.director_id = d.director_id " +
-                    "WHERE a.name = ? AND d.name = ?";
-        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+        try (PreparedStatement pstmt = connection.prepareStatement(PLOTS_FOR_ACTOR_AND_DIRECTOR_SQL)) {
             pstmt.setString(1, actorName);
             pstmt.setString(2, directorName);
             try (ResultSet rs = pstmt.executeQuery()) {
@@ -142,13 +212,7 @@ private static void listAllMovies(Connection connection) throws SQLException {
      * @throws SQLException If an SQL error occurs.
      */
     private static void listDirectorsForActor(Connection connection, String actorName) throws SQLException {
-        String sql = "SELECT d.name FROM Directors d " +
-                    "JOIN Movie_Director md ON d.director_id = md.director_id " +
-                    "JOIN Movies m ON md.movie_id = m.movie_id " +
-                    "JOIN Movie_Actors ma ON m.movie_id = ma.movie_id " +
-                    "JOIN Actors a ON ma.actor_id = a.actor_id " +
-                    "WHERE a.name = ?";
-        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+        try (PreparedStatement pstmt = connection.prepareStatement(DIRECTORS_FOR_ACTOR_SQL)) {
             pstmt.setString(1, actorName);
             try (ResultSet rs = pstmt.executeQuery()) {
                 System.out.println("Directors of movies with actor '" + actorName + "':");
@@ -165,16 +229,7 @@ private static void listAllMovies(Connection connection) throws SQLException {
      * @throws SQLException If an SQL error occurs.
      */
     private static void complexQuery1(Connection connection) throws SQLException {
-        String sql = "SELECT m.title, m.ratings, COUNT(a.award_id) AS oscar_count " +
-                    "FROM Movies m " +
-                    "JOIN Movie_Awards ma ON m.movie_id = ma.movie_id " +
-                    "JOIN Awards a ON ma.award_id = a.award_id " +
-                    "WHERE a.name = 'Oscar' " +
-                    "AND m.ratings BETWEEN 7.0 AND 9.0 " +
-                    "GROUP BY m.movie_id, m.title, m.ratings " +
-                    "ORDER BY m.ratings DESC";
-        
-        try (PreparedStatement pstmt = connection.prepareStatement(sql);
+        try (PreparedStatement pstmt = connection.prepareStatement(OSCAR_MOVIES_SQL);
             ResultSet rs = pstmt.executeQuery()) {
             System.out.println("Movies with ratings between 7 and 9 that have won Oscars:");
             int counter = 1;
@@ -199,18 +254,7 @@ private static void listAllMovies(Connection connection) throws SQLException {
      * @throws SQLException If an SQL error occurs.
      */
     private static void complexQuery2(Connection connection) throws SQLException {
-        String sql = "SELECT DISTINCT a.name AS actor_name " +
-                    "FROM Actors a " +
-                    "JOIN Movie_Actors ma ON a.actor_id = ma.actor_id " +
-                    "JOIN Movies m ON ma.movie_id = m.movie_id " +
-                    "JOIN Actor_Awards aa ON a.actor_id = aa.actor_id " +
-                    "WHERE m.ratings > 8.0 " +
-                    "GROUP BY a.actor_id, a.name " +
-                    "HAVING COUNT(DISTINCT aa.award_id) >= 2 " +
-                    "ORDER BY COUNT(DISTINCT ma.movie_id) DESC, " +
-                    "COUNT(DISTINCT aa.award_id) DESC";
-        
-        try (PreparedStatement pstmt = connection.prepareStatement(sql);
+        try (PreparedStatement pstmt = connection.prepareStatement(AWARDED_ACTORS_SQL);
             ResultSet rs = pstmt.executeQuery()) {
             System.out.println("Actors who won 2 or more awards and starred in >8.0 rated movies:");
             int counter = 1;
@@ -224,4 +268,110 @@ private static void listAllMovies(Connection connection) throws SQLException {
             }
         }
     }
+
+    /**
+     * Searches the titles, plots and genres for movies containing every one of
+     * the given words, best matches first, with the matching part of the plot.
+     * @param connection The database connection.
+     * @param words The search words.
+     * @throws SQLException If an SQL error occurs.
+     */
+    private static void searchMovies(Connection connection, String words) throws SQLException {
+        String match = MovieSearch.matchExpression(words);
+        if (match.isEmpty()) {
+            System.out.println("No search words given.");
+            return;
+        }
+        try (PreparedStatement pstmt = connection.prepareStatement(SEARCH_MOVIES_SQL)) {
+            pstmt.setString(1, match);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                System.out.println("Movies matching '" + words + "':");
+                int counter = 1;
+                while (rs.next()) {
+                    System.out.printf("%d. %s (Rating: %.1f)%n   %s%n", counter++, rs.getString("title"),
+                                    rs.getDouble("ratings"), rs.getString("snippet"));
+                }
+                if (counter == 1) {
+                    System.out.println("No movies found matching the search.");
+                }
+            }
+        }
+    }
+
+    /**
+     * Queries the database to list the movies of a genre.
+     * @param connection The database connection.
+     * @param genre The genre name, in any case.
+     * @throws SQLException If an SQL error occurs.
+     */
+    private static void listMoviesInGenre(Connection connection, String genre) throws SQLException {
+        try (PreparedStatement pstmt = connection.prepareStatement(GENRE_MOVIES_SQL)) {
+            pstmt.setString(1, genre);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                System.out.println(genre + " movies:");
+                int counter = 1;
+                while (rs.next()) {
+                    System.out.printf("%d. %s (Rating: %.1f)%n", counter++, rs.getString("title"), rs.getDouble("ratings"));
+                }
+                if (counter == 1) {
+                    System.out.println("No movies found in this genre.");
+                }
+            }
+        }
+    }
+
+    /**
+     * Queries the database to list the movies that have every one of the given
+     * genres and at least the given rating, best rated first. The genres are
+     * tested together as one AND of the movie's genre_mask; a genre beyond the
+     * mask's 63 bits is tested through Movie_Genres instead.
+     * @param connection The database connection.
+     * @param minRating The lowest rating to list.
+     * @param genres The genre names, in any case.
+     * @throws SQLException If an SQL error occurs.
+     */
+    private static void listRatedMoviesInGenres(Connection connection, double minRating, String[] genres)
+            throws SQLException {
+        long mask = 0;
+        List<Integer> unmasked = new ArrayList<>();
+        try (PreparedStatement pstmt = connection.prepareStatement(GENRE_IDS_SQL)) {
+            for (String genre : genres) {
+                pstmt.setString(1, genre);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    if (!rs.next()) {
+                        System.out.println("No genre named '" + genre + "'.");
+                        return;
+                    }
+                    int genreId = rs.getInt(1);
+                    if (genreId <= MovieGenres.MASK_BITS) {
+                        mask |= 1L << (genreId - 1);
+                    } else {
+                        unmasked.add(genreId);
+                    }
+                }
+            }
+        }
+
+        String unmaskedTests = String.join("", Collections.nCopies(unmasked.size(),
+                " AND movie_id IN (SELECT movie_id FROM Movie_Genres WHERE genre_id = ?)"));
+        String sql = RATED_GENRE_MOVIES_SQL.replace(" ORDER BY", unmaskedTests + " ORDER BY");
+        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+            pstmt.setDouble(1, minRating);
+            pstmt.setLong(2, mask);
+            pstmt.setLong(3, mask);
+            for (int i = 0; i < unmasked.size(); i++) {
+                pstmt.setInt(4 + i, unmasked.get(i));
+            }
+            try (ResultSet rs = pstmt.executeQuery()) {
+                System.out.println(String.join(", ", genres) + " movies rated " + minRating + " or higher:");
+                int counter = 1;
+                while (rs.next()) {
+                    System.out.printf("%d. %s (Rating: %.1f)%n", counter++, rs.getString("title"), rs.getDouble("ratings"));
+                }
+                if (counter == 1) {
+                    System.out.println("No movies found matching the criteria.");
+                }
+            }
+        }
+    }
 }
\ No newline at end of file
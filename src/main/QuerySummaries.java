@@ -0,0 +1,91 @@
+package src.main;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * QuerySummaries maintains the summary tables of migration 005, which
+ * QueryDB's queries 5 and 6 read instead of grouping the award and cast
+ * tables on every call. Each summary table has a view of the same name plus
+ * "_Source" that computes it from the base tables. Triggers keep the tables
+ * current one row change at a time, which suits incremental and watch-mode
+ * loads; a full load drops them like the search triggers, and afterwards
+ * refills every table from its view and puts the triggers back. As with the
+ * search triggers, SuspendedTriggers keeps them on record, and recover()
+ * finishes a load that never got to the rebuild.
+ */
+public class QuerySummaries {
+    static final String[] SUMMARY_TABLES = {"Movie_Award_Counts", "Actor_Stats"};
+    static final String SOURCE_SUFFIX = "_Source";
+    static final String OWNER = "Query_Summaries"; // Name the suspended triggers are saved under
+
+    /**
+     * Drops the triggers that keep the summary tables in step with the base
+     * tables, saving them with SuspendedTriggers until rebuild puts them back.
+     * @param connection The database connection, outside a transaction.
+     * @throws SQLException If the triggers cannot be saved or dropped.
+     */
+    public static void suspendTriggers(Connection connection) throws SQLException {
+        if (!hasSummaries(connection)) return;
+        StringBuilder condition = new StringBuilder();
+        for (String table : SUMMARY_TABLES) {
+            if (condition.length() > 0) condition.append(" OR ");
+            condition.append("sql LIKE '%").append(table).append("%'");
+        }
+        SuspendedTriggers.suspend(connection, OWNER, condition.toString());
+    }
+
+    /**
+     * Refills every summary table from its view and recreates the suspended
+     * triggers, in one transaction, then updates the tables' statistics.
+     * @param connection The database connection, outside a transaction.
+     * @throws SQLException If a table or a trigger cannot be written.
+     */
+    static void rebuild(Connection connection) throws SQLException {
+        if (!hasSummaries(connection)) return;
+        long start = System.nanoTime();
+        boolean previousAutoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+        try (Statement stmt = connection.createStatement()) {
+            for (String table : SUMMARY_TABLES) {
+                stmt.execute("DELETE FROM " + table + ";");
+                stmt.execute("INSERT INTO " + table + " SELECT * FROM " + table + SOURCE_SUFFIX + ";");
+            }
+            SuspendedTriggers.restore(connection, OWNER);
+            connection.commit();
+        } catch (SQLException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(previousAutoCommit);
+        }
+        try (Statement stmt = connection.createStatement()) {
+            for (String table : SUMMARY_TABLES) {
+                stmt.execute("ANALYZE " + table + ";");
+            }
+        }
+        System.out.printf("Rebuilt the query summaries in %.2f s%n", (System.nanoTime() - start) / 1e9);
+    }
+
+    /**
+     * Finishes the work of a load that suspended the triggers and never put
+     * them back: the summary tables are refilled and the triggers recreated.
+     * Does nothing otherwise.
+     * @param connection The database connection, outside a transaction.
+     * @return true if the summaries were rebuilt.
+     * @throws SQLException If a table or a trigger cannot be written.
+     */
+    static boolean recover(Connection connection) throws SQLException {
+        if (!SuspendedTriggers.pending(connection, OWNER)) return false;
+        System.out.println("Restoring the query summary triggers suspended by an unfinished load...");
+        rebuild(connection);
+        return true;
+    }
+
+    private static boolean hasSummaries(Connection connection) throws SQLException {
+        try (ResultSet rs = connection.getMetaData().getTables(null, null, SUMMARY_TABLES[0], null)) {
+            return rs.next();
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package src.main;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * ReadAheadInputStream reads its source on a background thread, a block at a
+ * time, so that slow reads (such as gzip decompression) run while the caller
+ * is busy with the previous block. A bounded queue of blocks keeps the reader
+ * at most a few blocks ahead.
+ *
+ * The background thread owns the source: it closes it when it stops, whether
+ * at end of stream, on a failure or because close() interrupted it, so the
+ * source is never closed while a read on it is still running. Any failure is
+ * handed to the consumer after the blocks read before it.
+ */
+public class ReadAheadInputStream extends InputStream {
+    private static final byte[] END = new byte[0];
+
+    private final InputStream source;
+    private final BlockingQueue<byte[]> blocks;
+    private final Thread reader;
+    private volatile IOException failure;
+
+    private byte[] block = null;
+    private int pos = 0;
+    private boolean finished = false;
+
+    /**
+     * Starts reading the source in the background.
+     * @param source The stream to read ahead of the caller.
+     * @param blockSize Bytes per block.
+     * @param blocksAhead Maximum number of blocks read but not yet consumed.
+     */
+    public ReadAheadInputStream(InputStream source, int blockSize, int blocksAhead) {
+        this.source = source;
+        this.blocks = new ArrayBlockingQueue<>(blocksAhead);
+        this.reader = new Thread(() -> readSource(blockSize), "csv-read-ahead");
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    /**
+     * Fills blocks from the source until end of stream, a failure or close(),
+     * then closes the source. A failure is stored before END is queued, so
+     * the consumer sees it once it has used up the blocks read before it.
+     */
+    private void readSource(int blockSize) {
+        try {
+            while (true) {
+                byte[] buffer = new byte[blockSize];
+                int length = 0;
+                while (length < blockSize) {
+                    int n = source.read(buffer, length, blockSize - length);
+                    if (n < 0) break;
+                    length += n;
+                }
+                if (length > 0) {
+                    blocks.put(length == blockSize ? buffer : Arrays.copyOf(buffer, length));
+                }
+                if (length < blockSize) break;
+            }
+        } catch (InterruptedException e) {
+            closeSource();
+            return; // Closed by the consumer
+        } catch (IOException e) {
+            failure = e;
+        } catch (Throwable e) {
+            // Such as an OutOfMemoryError allocating a block; the consumer must still be woken up
+            failure = new IOException("Read-ahead failed: " + e, e);
+        }
+        IOException closeFailure = closeSource();
+        if (failure == null) failure = closeFailure;
+        try {
+            blocks.put(END);
+        } catch (InterruptedException ignored) {
+            // Closed by the consumer
+        }
+    }
+
+    /**
+     * @return The exception raised closing the source, or null.
+     */
+    private IOException closeSource() {
+        try {
+            source.close();
+            return null;
+        } catch (IOException e) {
+            return e;
+        }
+    }
+
+    /**
+     * Moves to the next block when the current one is used up.
+     * @return false at end of stream.
+     */
+    private boolean fill() throws IOException {
+        while (!finished && (block == null || pos == block.length)) {
+            try {
+                block = blocks.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting for input", e);
+            }
+            pos = 0;
+            if (block == END) {
+                finished = true;
+                if (failure != null) throw failure;
+            }
+        }
+        return !finished;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!fill()) return -1;
+        return block[pos++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) return 0;
+        if (!fill()) return -1;
+        int n = Math.min(len, block.length - pos);
+        System.arraycopy(block, pos, b, off, n);
+        pos += n;
+        return n;
+    }
+
+    /**
+     * Stops the background thread, which then closes the source.
+     */
+    @Override
+    public void close() throws IOException {
+        reader.interrupt();
+    }
+}
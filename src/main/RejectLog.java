@@ -0,0 +1,154 @@
+package src.main;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * RejectLog quarantines the CSV lines of one table that were not loaded. Each
+ * line is written to rejects/&lt;table&gt;.csv through a buffered writer with its
+ * reason code and line number, so a dirty feed does not turn into millions of
+ * synchronous stderr writes. Only the first few rejects of a table are echoed
+ * to the console; the rest are counted and reported in one summary.
+ *
+ * The file is only created once the first line is rejected. Its columns are
+ * reason, line and record, where record is the original CSV line.
+ */
+public class RejectLog implements AutoCloseable {
+    static final String DIRECTORY = "rejects";
+    static final int CONSOLE_EXAMPLES = 5; // Rejects per table echoed to the console
+
+    // Reason codes for rows rejected before they reach SQLite
+    static final String COLUMN_COUNT = "COLUMN_COUNT";
+    static final String TYPE_MISMATCH = "TYPE_MISMATCH";
+    static final String MISSING_PARENT = "MISSING_PARENT";
+
+    private final File file;
+    private final boolean append;
+    private BufferedWriter writer = null;
+    private int count = 0;
+    private boolean failed = false;
+    private final Map<String, Integer> reasonCounts = new LinkedHashMap<>();
+
+    /**
+     * Creates the reject log of a table. Nothing is written until a line is rejected.
+     * @param table The table name.
+     * @param append true to keep the lines rejected by an earlier run, such as
+     *               the run that a resumed load continues; false to start afresh.
+     */
+    public RejectLog(String table, boolean append) {
+        this.file = new File(DIRECTORY, table + ".csv");
+        this.append = append;
+        if (!append) {
+            file.delete(); // Stale rejects from an earlier load
+        }
+    }
+
+    /**
+     * Maps an insert failure to a reason code, using the SQLite error codes
+     * that the loader already tells apart.
+     * @param e The exception raised by the insert.
+     * @return The reason code.
+     */
+    static String reasonFor(SQLException e) {
+        switch (e.getErrorCode()) {
+            case 19:
+                return "SQLITE_CONSTRAINT_19";
+            case 1:
+                return "SQLITE_ERROR_1";
+            case 1299:
+                return "SQLITE_TOOBIG_1299";
+            default:
+                return "SQLITE_" + e.getErrorCode();
+        }
+    }
+
+    /**
+     * Quarantines one CSV line. The first few rejects are also printed.
+     * @param reason The reason code.
+     * @param lineNumber The line number of the record in the CSV file, or 0 for
+     *                   a row removed after loading, whose line is no longer known.
+     * @param line The CSV line as it appeared in the input, or the row's stored values.
+     * @param detail A human-readable explanation, printed with the console examples.
+     */
+    public void reject(String reason, long lineNumber, String line, String detail) {
+        count++;
+        reasonCounts.merge(reason, 1, Integer::sum);
+        if (count <= CONSOLE_EXAMPLES) {
+            System.err.println((lineNumber > 0 ? "Rejected line " + lineNumber : "Rejected row") +
+                " (" + reason + "): " + detail);
+            System.err.println("Problem line: " + line);
+        }
+        if (failed) return;
+        try {
+            if (writer == null) {
+                file.getParentFile().mkdirs();
+                boolean newFile = !append || !file.exists() || file.length() == 0;
+                writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, append), StandardCharsets.UTF_8), 64 * 1024);
+                if (newFile) {
+                    writer.write("reason,line,record");
+                    writer.newLine();
+                }
+            }
+            writer.write(reason);
+            writer.write(',');
+            if (lineNumber > 0) {
+                writer.write(Long.toString(lineNumber));
+            }
+            writer.write(",\"");
+            writer.write(line.replace("\"", "\"\""));
+            writer.write('"');
+            writer.newLine();
+        } catch (IOException e) {
+            // Keep loading; the rows are still counted and reported in the summary
+            System.err.println("Error writing reject file " + file + ": " + e.getMessage());
+            failed = true;
+        }
+    }
+
+    /**
+     * @return The number of rejected lines.
+     */
+    public int count() {
+        return count;
+    }
+
+    /**
+     * @return The reject file path.
+     */
+    public String path() {
+        return file.getPath();
+    }
+
+    /**
+     * Prints how many lines were rejected, per reason code, if there were any.
+     * @param csvFile The CSV file the lines came from.
+     */
+    public void printSummary(String csvFile) {
+        if (count == 0) return;
+        StringBuilder reasons = new StringBuilder();
+        for (Map.Entry<String, Integer> entry : reasonCounts.entrySet()) {
+            if (reasons.length() > 0) reasons.append(", ");
+            reasons.append(entry.getKey()).append(' ').append(entry.getValue());
+        }
+        System.err.println(count + " row(s) of " + csvFile + " rejected (" + reasons + ")" +
+            (failed ? "" : ", written to " + file.getPath()) +
+            (count > CONSOLE_EXAMPLES ? "; only the first " + CONSOLE_EXAMPLES + " were shown." : "."));
+    }
+
+    @Override
+    public void close() {
+        if (writer == null) return;
+        try {
+            writer.close();
+        } catch (IOException e) {
+            System.err.println("Error writing reject file " + file + ": " + e.getMessage());
+        }
+        writer = null;
+    }
+}
@@ -0,0 +1,223 @@
+package src.main;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * SchemaMigrator brings a database up to the current schema without
+ * rebuilding it. The schema version is kept in PRAGMA user_version: schema.ddl
+ * is version 1, and each script migrations/NNN_description.sql takes the
+ * database to version NNN. Only the scripts above the database's version are
+ * run, all of them and the new version number in one transaction, so a failed
+ * script leaves the database at its old version with nothing half applied.
+ *
+ * A change such as a new index therefore costs one CREATE INDEX on the live
+ * database instead of a fresh database and a full repopulate, and the loaded
+ * rows, their statistics and the warm page cache are kept.
+ */
+public class SchemaMigrator {
+    public static final String MIGRATIONS_DIR = "migrations";
+    static final int BASELINE_VERSION = 1; // The version of a database created from schema.ddl
+    private static final Pattern MIGRATION_NAME = Pattern.compile("(\\d+)_.*\\.sql");
+
+    /**
+     * Applies schema.ddl to an empty database and then every pending migration.
+     * A database created from schema.ddl before versions were recorded has
+     * version 0 but already has the tables, so it is taken to be at version 1.
+     * That holds because schema.ddl keeps the version 1 layout; every later
+     * change, including the pair-keyed junction tables, is a migration.
+     * @param connection The database connection, in autocommit mode.
+     * @param baselineFile The DDL file of version 1.
+     * @param migrationsDir The directory holding the numbered migration scripts.
+     * @return The schema version of the database afterwards.
+     * @throws SQLException If a statement fails; the database is left at its old version.
+     * @throws IOException If a script cannot be read.
+     */
+    public static int migrate(Connection connection, String baselineFile, String migrationsDir)
+            throws SQLException, IOException {
+        int version = schemaVersion(connection);
+        boolean empty = version == 0 && !hasTable(connection, "Actors");
+        if (version == 0 && !empty) {
+            version = BASELINE_VERSION;
+        }
+
+        Map<Integer, File> pending = pendingMigrations(migrationsDir, empty ? 0 : version);
+        if (!empty && pending.isEmpty()) {
+            System.out.println("Database schema is up to date at version " + version + ".");
+            return version;
+        }
+
+        connection.setAutoCommit(false);
+        try (Statement stmt = connection.createStatement()) {
+            if (empty) {
+                executeScript(stmt, read(new File(baselineFile)));
+                version = BASELINE_VERSION;
+            }
+            for (Map.Entry<Integer, File> migration : pending.entrySet()) {
+                if (migration.getKey() <= version) continue;
+                executeScript(stmt, read(migration.getValue()));
+                version = migration.getKey();
+                System.out.println("Applied migration " + migration.getValue().getName());
+            }
+            stmt.execute("PRAGMA user_version = " + version + ";");
+            connection.commit();
+        } catch (SQLException | IOException | RuntimeException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(true);
+        }
+        System.out.println("Database schema is at version " + version + ".");
+        return version;
+    }
+
+    /**
+     * @return The version recorded in the database, 0 if none was recorded.
+     */
+    static int schemaVersion(Connection connection) throws SQLException {
+        try (Statement stmt = connection.createStatement();
+            ResultSet rs = stmt.executeQuery("PRAGMA user_version;")) {
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+
+    private static boolean hasTable(Connection connection, String table) throws SQLException {
+        try (ResultSet rs = connection.getMetaData().getTables(null, null, table, null)) {
+            return rs.next();
+        }
+    }
+
+    /**
+     * Lists the migration scripts numbered above a version.
+     * @param migrationsDir The directory holding the scripts; a missing directory holds none.
+     * @param version The version the database is at.
+     * @return The scripts by version number, in ascending order.
+     * @throws IOException If two scripts have the same number.
+     */
+    static Map<Integer, File> pendingMigrations(String migrationsDir, int version) throws IOException {
+        Map<Integer, File> pending = new TreeMap<>();
+        File[] files = new File(migrationsDir).listFiles();
+        if (files == null) return pending;
+        for (File file : files) {
+            Matcher matcher = MIGRATION_NAME.matcher(file.getName());
+            if (!matcher.matches()) continue;
+            int number = Integer.parseInt(matcher.group(1));
+            if (number <= version) continue;
+            File previous = pending.put(number, file);
+            if (previous != null) {
+                throw new IOException("Migrations " + previous.getName() + " and " + file.getName() +
+                        " have the same number");
+            }
+        }
+        return pending;
+    }
+
+    private static String read(File file) throws IOException {
+        return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Runs every statement of a script.
+     * @param stmt The statement to run them on.
+     * @param script The script text.
+     * @throws SQLException If a statement fails.
+     */
+    static void executeScript(Statement stmt, String script) throws SQLException {
+        for (String sql : splitStatements(script)) {
+            stmt.execute(sql);
+        }
+    }
+
+    /**
+     * Splits a SQL script into statements at the semicolons that end them.
+     * Semicolons inside string literals, quoted identifiers and comments do
+     * not count, and neither do the ones between the BEGIN and END of a
+     * CREATE TRIGGER body, which hold the trigger's own statements.
+     * @param script The script text.
+     * @return The statements, without their final semicolons or comments.
+     */
+    public static List<String> splitStatements(String script) {
+        List<String> statements = new ArrayList<>();
+        StringBuilder sql = new StringBuilder();
+        List<String> words = new ArrayList<>(); // The leading words of the statement, to recognise a trigger
+        boolean trigger = false;
+        int depth = 0; // Open BEGIN and CASE blocks within a trigger
+        int i = 0;
+        int n = script.length();
+
+        while (i < n) {
+            char c = script.charAt(i);
+            if (c == '-' && i + 1 < n && script.charAt(i + 1) == '-') {
+                while (i < n && script.charAt(i) != '\n') i++;
+                sql.append(' ');
+            } else if (c == '/' && i + 1 < n && script.charAt(i + 1) == '*') {
+                int end = script.indexOf("*/", i + 2);
+                i = end < 0 ? n : end + 2;
+                sql.append(' ');
+            } else if (c == '\'' || c == '"' || c == '`' || c == '[') {
+                char close = c == '[' ? ']' : c;
+                int end = i + 1;
+                while (end < n) {
+                    if (script.charAt(end) == close) {
+                        if (close != ']' && end + 1 < n && script.charAt(end + 1) == close) {
+                            end += 2; // A doubled quote stands for itself
+                            continue;
+                        }
+                        break;
+                    }
+                    end++;
+                }
+                end = Math.min(end + 1, n);
+                sql.append(script, i, end);
+                i = end;
+            } else if (Character.isLetter(c) || c == '_') {
+                int end = i;
+                while (end < n && (Character.isLetterOrDigit(script.charAt(end)) || script.charAt(end) == '_'
+                        || script.charAt(end) == '$')) {
+                    end++;
+                }
+                String word = script.substring(i, end).toUpperCase();
+                if (words.size() < 3) {
+                    words.add(word);
+                    trigger = trigger || (word.equals("TRIGGER") && words.get(0).equals("CREATE"));
+                }
+                if (trigger) {
+                    if (word.equals("BEGIN") || word.equals("CASE")) depth++;
+                    else if (word.equals("END")) depth--;
+                }
+                sql.append(script, i, end);
+                i = end;
+            } else if (c == ';' && depth <= 0) {
+                addStatement(statements, sql);
+                words.clear();
+                trigger = false;
+                depth = 0;
+                i++;
+            } else {
+                sql.append(c);
+                i++;
+            }
+        }
+        addStatement(statements, sql);
+        return statements;
+    }
+
+    private static void addStatement(List<String> statements, StringBuilder sql) {
+        String statement = sql.toString().trim();
+        if (!statement.isEmpty()) {
+            statements.add(statement);
+        }
+        sql.setLength(0);
+    }
+}
@@ -0,0 +1,389 @@
+package src.main;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Snapshot writes the loaded tables to a compact binary file and reads them
+ * back, so that a rebuild from data that has not changed skips CSV parsing.
+ *
+ * The file starts with a header: the magic number, the format version, and
+ * per table its name, its columns with their encoding and its row count,
+ * followed by a CRC32 of the header. Each table section then holds the rows
+ * in order, followed by a CRC32 of the section. A row is a null bitmap and
+ * the non-null values: integers and reals as 8 bytes, text as a 4-byte code
+ * into the column's dictionary. Text is dictionary-encoded as it is written:
+ * a code equal to the current dictionary size adds a new entry, whose
+ * length-prefixed UTF-8 bytes follow the code.
+ *
+ * A snapshot is written to a temporary file next to the target and renamed
+ * over it once complete, so the target name never holds a partial snapshot.
+ */
+public class Snapshot {
+    private static final int MAGIC = 0x534E4150; // "SNAP"
+    private static final int VERSION = 1;
+    private static final byte INTEGER = 1;
+    private static final byte REAL = 2;
+    private static final byte TEXT = 3;
+    private static final int BUFFER_SIZE = 256 * 1024;
+    private static final int MAX_PARAMETERS = 999; // SQLite's lowest default limit on parameters per statement
+
+    /**
+     * Writes tables to a snapshot file. The rows go to file.tmp, which is
+     * synced and then moved over the file in one atomic step; if anything
+     * fails, the temporary file is deleted and an existing file is kept.
+     * @param connection The database connection.
+     * @param file The snapshot file to write, replaced if it exists.
+     * @param tables The tables to write, parents before the tables that refer to them.
+     * @throws SQLException If a table cannot be read or a column mixes value types.
+     * @throws IOException If the file cannot be written.
+     */
+    public static void export(Connection connection, String file, List<String> tables) throws SQLException, IOException {
+        List<TableLayout> layouts = new ArrayList<>();
+        for (String table : tables) {
+            layouts.add(TableLayout.of(connection, table));
+        }
+
+        Path target = Paths.get(file).toAbsolutePath();
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        boolean moved = false;
+        CRC32 crc = new CRC32();
+        try {
+            try (FileOutputStream fileOut = new FileOutputStream(temp.toFile());
+                DataOutputStream out = new DataOutputStream(new CheckedOutputStream(
+                    new BufferedOutputStream(fileOut, BUFFER_SIZE), crc));
+                Statement stmt = connection.createStatement()) {
+                writeTables(out, stmt, crc, layouts);
+                out.flush();
+                fileOut.getFD().sync(); // On disk before the rename makes it visible
+            }
+            // The streams are closed here, so the file is complete when it is moved
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            moved = true;
+        } finally {
+            if (!moved) temp.toFile().delete();
+        }
+    }
+
+    /**
+     * Writes the header and every table section.
+     */
+    private static void writeTables(DataOutputStream out, Statement stmt, CRC32 crc, List<TableLayout> layouts)
+            throws SQLException, IOException {
+        writeHeader(out, layouts);
+        for (TableLayout layout : layouts) {
+            crc.reset();
+            List<Map<String, Integer>> dictionaries = new ArrayList<>();
+            for (int i = 0; i < layout.columns.length; i++) {
+                dictionaries.add(new HashMap<>());
+            }
+            byte[] nulls = new byte[(layout.columns.length + 7) / 8];
+            // Rows come in storage order: by rowid, or by primary key for WITHOUT ROWID tables
+            try (ResultSet rs = stmt.executeQuery("SELECT " + String.join(", ", layout.columns) + " FROM " + layout.table)) {
+                while (rs.next()) {
+                    writeRow(out, rs, layout.types, dictionaries, nulls);
+                }
+            }
+            out.writeInt((int) crc.getValue());
+        }
+    }
+
+    private static void writeHeader(DataOutputStream out, List<TableLayout> layouts) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream header = new DataOutputStream(bytes);
+        header.writeInt(layouts.size());
+        for (TableLayout layout : layouts) {
+            header.writeUTF(layout.table);
+            header.writeInt(layout.columns.length);
+            for (int i = 0; i < layout.columns.length; i++) {
+                header.writeUTF(layout.columns[i]);
+                header.writeByte(layout.types[i]);
+            }
+            header.writeLong(layout.rows);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(bytes.toByteArray());
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(bytes.size());
+        bytes.writeTo(out);
+        out.writeInt((int) crc.getValue());
+    }
+
+    private static void writeRow(DataOutputStream out, ResultSet rs, byte[] types, List<Map<String, Integer>> dictionaries,
+                                 byte[] nulls) throws SQLException, IOException {
+        Arrays.fill(nulls, (byte) 0);
+        for (int i = 0; i < types.length; i++) {
+            if (rs.getObject(i + 1) == null) nulls[i >> 3] |= 1 << (i & 7);
+        }
+        out.write(nulls);
+        for (int i = 0; i < types.length; i++) {
+            if ((nulls[i >> 3] & (1 << (i & 7))) != 0) continue;
+            switch (types[i]) {
+                case INTEGER:
+                    out.writeLong(rs.getLong(i + 1));
+                    break;
+                case REAL:
+                    out.writeDouble(rs.getDouble(i + 1));
+                    break;
+                default:
+                    String value = rs.getString(i + 1);
+                    Map<String, Integer> dictionary = dictionaries.get(i);
+                    Integer code = dictionary.get(value);
+                    if (code != null) {
+                        out.writeInt(code);
+                    } else {
+                        out.writeInt(dictionary.size());
+                        dictionary.put(value, dictionary.size());
+                        byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+                        out.writeInt(utf8.length);
+                        out.write(utf8);
+                    }
+            }
+        }
+    }
+
+    /**
+     * Replaces the contents of the tables in a snapshot file with its rows,
+     * in one transaction. Nothing is changed if a checksum does not match.
+     * The rows come from a consistent database and are checksummed, so
+     * foreign keys are not checked row by row, and since no single row can be
+     * retried, many rows are inserted per statement.
+     * @param connection The database connection, in auto-commit mode.
+     * @param file The snapshot file to read.
+     * @param batchSize Rows per INSERT statement, within SQLite's parameter limit.
+     * @return The number of rows imported.
+     * @throws IOException If the file cannot be read or is not a valid snapshot.
+     * @throws SQLException If a table cannot be written.
+     */
+    public static long importFrom(Connection connection, String file, int batchSize) throws IOException, SQLException {
+        CRC32 crc = new CRC32();
+        long imported = 0;
+        boolean foreignKeys;
+        try (Statement stmt = connection.createStatement();
+            ResultSet rs = stmt.executeQuery("PRAGMA foreign_keys;")) {
+            foreignKeys = rs.getInt(1) == 1;
+        }
+        try (DataInputStream in = new DataInputStream(new CheckedInputStream(
+                new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE), crc));
+            Statement stmt = connection.createStatement()) {
+            List<TableLayout> layouts = readHeader(in, file);
+            stmt.execute("PRAGMA foreign_keys = OFF;"); // Only takes effect outside a transaction
+            connection.setAutoCommit(false);
+            try {
+                for (int t = layouts.size() - 1; t >= 0; t--) {
+                    stmt.execute("DELETE FROM " + layouts.get(t).table);
+                }
+                for (TableLayout layout : layouts) {
+                    crc.reset();
+                    imported += readRows(connection, in, layout, batchSize);
+                    long expected = crc.getValue();
+                    if (in.readInt() != (int) expected) {
+                        throw new IOException("Checksum mismatch in the " + layout.table + " section of " + file);
+                    }
+                }
+                connection.commit();
+            } catch (IOException | SQLException | RuntimeException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+                if (foreignKeys) stmt.execute("PRAGMA foreign_keys = ON;");
+            }
+        }
+        return imported;
+    }
+
+    private static List<TableLayout> readHeader(DataInputStream in, String file) throws IOException {
+        if (in.readInt() != MAGIC) {
+            throw new IOException(file + " is not a snapshot file.");
+        }
+        int version = in.readInt();
+        if (version != VERSION) {
+            throw new IOException(file + " has snapshot version " + version + ", expected " + VERSION + ".");
+        }
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+        if (in.readInt() != (int) crc.getValue()) {
+            throw new IOException("Checksum mismatch in the header of " + file);
+        }
+
+        DataInputStream header = new DataInputStream(new ByteArrayInputStream(bytes));
+        List<TableLayout> layouts = new ArrayList<>();
+        int tableCount = header.readInt();
+        for (int t = 0; t < tableCount; t++) {
+            String table = header.readUTF();
+            String[] columns = new String[header.readInt()];
+            byte[] types = new byte[columns.length];
+            for (int i = 0; i < columns.length; i++) {
+                columns[i] = header.readUTF();
+                types[i] = header.readByte();
+            }
+            layouts.add(new TableLayout(table, columns, types, header.readLong()));
+        }
+        return layouts;
+    }
+
+    private static long readRows(Connection connection, DataInputStream in, TableLayout layout, int batchSize)
+            throws IOException, SQLException {
+        int columns = layout.columns.length;
+        int rowsPerStatement = (int) Math.max(1, Math.min(Math.min(batchSize, MAX_PARAMETERS / columns), layout.rows));
+        List<List<String>> dictionaries = new ArrayList<>();
+        for (int i = 0; i < columns; i++) {
+            dictionaries.add(new ArrayList<>());
+        }
+        byte[] nulls = new byte[(columns + 7) / 8];
+        PreparedStatement pstmt = connection.prepareStatement(insertSql(layout, rowsPerStatement));
+        int statementParameters = rowsPerStatement * columns;
+        try {
+            int parameter = 0;
+            for (long row = 1; row <= layout.rows; row++) {
+                if (parameter == 0 && layout.rows - row + 1 < rowsPerStatement) {
+                    int left = (int) (layout.rows - row + 1);
+                    pstmt.close(); // The last statement holds the rows that are left
+                    pstmt = connection.prepareStatement(insertSql(layout, left));
+                    statementParameters = left * columns;
+                }
+                in.readFully(nulls);
+                for (int i = 0; i < columns; i++) {
+                    parameter++;
+                    if ((nulls[i >> 3] & (1 << (i & 7))) != 0) {
+                        pstmt.setNull(parameter, Types.NULL);
+                        continue;
+                    }
+                    switch (layout.types[i]) {
+                        case INTEGER:
+                            pstmt.setLong(parameter, in.readLong());
+                            break;
+                        case REAL:
+                            pstmt.setDouble(parameter, in.readDouble());
+                            break;
+                        default:
+                            List<String> dictionary = dictionaries.get(i);
+                            int code = in.readInt();
+                            if (code == dictionary.size()) {
+                                byte[] utf8 = new byte[in.readInt()];
+                                in.readFully(utf8);
+                                dictionary.add(new String(utf8, StandardCharsets.UTF_8));
+                            } else if (code < 0 || code > dictionary.size()) {
+                                throw new IOException("Invalid dictionary code " + code + " in " + layout.table);
+                            }
+                            pstmt.setString(parameter, dictionary.get(code));
+                    }
+                }
+                if (parameter == statementParameters) {
+                    pstmt.executeUpdate();
+                    parameter = 0;
+                }
+            }
+        } finally {
+            pstmt.close();
+        }
+        return layout.rows;
+    }
+
+    /**
+     * @return An INSERT statement for the given number of rows of a table.
+     */
+    private static String insertSql(TableLayout layout, int rows) {
+        String row = "(" + String.join(", ", Collections.nCopies(layout.columns.length, "?")) + ")";
+        return "INSERT INTO " + layout.table + " (" + String.join(", ", layout.columns) + ") VALUES " +
+            String.join(", ", Collections.nCopies(rows, row));
+    }
+
+    /**
+     * The columns of a table, how each is encoded, and its row count.
+     */
+    private static class TableLayout {
+        final String table;
+        final String[] columns;
+        final byte[] types;
+        final long rows;
+
+        TableLayout(String table, String[] columns, byte[] types, long rows) {
+            this.table = table;
+            this.columns = columns;
+            this.types = types;
+            this.rows = rows;
+        }
+
+        /**
+         * Reads a table's columns and picks each column's encoding from the
+         * types of the values actually stored in it.
+         * @throws SQLException If a column holds values of more than one type.
+         */
+        static TableLayout of(Connection connection, String table) throws SQLException {
+            List<String> columns = new ArrayList<>();
+            try (Statement stmt = connection.createStatement();
+                ResultSet rs = stmt.executeQuery("PRAGMA table_info(" + table + ")")) {
+                while (rs.next()) {
+                    columns.add(rs.getString("name"));
+                }
+            }
+            if (columns.isEmpty()) {
+                throw new SQLException("Table " + table + " does not exist.");
+            }
+            byte[] types = new byte[columns.size()];
+            long rows;
+            try (Statement stmt = connection.createStatement()) {
+                try (ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM " + table)) {
+                    rows = rs.getLong(1);
+                }
+                for (int i = 0; i < types.length; i++) {
+                    types[i] = columnType(stmt, table, columns.get(i));
+                }
+            }
+            return new TableLayout(table, columns.toArray(new String[0]), types, rows);
+        }
+
+        private static byte columnType(Statement stmt, String table, String column) throws SQLException {
+            boolean integer = false, real = false, text = false;
+            try (ResultSet rs = stmt.executeQuery("SELECT DISTINCT typeof(" + column + ") FROM " + table)) {
+                while (rs.next()) {
+                    switch (rs.getString(1)) {
+                        case "integer": integer = true; break;
+                        case "real": real = true; break;
+                        case "text": text = true; break;
+                        case "null": break;
+                        default:
+                            throw new SQLException("Column " + table + "." + column + " holds " + rs.getString(1) +
+                                " values, which snapshots do not store.");
+                    }
+                }
+            }
+            if (text && (integer || real)) {
+                throw new SQLException("Column " + table + "." + column + " mixes text and numbers.");
+            }
+            if (text) return TEXT;
+            return real ? REAL : INTEGER; // Integers in a REAL column come back as reals anyway
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package src.main;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * SuspendedTriggers takes triggers out of the way of a bulk load and puts
+ * them back afterwards, for the components that keep derived tables in step
+ * with single-row changes (MovieSearch and QuerySummaries).
+ *
+ * The SQL of each dropped trigger is saved in the Suspended_Triggers table,
+ * under the name of the component that owns it, in the same transaction as
+ * the drop. If the load fails or the process dies before the triggers are
+ * restored, they stay on record, and the next run rebuilds the derived table
+ * and recreates them before it does anything else.
+ */
+public class SuspendedTriggers {
+    static final String TABLE = "Suspended_Triggers";
+
+    /**
+     * Drops the triggers selected by a condition on sqlite_master and saves
+     * their SQL, in one transaction.
+     * @param connection The database connection, outside a transaction.
+     * @param owner The component the triggers belong to.
+     * @param condition An SQL condition on the sqlite_master row of a trigger.
+     * @return The number of triggers dropped.
+     * @throws SQLException If the triggers cannot be saved or dropped.
+     */
+    static int suspend(Connection connection, String owner, String condition) throws SQLException {
+        String selected = "FROM sqlite_master WHERE type = 'trigger' AND (" + condition + ")";
+        List<String> names = new ArrayList<>();
+        boolean autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("CREATE TABLE IF NOT EXISTS " + TABLE +
+                " (name TEXT PRIMARY KEY, owner TEXT NOT NULL, sql TEXT NOT NULL)");
+            try (ResultSet rs = stmt.executeQuery("SELECT name " + selected)) {
+                while (rs.next()) {
+                    names.add(rs.getString("name"));
+                }
+            }
+            try (PreparedStatement save = connection.prepareStatement(
+                    "INSERT OR REPLACE INTO " + TABLE + " (name, owner, sql) SELECT name, ?, sql " + selected)) {
+                save.setString(1, owner);
+                save.executeUpdate();
+            }
+            for (String name : names) {
+                stmt.execute("DROP TRIGGER \"" + name + "\";");
+            }
+            connection.commit();
+        } catch (SQLException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(autoCommit);
+        }
+        return names.size();
+    }
+
+    /**
+     * @param connection The database connection.
+     * @param owner The component the triggers belong to.
+     * @return true if triggers of the owner were suspended and not restored yet.
+     * @throws SQLException If the saved triggers cannot be read.
+     */
+    static boolean pending(Connection connection, String owner) throws SQLException {
+        try (ResultSet rs = connection.getMetaData().getTables(null, null, TABLE, null)) {
+            if (!rs.next()) return false;
+        }
+        try (PreparedStatement pstmt = connection.prepareStatement("SELECT 1 FROM " + TABLE + " WHERE owner = ?")) {
+            pstmt.setString(1, owner);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next();
+            }
+        }
+    }
+
+    /**
+     * Recreates the saved triggers of an owner and forgets them. Runs in the
+     * caller's transaction, so that the triggers come back in the same commit
+     * as the rebuilt table they maintain.
+     * @param connection The database connection.
+     * @param owner The component the triggers belong to.
+     * @return The number of triggers recreated.
+     * @throws SQLException If a trigger cannot be recreated.
+     */
+    static int restore(Connection connection, String owner) throws SQLException {
+        if (!pending(connection, owner)) return 0;
+        List<String> triggers = new ArrayList<>();
+        try (PreparedStatement select = connection.prepareStatement("SELECT sql FROM " + TABLE + " WHERE owner = ?")) {
+            select.setString(1, owner);
+            try (ResultSet rs = select.executeQuery()) {
+                while (rs.next()) {
+                    triggers.add(rs.getString("sql"));
+                }
+            }
+        }
+        try (Statement stmt = connection.createStatement();
+            PreparedStatement delete = connection.prepareStatement("DELETE FROM " + TABLE + " WHERE owner = ?")) {
+            for (String trigger : triggers) {
+                stmt.execute(trigger);
+            }
+            delete.setString(1, owner);
+            delete.executeUpdate();
+        }
+        return triggers.size();
+    }
+}
@@ -0,0 +1,284 @@
+package src.main;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Locale;
+
+/**
+ * TypedBinder binds CSV fields to an INSERT statement using the declared types
+ * of the target columns, read once from PRAGMA table_info. INTEGER columns are
+ * bound with setLong and REAL columns with setDouble, parsed straight from the
+ * field's characters; every other column is bound as text.
+ *
+ * Rows are staged into column arrays sized for one batch, so numeric values
+ * are never turned into Strings or boxed.
+ */
+public class TypedBinder {
+    static final int TEXT = 0;
+    static final int INTEGER = 1;
+    static final int REAL = 2;
+
+    // Powers of ten that are exact doubles, for the fast decimal path
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private final String[] columns;
+    private final int[] types;
+
+    // Staged rows, one array per column; only the array matching the column type is used
+    private long[][] longs;
+    private double[][] doubles;
+    private String[][] texts;
+    private boolean[][] nulls;
+
+    /**
+     * Reads the declared types of the given columns.
+     * @param connection The database connection.
+     * @param table The table the columns belong to.
+     * @param columns The columns in INSERT order.
+     * @param capacity Number of rows that can be staged at once.
+     * @throws SQLException If the table's schema cannot be read.
+     */
+    public TypedBinder(Connection connection, String table, String[] columns, int capacity) throws SQLException {
+        this.columns = columns;
+        this.types = new int[columns.length];
+        try (Statement stmt = connection.createStatement();
+            ResultSet rs = stmt.executeQuery("PRAGMA table_info(" + table + ")")) {
+            while (rs.next()) {
+                String name = rs.getString("name");
+                for (int i = 0; i < columns.length; i++) {
+                    if (columns[i].equalsIgnoreCase(name)) {
+                        types[i] = typeOf(rs.getString("type"));
+                    }
+                }
+            }
+        }
+        longs = new long[columns.length][];
+        doubles = new double[columns.length][];
+        texts = new String[columns.length][];
+        nulls = new boolean[columns.length][capacity];
+        for (int i = 0; i < columns.length; i++) {
+            if (types[i] == INTEGER) longs[i] = new long[capacity];
+            else if (types[i] == REAL) doubles[i] = new double[capacity];
+            else texts[i] = new String[capacity];
+        }
+    }
+
+    /**
+     * @return The number of columns bound per row.
+     */
+    int columnCount() {
+        return types.length;
+    }
+
+    /**
+     * Maps a declared column type to the binding used for it, following
+     * SQLite's affinity rules for INTEGER and REAL. Types with NUMERIC affinity
+     * such as DATE stay text, since the CSV files hold them as text.
+     */
+    static int typeOf(String declaredType) {
+        String type = declaredType == null ? "" : declaredType.toUpperCase(Locale.ROOT);
+        if (type.contains("INT")) return INTEGER;
+        if (type.contains("REAL") || type.contains("FLOA") || type.contains("DOUB")) return REAL;
+        return TEXT;
+    }
+
+    /**
+     * Stages one row. Numeric fields are parsed now so that a bad value is
+     * found before the row reaches the database.
+     * @param row The staging slot, below the capacity.
+     * @param fields The field values; null or empty fields are SQL NULL.
+     * @return null if the row was staged, or a message describing the first bad field.
+     */
+    String stage(int row, CharSequence[] fields) {
+        if (types.length > 0 && row >= nulls[0].length) grow(Math.max(row + 1, nulls[0].length * 2));
+        for (int i = 0; i < types.length; i++) {
+            CharSequence field = fields[i];
+            boolean isNull = field == null || field.length() == 0;
+            nulls[i][row] = isNull;
+            if (isNull) continue;
+            try {
+                if (types[i] == INTEGER) {
+                    longs[i][row] = parseLong(field);
+                } else if (types[i] == REAL) {
+                    doubles[i][row] = parseDouble(field);
+                } else {
+                    texts[i][row] = field.toString();
+                }
+            } catch (NumberFormatException e) {
+                return "column " + columns[i] + " expects " + (types[i] == INTEGER ? "INTEGER" : "REAL") +
+                    " but got '" + field + "'";
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Replaces staged foreign key values by the ids they map to, such as the
+     * canonical row of a deduplicated parent. Values outside a map are kept.
+     * @param row The staging slot.
+     * @param maps The id map of each column, or null for columns that are kept.
+     */
+    void remap(int row, int[][] maps) {
+        for (int i = 0; i < maps.length; i++) {
+            if (maps[i] == null || types[i] != INTEGER || nulls[i][row]) continue;
+            long id = longs[i][row];
+            if (id > 0 && id < maps[i].length) longs[i][row] = maps[i][(int) id];
+        }
+    }
+
+    /**
+     * Checks the staged foreign key values of a row against the ids of the parent rows.
+     * @param row The staging slot.
+     * @param parentIds Ids present in the parent table of each column, or null for
+     *                  columns that are not checked.
+     * @return The index of the first column whose id is missing, or -1 if all are present.
+     */
+    int missingParent(int row, BitSet[] parentIds) {
+        for (int i = 0; i < parentIds.length; i++) {
+            if (parentIds[i] == null || types[i] != INTEGER || nulls[i][row]) continue;
+            long id = longs[i][row];
+            if (id < 0 || id > Integer.MAX_VALUE || !parentIds[i].get((int) id)) return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Compares a staged row with a row read back from the table with getObject.
+     * Numeric columns are compared by value, so a rating stored as 8.0 matches
+     * the field 8; other columns are compared as text.
+     * @param row The staging slot.
+     * @param values The stored values of the same columns, null for SQL NULL.
+     * @return true if every column holds the staged value.
+     */
+    boolean matches(int row, Object[] values) {
+        for (int i = 0; i < types.length; i++) {
+            Object value = values[i];
+            if (nulls[i][row] || value == null) {
+                if (nulls[i][row] != (value == null)) return false;
+            } else if (types[i] == INTEGER) {
+                if (!(value instanceof Long || value instanceof Integer) || ((Number) value).longValue() != longs[i][row]) return false;
+            } else if (types[i] == REAL) {
+                if (!(value instanceof Number) || ((Number) value).doubleValue() != doubles[i][row]) return false;
+            } else if (!value.toString().equals(texts[i][row])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Binds a staged row to the statement's parameters.
+     * @param pstmt The INSERT statement.
+     * @param row The staging slot.
+     * @throws SQLException If a parameter cannot be set.
+     */
+    void bind(PreparedStatement pstmt, int row) throws SQLException {
+        for (int i = 0; i < types.length; i++) {
+            if (nulls[i][row]) {
+                pstmt.setNull(i + 1, types[i] == INTEGER ? Types.BIGINT : types[i] == REAL ? Types.DOUBLE : Types.VARCHAR);
+            } else if (types[i] == INTEGER) {
+                pstmt.setLong(i + 1, longs[i][row]);
+            } else if (types[i] == REAL) {
+                pstmt.setDouble(i + 1, doubles[i][row]);
+            } else {
+                pstmt.setString(i + 1, texts[i][row]);
+            }
+        }
+    }
+
+    /**
+     * Drops references to staged text so the Strings can be collected.
+     * @param rows Number of rows that were staged.
+     */
+    void clear(int rows) {
+        for (String[] column : texts) {
+            if (column != null) Arrays.fill(column, 0, Math.min(rows, column.length), null);
+        }
+    }
+
+    private void grow(int capacity) {
+        for (int i = 0; i < types.length; i++) {
+            nulls[i] = Arrays.copyOf(nulls[i], capacity);
+            if (longs[i] != null) longs[i] = Arrays.copyOf(longs[i], capacity);
+            if (doubles[i] != null) doubles[i] = Arrays.copyOf(doubles[i], capacity);
+            if (texts[i] != null) texts[i] = Arrays.copyOf(texts[i], capacity);
+        }
+    }
+
+    /**
+     * Parses a decimal integer with an optional sign.
+     * @param s The characters to parse.
+     * @return The value.
+     * @throws NumberFormatException If s is not an integer or does not fit in a long.
+     */
+    public static long parseLong(CharSequence s) {
+        int length = s.length();
+        int i = 0;
+        boolean negative = false;
+        if (length > 0 && (s.charAt(0) == '-' || s.charAt(0) == '+')) {
+            negative = s.charAt(0) == '-';
+            i++;
+        }
+        if (i == length) throw new NumberFormatException();
+        long value = 0; // Accumulated negatively so Long.MIN_VALUE fits
+        for (; i < length; i++) {
+            int digit = s.charAt(i) - '0';
+            if (digit < 0 || digit > 9) throw new NumberFormatException();
+            if (value < (Long.MIN_VALUE + digit) / 10) throw new NumberFormatException();
+            value = value * 10 - digit;
+        }
+        if (!negative && value == Long.MIN_VALUE) throw new NumberFormatException();
+        return negative ? value : -value;
+    }
+
+    /**
+     * Parses a decimal number. Plain decimals with up to 15 significant digits
+     * (such as ratings) are converted exactly without allocating; anything
+     * else falls back to Double.parseDouble.
+     * @param s The characters to parse.
+     * @return The value.
+     * @throws NumberFormatException If s is not a number.
+     */
+    public static double parseDouble(CharSequence s) {
+        int length = s.length();
+        int i = 0;
+        boolean negative = false;
+        if (length > 0 && (s.charAt(0) == '-' || s.charAt(0) == '+')) {
+            negative = s.charAt(0) == '-';
+            i++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int fractionDigits = 0;
+        boolean seenDigit = false;
+        boolean seenPoint = false;
+        boolean simple = i < length;
+        for (; i < length && simple; i++) {
+            char c = s.charAt(i);
+            if (c >= '0' && c <= '9') {
+                seenDigit = true;
+                if (mantissa != 0 || c != '0') digits++;
+                mantissa = mantissa * 10 + (c - '0');
+                if (seenPoint) fractionDigits++;
+            } else if (c == '.' && !seenPoint) {
+                seenPoint = true;
+            } else {
+                simple = false;
+            }
+        }
+        // Both the mantissa and 10^fractionDigits are exact doubles here, so one division rounds correctly
+        if (simple && seenDigit && digits <= 15 && fractionDigits < POWERS_OF_TEN.length) {
+            double value = mantissa / POWERS_OF_TEN[fractionDigits];
+            return negative ? -value : value;
+        }
+        return Double.parseDouble(s.toString());
+    }
+}
@@ -0,0 +1,54 @@
+package src.test;
+import org.junit.*;
+
+import src.main.BatchSizer;
+
+import static org.junit.Assert.*;
+
+public class BatchSizerTest {
+
+    /**
+     * Tests that fast batches grow the batch size, at most doubling per batch,
+     * until a batch takes about the target time.
+     */
+    @Test
+    public void testGrowsTowardsTarget() {
+        BatchSizer sizer = new BatchSizer(100, 100, 1L << 30);
+        sizer.observe(100, 1_000_000, 2000); // 10 us per row, so 10000 rows take 100 ms
+        assertEquals(200, sizer.size());
+        for (int i = 0; i < 20; i++) {
+            sizer.observe(sizer.size(), sizer.size() * 10_000L, sizer.size() * 20L);
+        }
+        assertEquals(10000, sizer.size());
+    }
+
+    /**
+     * Tests that slow batches shrink the batch size, at most halving per batch,
+     * and never below the minimum.
+     */
+    @Test
+    public void testShrinksWhenSlow() {
+        BatchSizer sizer = new BatchSizer(1000, 10, 1L << 30);
+        sizer.observe(1000, 1_000_000_000, 20000); // 1 ms per row
+        assertEquals(500, sizer.size());
+        for (int i = 0; i < 20; i++) {
+            sizer.observe(sizer.size(), sizer.size() * 1_000_000L, sizer.size() * 20L);
+        }
+        assertEquals(16, sizer.size());
+    }
+
+    /**
+     * Tests that the memory cap limits the batch size however fast batches are,
+     * and that a short final batch does not change the size.
+     */
+    @Test
+    public void testMemoryCapAndShortBatch() {
+        BatchSizer sizer = new BatchSizer(1000, 1000, 1 << 20);
+        for (int i = 0; i < 20; i++) {
+            sizer.observe(sizer.size(), sizer.size() * 100L, sizer.size() * 468L); // 1000 bytes per staged row
+        }
+        assertEquals(1048, sizer.size());
+        sizer.observe(10, 1_000_000_000, 4680);
+        assertEquals(1048, sizer.size());
+    }
+}
@@ -0,0 +1,171 @@
+package src.test;
+import org.junit.*;
+
+import src.main.CsvTokenizer;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import static org.junit.Assert.*;
+
+public class CsvTokenizerTest {
+
+    /**
+     * Tokenizes the given CSV text and checks the fields of the first record.
+     */
+    private static void assertFirstRecord(String csvText, String... expected) throws Exception {
+        try (CsvTokenizer csv = new CsvTokenizer(new StringReader(csvText))) {
+            assertTrue("A record should be read", csv.next());
+            assertEquals("Field count", expected.length, csv.fieldCount());
+            for (int i = 0; i < expected.length; i++) {
+                assertEquals("Field " + i, expected[i], csv.field(i).toString());
+            }
+        }
+    }
+
+    /**
+     * Tests that commas inside quoted fields do not split the field.
+     */
+    @Test
+    public void testQuotedCommas() throws Exception {
+        assertFirstRecord("Inception,\"Action, Adventure, Sci-Fi\",8.8\n",
+            "Inception", "Action, Adventure, Sci-Fi", "8.8");
+    }
+
+    /**
+     * Tests that doubled quotes are unescaped and line breaks inside quotes are kept.
+     */
+    @Test
+    public void testEscapedQuotesAndEmbeddedNewlines() throws Exception {
+        assertFirstRecord("\"He said \"\"hi\"\"\",\"line one\nline two\"\n",
+            "He said \"hi\"", "line one\nline two");
+    }
+
+    /**
+     * Tests that surrounding whitespace is trimmed and empty fields stay empty.
+     */
+    @Test
+    public void testTrimmingAndEmptyFields() throws Exception {
+        assertFirstRecord("  John Doe , ,\"\"", "John Doe", "", "");
+    }
+
+    /**
+     * Tests CRLF handling, blank line skipping and record line numbers,
+     * including a record that spans two physical lines.
+     */
+    @Test
+    public void testLineEndingsAndLineNumbers() throws Exception {
+        String text = "a,b\r\n\r\n\"multi\nline\",c\r\nd,e";
+        try (CsvTokenizer csv = new CsvTokenizer(new StringReader(text))) {
+            assertTrue(csv.next());
+            assertEquals(1, csv.lineNumber());
+            assertEquals("b", csv.field(1).toString());
+
+            assertTrue(csv.next());
+            assertEquals("Blank line should be skipped", 3, csv.lineNumber());
+            assertEquals("multi\nline", csv.field(0).toString());
+            assertEquals("\"multi\nline\",c", csv.rawRecord());
+
+            assertTrue(csv.next());
+            assertEquals(5, csv.lineNumber());
+            assertEquals("d", csv.field(0).toString());
+
+            assertFalse("No more records expected", csv.next());
+        }
+    }
+
+    /**
+     * Tests that byteOffset() and nextLine() point exactly at the start of the
+     * next record, so that a tokenizer started there reads the same records,
+     * including after multi-byte characters, CRLF endings and quoted newlines.
+     */
+    @Test
+    public void testByteOffsetsResumeAtNextRecord() throws Exception {
+        String text = "name,plot\r\nAm\u00e9lie,\"Paris,\nMontmartre\"\r\n\n\u6771\u4eac,\"\ud83c\udfac\"\nLast,x";
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+
+        List<String> records = new ArrayList<>();
+        List<Long> lines = new ArrayList<>();
+        List<Long> offsets = new ArrayList<>();
+        List<Long> nextLines = new ArrayList<>();
+        try (CsvTokenizer csv = new CsvTokenizer(new StringReader(text))) {
+            while (csv.next()) {
+                records.add(csv.rawRecord());
+                lines.add(csv.lineNumber());
+                offsets.add(csv.byteOffset());
+                nextLines.add(csv.nextLine());
+            }
+        }
+        assertEquals("The last offset is the file size", bytes.length, (long) offsets.get(offsets.size() - 1));
+
+        for (int i = 0; i < records.size(); i++) {
+            int offset = offsets.get(i).intValue();
+            String rest = new String(bytes, offset, bytes.length - offset, StandardCharsets.UTF_8);
+            try (CsvTokenizer resumed = new CsvTokenizer(new StringReader(rest), nextLines.get(i), offset)) {
+                for (int j = i + 1; j < records.size(); j++) {
+                    assertTrue("Record " + j + " after resuming at " + i, resumed.next());
+                    assertEquals(records.get(j), resumed.rawRecord());
+                    assertEquals(lines.get(j), (Long) resumed.lineNumber());
+                    assertEquals(offsets.get(j), (Long) resumed.byteOffset());
+                }
+                assertFalse(resumed.next());
+            }
+        }
+    }
+
+    /**
+     * Tests that a CRLF split between two reads counts as one line terminator:
+     * byteOffset() and nextLine() are past the LF, so resuming there does not
+     * start on a bare LF and shift the line numbers.
+     */
+    @Test
+    public void testCrLfAcrossReadsIsOneTerminator() throws Exception {
+        String first = "name,plot\r\nInception,dreams\r";
+        String rest = "\nHeat,heist\r\n";
+        Reader split = new Reader() {
+            private final StringReader[] parts = {new StringReader(first), new StringReader(rest)};
+            private int part = 0;
+
+            @Override
+            public int read(char[] buffer, int offset, int length) throws IOException {
+                while (part < parts.length) {
+                    int n = parts[part].read(buffer, offset, length);
+                    if (n > 0) return n;
+                    part++;
+                }
+                return -1;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+
+        long offset;
+        long nextLine;
+        try (CsvTokenizer csv = new CsvTokenizer(split)) {
+            assertTrue(csv.next());
+            assertTrue(csv.next());
+            assertEquals("Inception,dreams", csv.rawRecord());
+            offset = csv.byteOffset();
+            nextLine = csv.nextLine();
+            assertEquals("Offset past the LF", first.length() + 1, offset);
+            assertEquals(3, nextLine);
+            assertTrue(csv.next());
+            assertEquals(3, csv.lineNumber());
+            assertFalse(csv.next());
+        }
+
+        String text = first + rest;
+        try (CsvTokenizer resumed = new CsvTokenizer(new StringReader(text.substring((int) offset)), nextLine, offset)) {
+            assertTrue(resumed.next());
+            assertEquals("Heat,heist", resumed.rawRecord());
+            assertEquals(3, resumed.lineNumber());
+            assertEquals(text.length(), resumed.byteOffset());
+            assertEquals(4, resumed.nextLine());
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package src.test;
+import org.junit.*;
+
+import src.main.CsvTokenizer;
+import src.main.DatasetGenerator;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.stream.Stream;
+import static org.junit.Assert.*;
+
+public class DatasetGeneratorTest {
+    private static final String[] FILES = {
+        "actors.csv", "movies.csv", "directors.csv", "awards.csv", "movie_actors.csv",
+        "movie_director.csv", "movie_awards.csv", "actor_awards.csv", "director_awards.csv"
+    };
+
+    private Path dir;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("generated");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        try (Stream<Path> paths = Files.walk(dir)) {
+            paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+    /**
+     * Generates a small dataset into a subdirectory of the test directory.
+     */
+    private Path generate(String name, String... args) {
+        Path out = dir.resolve(name);
+        String[] fullArgs = Arrays.copyOf(args, args.length + 2);
+        fullArgs[args.length] = "--out";
+        fullArgs[args.length + 1] = out.toString();
+        DatasetGenerator.main(fullArgs);
+        return out;
+    }
+
+    /**
+     * Tests that the same seed gives byte-identical files and a different seed does not.
+     */
+    @Test
+    public void testSameSeedSameFiles() throws IOException {
+        Path first = generate("first", "--movies", "300", "--seed", "7");
+        Path second = generate("second", "--movies", "300", "--seed", "7");
+        Path other = generate("other", "--movies", "300", "--seed", "8");
+        for (String file : FILES) {
+            assertArrayEquals(file, Files.readAllBytes(first.resolve(file)), Files.readAllBytes(second.resolve(file)));
+        }
+        assertFalse("Another seed should give other data", Arrays.equals(
+            Files.readAllBytes(first.resolve("movie_actors.csv")), Files.readAllBytes(other.resolve("movie_actors.csv"))));
+    }
+
+    /**
+     * Tests the generated files by:
+     * 1. Parsing every file and checking each row's column count
+     * 2. Checking the requested row counts and that junction ids refer to existing rows
+     * 3. Checking that plots are quoted fields containing commas
+     */
+    @Test
+    public void testFilesMatchSchemaAndScale() throws IOException {
+        Path out = generate("scaled", "--movies", "500", "--actors", "2000", "--directors", "50",
+            "--awards", "30", "--movie-actors", "10000");
+
+        assertEquals(2000, countRows(out.resolve("actors.csv"), 2, 0, 0));
+        assertEquals(500, countRows(out.resolve("movies.csv"), 6, 0, 0));
+        assertEquals(50, countRows(out.resolve("directors.csv"), 2, 0, 0));
+        assertEquals(30, countRows(out.resolve("awards.csv"), 2, 0, 0));
+        long castRows = countRows(out.resolve("movie_actors.csv"), 2, 500, 2000);
+        assertTrue("About 10000 cast rows, got " + castRows, castRows > 8000 && castRows < 12000);
+        assertTrue(countRows(out.resolve("movie_director.csv"), 2, 500, 50) >= 500);
+        countRows(out.resolve("movie_awards.csv"), 2, 500, 30);
+        countRows(out.resolve("actor_awards.csv"), 2, 2000, 30);
+        countRows(out.resolve("director_awards.csv"), 2, 50, 30);
+
+        try (Reader reader = Files.newBufferedReader(out.resolve("movies.csv"), StandardCharsets.UTF_8);
+            CsvTokenizer csv = new CsvTokenizer(reader)) {
+            csv.next(); // Header
+            assertTrue(csv.next());
+            assertTrue("Plot should contain a comma", csv.field(4).toString().contains(","));
+            assertTrue("Plot should be quoted", csv.rawRecord().contains("\"" + csv.field(4).toString().replace("\"", "\"\"") + "\""));
+        }
+    }
+
+    /**
+     * Tests that actor popularity is skewed: the most frequent actor appears in
+     * far more movies than the average actor.
+     */
+    @Test
+    public void testActorPopularityIsSkewed() throws IOException {
+        Path out = generate("skewed", "--movies", "1000", "--actors", "5000", "--movie-actors", "20000");
+        int[] appearances = new int[5001];
+        try (Reader reader = Files.newBufferedReader(out.resolve("movie_actors.csv"), StandardCharsets.UTF_8);
+            CsvTokenizer csv = new CsvTokenizer(reader)) {
+            csv.next(); // Header
+            while (csv.next()) {
+                appearances[Integer.parseInt(csv.field(1).toString())]++;
+            }
+        }
+        int max = Arrays.stream(appearances).max().getAsInt();
+        assertTrue("Most prolific actor appears " + max + " times", max > 10 * (20000 / 5000));
+    }
+
+    /**
+     * Parses a generated file, checking column counts and, for junction files,
+     * that both ids are within the parent tables.
+     * @return The number of data rows.
+     */
+    private static long countRows(Path file, int columns, int parent1Rows, int parent2Rows) throws IOException {
+        long rows = 0;
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8);
+            CsvTokenizer csv = new CsvTokenizer(reader)) {
+            assertTrue(file + " should have a header", csv.next());
+            while (csv.next()) {
+                assertEquals(file + " line " + csv.lineNumber(), columns, csv.fieldCount());
+                if (parent1Rows > 0) {
+                    int id1 = Integer.parseInt(csv.field(0).toString());
+                    int id2 = Integer.parseInt(csv.field(1).toString());
+                    assertTrue(file + " line " + csv.lineNumber(), id1 >= 1 && id1 <= parent1Rows);
+                    assertTrue(file + " line " + csv.lineNumber(), id2 >= 1 && id2 <= parent2Rows);
+                }
+                rows++;
+            }
+        }
+        return rows;
+    }
+}
@@ -0,0 +1,77 @@
+package src.test;
+import org.junit.*;
+
+import src.main.EntityDeduplicator;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import static org.junit.Assert.*;
+
+public class EntityDeduplicatorTest {
+    private Path csvFile;
+
+    @Before
+    public void setUp() throws IOException {
+        csvFile = Files.createTempFile("people", ".csv");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(csvFile);
+    }
+
+    /**
+     * Tests that case, whitespace and Unicode compatibility forms do not
+     * separate names, while a different birthday does.
+     */
+    @Test
+    public void testNormalizedKey() {
+        byte[] key = EntityDeduplicator.normalizedKey("Tom Hanks", "1956-07-09");
+        assertArrayEquals(key, EntityDeduplicator.normalizedKey("  tom   HANKS ", " 1956-07-09"));
+        assertArrayEquals(key, EntityDeduplicator.normalizedKey("\uFF34om Hanks", "1956-07-09")); // Full-width T
+        assertFalse(Arrays.equals(key, EntityDeduplicator.normalizedKey("Tom Hanks", "1956-07-10")));
+        assertFalse(Arrays.equals(key, EntityDeduplicator.normalizedKey("Tom Hanks", "")));
+    }
+
+    /**
+     * Tests that every row points at the first row with the same key.
+     */
+    @Test
+    public void testScanFindsFirstRow() throws IOException {
+        Files.write(csvFile, ("name,birthday\n" +
+            "Tom Hanks,1956-07-09\n" +
+            "Meryl Streep,1949-06-22\n" +
+            "tom hanks,1956-07-09\n" +
+            "Tom Hanks,\n" +
+            "\"Streep,  Meryl\",1949-06-22\n" +
+            "Meryl Streep,1949-06-22\n").getBytes(StandardCharsets.UTF_8));
+
+        int[] canonical = EntityDeduplicator.scan(csvFile.toString(), 1 << 20);
+        assertArrayEquals(new int[]{0, 1, 2, 1, 4, 5, 2}, canonical);
+        assertEquals(2, EntityDeduplicator.duplicates(canonical));
+    }
+
+    /**
+     * Tests that spilling keys to sorted run files gives the same result as
+     * the in-memory index, on many rows with many duplicates.
+     */
+    @Test
+    public void testSpillMatchesInMemoryIndex() throws IOException {
+        Random random = new Random(3);
+        StringBuilder csv = new StringBuilder("name,birthday\n");
+        for (int i = 0; i < 20000; i++) {
+            csv.append("Person ").append(random.nextInt(5000)).append(',')
+                .append(1950 + random.nextInt(3)).append("-01-01\n");
+        }
+        Files.write(csvFile, csv.toString().getBytes(StandardCharsets.UTF_8));
+
+        int[] inMemory = EntityDeduplicator.scan(csvFile.toString(), 1L << 30);
+        int[] spilled = EntityDeduplicator.scan(csvFile.toString(), 64 * 1024);
+        assertArrayEquals(inMemory, spilled);
+        assertTrue("The data should contain duplicates", EntityDeduplicator.duplicates(inMemory) > 5000);
+    }
+}
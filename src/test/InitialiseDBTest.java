@@ -3,12 +3,18 @@ package src.test;
 import org.junit.*;
 
 import src.main.InitialiseDB;
+import src.main.SchemaMigrator;
 
 import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.Arrays;
+import java.util.List;
 import static org.junit.Assert.*;
 
 public class InitialiseDBTest {
@@ -88,6 +94,129 @@ public class InitialiseDBTest {
         assertTrue("Database file should be created again", file.exists());
     }
     
+    /**
+     * Tests that running InitialiseDB on an existing database keeps its rows,
+     * and that a new migration is applied once and recorded in user_version.
+     */
+    @Test
+    public void testMigrationKeepsRowsAndAppliesPending() throws Exception {
+        InitialiseDB.main(new String[]{"--rebuild"});
+        try (Connection connection = DriverManager.getConnection("jdbc:sqlite:" + DB_FILE);
+            Statement statement = connection.createStatement()) {
+            statement.execute("INSERT INTO Movies (title, ratings) VALUES ('Heat', 8.3)");
+        }
+        InitialiseDB.main(new String[]{});
+
+        Path migrations = Files.createTempDirectory("migrations");
+        Files.write(migrations.resolve("900_movie_log.sql"), Arrays.asList(
+                "CREATE TABLE Movie_Log (title TEXT); -- Filled by the trigger below",
+                "CREATE TRIGGER log_movie AFTER INSERT ON Movies",
+                "BEGIN",
+                "    INSERT INTO Movie_Log VALUES (new.title);",
+                "    INSERT INTO Movie_Log VALUES ('after ' || new.title || ';');",
+                "END;"));
+        try (Connection connection = DriverManager.getConnection("jdbc:sqlite:" + DB_FILE);
+            Statement statement = connection.createStatement()) {
+            assertEquals(900, SchemaMigrator.migrate(connection, "schema.ddl", migrations.toString()));
+            assertEquals(900, SchemaMigrator.migrate(connection, "schema.ddl", migrations.toString()));
+            statement.execute("INSERT INTO Movies (title) VALUES ('Ronin')");
+
+            ResultSet rs = statement.executeQuery("SELECT COUNT(*) FROM Movies WHERE title = 'Heat'");
+            assertEquals("Migrating should keep the loaded rows", 1, rs.getInt(1));
+            rs = statement.executeQuery("SELECT COUNT(*) FROM Movie_Log");
+            assertEquals("The trigger should run both of its statements", 2, rs.getInt(1));
+            rs = statement.executeQuery("PRAGMA user_version");
+            assertEquals(900, rs.getInt(1));
+        } finally {
+            Files.delete(migrations.resolve("900_movie_log.sql"));
+            Files.delete(migrations);
+        }
+    }
+
+    /**
+     * Tests that a failing migration is rolled back with the version unchanged.
+     */
+    @Test
+    public void testFailedMigrationIsRolledBack() throws Exception {
+        InitialiseDB.main(new String[]{"--rebuild"});
+        Path migrations = Files.createTempDirectory("migrations");
+        Files.write(migrations.resolve("900_broken.sql"), Arrays.asList(
+                "CREATE TABLE Half_Done (id INTEGER);",
+                "CREATE INDEX idx_missing ON No_Such_Table (id);"));
+        try (Connection connection = DriverManager.getConnection("jdbc:sqlite:" + DB_FILE);
+            Statement statement = connection.createStatement()) {
+            int version = SchemaMigrator.migrate(connection, "schema.ddl", SchemaMigrator.MIGRATIONS_DIR);
+            try {
+                SchemaMigrator.migrate(connection, "schema.ddl", migrations.toString());
+                fail("The broken migration should fail");
+            } catch (SQLException expected) {
+                // The second statement refers to a missing table
+            }
+            ResultSet rs = statement.executeQuery("PRAGMA user_version");
+            assertEquals(version, rs.getInt(1));
+            rs = statement.executeQuery("SELECT name FROM sqlite_master WHERE name = 'Half_Done'");
+            assertFalse("The first statement should be rolled back", rs.next());
+        } finally {
+            Files.delete(migrations.resolve("900_broken.sql"));
+            Files.delete(migrations);
+        }
+    }
+
+    /**
+     * Tests that a database built from schema.ddl before versions were recorded
+     * (user_version 0, junction tables with surrogate ids) is taken to version 1
+     * and migrated to the pair-keyed junction tables, keeping each pair once.
+     */
+    @Test
+    public void testUnversionedDatabaseGetsPairKeys() throws Exception {
+        assertTrue(new File(DB_FILE).delete());
+        Path noMigrations = Files.createTempDirectory("migrations");
+        try (Connection connection = DriverManager.getConnection("jdbc:sqlite:" + DB_FILE);
+            Statement statement = connection.createStatement()) {
+            assertEquals(1, SchemaMigrator.migrate(connection, "schema.ddl", noMigrations.toString()));
+            statement.execute("PRAGMA user_version = 0");
+            statement.execute("INSERT INTO Movies (title, ratings) VALUES ('Heat', 8.3)");
+            statement.execute("INSERT INTO Actors (name) VALUES ('Al Pacino')");
+            statement.execute("INSERT INTO Movie_Actors (movie_id, actor_id) VALUES (1, 1), (1, 1)");
+        } finally {
+            Files.delete(noMigrations);
+        }
+
+        InitialiseDB.main(new String[]{});
+
+        try (Connection connection = DriverManager.getConnection("jdbc:sqlite:" + DB_FILE);
+            Statement statement = connection.createStatement()) {
+            int latest = SchemaMigrator.migrate(connection, "schema.ddl", SchemaMigrator.MIGRATIONS_DIR);
+            assertEquals(latest, statement.executeQuery("PRAGMA user_version").getInt(1));
+            ResultSet rs = statement.executeQuery("SELECT COUNT(*) FROM pragma_table_info('Movie_Actors') " +
+                    "WHERE name = 'movie_actor_id'");
+            assertEquals("The surrogate id should be gone", 0, rs.getInt(1));
+            rs = statement.executeQuery("SELECT sql FROM sqlite_master WHERE name = 'Movie_Actors'");
+            assertTrue(rs.getString(1).contains("WITHOUT ROWID"));
+            rs = statement.executeQuery("SELECT COUNT(*) FROM Movie_Actors");
+            assertEquals("The repeated pair should be kept once", 1, rs.getInt(1));
+        }
+    }
+
+    /**
+     * Tests that statements are split at their own semicolons only.
+     */
+    @Test
+    public void testSplitStatements() {
+        List<String> statements = SchemaMigrator.splitStatements(
+                "CREATE TABLE t (a TEXT DEFAULT ';'); -- comment; with a semicolon\n" +
+                "/* block; comment */ CREATE TRIGGER tr AFTER INSERT ON t BEGIN\n" +
+                "  UPDATE t SET a = CASE WHEN a = 'x' THEN 'y' ELSE a END;\n" +
+                "  DELETE FROM t WHERE a = \"z;\";\n" +
+                "END;\n" +
+                "CREATE INDEX i ON t (a)");
+        assertEquals(3, statements.size());
+        assertEquals("CREATE TABLE t (a TEXT DEFAULT ';')", statements.get(0));
+        assertTrue(statements.get(1).startsWith("CREATE TRIGGER tr"));
+        assertTrue(statements.get(1).endsWith("END"));
+        assertEquals("CREATE INDEX i ON t (a)", statements.get(2));
+    }
+
     /**
      * Deletes the test database file after all tests complete.
      */
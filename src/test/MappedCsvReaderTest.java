@@ -0,0 +1,80 @@
+package src.test;
+import org.junit.*;
+
+import src.main.CsvTokenizer;
+import src.main.MappedCsvReader;
+
+import java.io.File;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import static org.junit.Assert.*;
+
+public class MappedCsvReaderTest {
+    private static final String CSV_TEXT =
+        "title,genre,plot\r\n" +
+        "Inception,\"Action, Adventure\",\"A thief \"\"extracts\"\" ideas\"\n" +
+        "\n" +
+        "Am\u00e9lie, Comedy ,\"Paris,\nMontmartre\"\n" +
+        "  Parasite  ,,\"\"\n" +
+        "Last,\"no newline at end\",x";
+
+    private File csvFile;
+
+    /**
+     * Writes the shared CSV text to a temporary file.
+     */
+    @Before
+    public void writeFile() throws Exception {
+        csvFile = File.createTempFile("mapped", ".csv");
+        Files.write(csvFile.toPath(), CSV_TEXT.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Tests that the mapped reader produces exactly the same records, fields,
+     * raw text, line numbers and resume positions as CsvTokenizer, including
+     * when segments are so small that records, quoted newlines and CRLF pairs
+     * cross segment ends.
+     */
+    @Test
+    public void testMatchesTokenizerAcrossSegmentSizes() throws Exception {
+        for (int segmentSize : new int[]{1, 2, 3, 7, 16, 17, 1024}) {
+            try (CsvTokenizer expected = new CsvTokenizer(new StringReader(CSV_TEXT));
+                MappedCsvReader actual = new MappedCsvReader(csvFile.getPath(), segmentSize)) {
+                while (expected.next()) {
+                    assertTrue("Segment " + segmentSize + ": record expected", actual.next());
+                    assertEquals("Segment " + segmentSize + ": line", expected.lineNumber(), actual.lineNumber());
+                    assertEquals("Segment " + segmentSize + ": raw", expected.rawRecord(), actual.rawRecord());
+                    assertEquals("Segment " + segmentSize + ": byte offset", expected.byteOffset(), actual.byteOffset());
+                    assertEquals("Segment " + segmentSize + ": next line", expected.nextLine(), actual.nextLine());
+                    assertEquals("Segment " + segmentSize + ": field count", expected.fieldCount(), actual.fieldCount());
+                    for (int i = 0; i < expected.fieldCount(); i++) {
+                        assertEquals("Segment " + segmentSize + ": field " + i,
+                            expected.field(i).toString(), actual.field(i).toString());
+                        assertEquals(expected.field(i).length(), actual.field(i).length());
+                    }
+                }
+                assertFalse("Segment " + segmentSize + ": no extra records", actual.next());
+            }
+        }
+    }
+
+    /**
+     * Tests that an empty file yields no records.
+     */
+    @Test
+    public void testEmptyFile() throws Exception {
+        Files.write(csvFile.toPath(), new byte[0]);
+        try (MappedCsvReader csv = new MappedCsvReader(csvFile.getPath())) {
+            assertFalse(csv.next());
+        }
+    }
+
+    /**
+     * Removes the temporary file.
+     */
+    @After
+    public void deleteFile() {
+        csvFile.delete();
+    }
+}
@@ -1,14 +1,27 @@
 package src.test;
 import org.junit.*;
 
+import src.main.CsvTokenizer;
+import src.main.FastLoad;
+import src.main.IngestPipeline;
 import src.main.InitialiseDB;
+import src.main.MovieSearch;
+import src.main.QuerySummaries;
 import src.main.PopulateDB;
 
 import java.io.*;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.sql.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+import org.json.JSONArray;
+import org.json.JSONObject;
 import static org.junit.Assert.*;
 
 public class PopulateDBTest {
@@ -20,7 +33,7 @@ public class PopulateDBTest {
     
     @Before
     public void resetDatabase() {
-        InitialiseDB.main(new String[]{}); // Resets the database before each test
+        InitialiseDB.main(new String[]{"--rebuild"}); // Resets the database before each test
     }
     
     /**
@@ -28,7 +41,7 @@ public class PopulateDBTest {
      */
     @BeforeClass
     public static void setupDatabase() {
-        InitialiseDB.main(new String[]{}); // Initializing schema
+        InitialiseDB.main(new String[]{"--rebuild"}); // Initializing schema
     }
 
     /**
@@ -396,8 +409,1314 @@ public class PopulateDBTest {
         }
     }
 
-    /** 
-     * Deletes the test database file after all tests complete. 
+    /**
+     * Tests that a batch containing a bad row is retried row by row by:
+     * 1. Writing a junction file with one orphan row between valid rows
+     * 2. Loading it with a batch size smaller than the file
+     * 3. Verifying every valid row is still inserted
+     */
+    @Test
+    public void testBatchRetryKeepsValidRows() {
+        String junctionData = "movie_id,actor_id\n1,1\n1,2\n999,999\n2,3\n2,4\n";
+
+        Path junctionPath = Paths.get("csvfiles/movie_actors.csv");
+        Path backupJunction = Paths.get("csvfiles/movie_actors_backup.csv");
+
+        try {
+            Files.move(junctionPath, backupJunction);
+            Files.write(junctionPath, junctionData.getBytes());
+
+            PopulateDB.main(new String[]{"--batch-size", "2", "--commit-every", "1"});
+
+            try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + DB_FILE);
+                Statement stmt = conn.createStatement()) {
+
+                assertEquals("All valid rows should be inserted despite the failing batch",
+                            4, stmt.executeQuery("SELECT COUNT(*) FROM Movie_Actors").getInt(1));
+                assertEquals("Orphan row should not be inserted",
+                            0, stmt.executeQuery("SELECT COUNT(*) FROM Movie_Actors WHERE movie_id = 999").getInt(1));
+            }
+        } catch (Exception e) {
+            fail("Test failed due to exception: " + e.getMessage());
+        } finally {
+            try {
+                Files.deleteIfExists(junctionPath);
+                Files.move(backupJunction, junctionPath);
+            } catch (IOException e) {
+                fail("Failed to restore original files: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Tests the fast-load mode by:
+     * 1. Adding a secondary index and an orphan junction row
+     * 2. Loading with --fast-load, which defers both index and foreign key work
+     * 3. Verifying the valid rows are in, the orphan was removed by the
+     *    final foreign key check and the index was rebuilt
+     */
+    @Test
+    public void testFastLoadChecksForeignKeysAtEnd() {
+        String junctionData = "movie_id,actor_id\n1,1\n1,2\n999,999\n2,3\n2,4\n";
+
+        Path junctionPath = Paths.get("csvfiles/movie_actors.csv");
+        Path backupJunction = Paths.get("csvfiles/movie_actors_backup.csv");
+
+        try {
+            Files.move(junctionPath, backupJunction);
+            Files.write(junctionPath, junctionData.getBytes());
+            try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + DB_FILE);
+                Statement stmt = conn.createStatement()) {
+                stmt.execute("CREATE INDEX idx_test_actor_name ON Actors(name)");
+            }
+
+            PopulateDB.main(new String[]{"--fast-load"});
+
+            try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + DB_FILE);
+                Statement stmt = conn.createStatement()) {
+                assertEquals("All valid rows should be inserted",
+                            4, stmt.executeQuery("SELECT COUNT(*) FROM Movie_Actors").getInt(1));
+                assertEquals("Orphan row should be removed by the foreign key check",
+                            0, stmt.executeQuery("SELECT COUNT(*) FROM Movie_Actors WHERE movie_id = 999").getInt(1));
+                assertEquals("Dropped index should be recreated", 1,
+                            stmt.executeQuery("SELECT COUNT(*) FROM sqlite_master WHERE name = 'idx_test_actor_name'").getInt(1));
+                assertEquals("Journal mode should be restored", "delete",
+                            stmt.executeQuery("PRAGMA journal_mode").getString(1).toLowerCase());
+            }
+        } catch (Exception e) {
+            fail("Test failed due to exception: " + e.getMessage());
+        } finally {
+            try {
+                Files.deleteIfExists(junctionPath);
+                Files.move(backupJunction, junctionPath);
+            } catch (IOException e) {
+                fail("Failed to restore original files: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Tests that fast-load work left unfinished is recovered:
+     * 1. A fast load that never finishes (as if the process died) leaves its
+     *    indexes to the next run, which recreates them before loading
+     * 2. finish() restores every setting it changed, and quarantines an orphan
+     *    row of a table that has no CSV file (Movie_Genres) in its reject file
+     */
+    @Test
+    public void testFastLoadRecoversAfterFailure() {
+        try {
+            PopulateDB.main(new String[]{});
+            int indexes;
+            try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + DB_FILE);
+                Statement stmt = conn.createStatement()) {
+                indexes = countIndexes(stmt);
+                new FastLoad(conn); // Never finished
+                assertEquals("The indexes should be dropped", 0, countIndexes(stmt));
+            }
+
+            PopulateDB.main(new String[]{"--incremental"});
+            try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + DB_FILE);
+                Statement stmt = conn.createStatement()) {
+                assertEquals("The next run should recreate the indexes", indexes, countIndexes(stmt));
+
+                stmt.execute("PRAGMA cache_size = -4000");
+                stmt.execute("PRAGMA temp_store = FILE");
+                FastLoad fastLoad = new FastLoad(conn);
+                stmt.execute("INSERT INTO Movie_Genres (movie_id, genre_id) VALUES (999999, 1)");
+                fastLoad.finish(null);
+                assertEquals(-4000, stmt.executeQuery("PRAGMA cache_size").getInt(1));
+                assertEquals(1, stmt.executeQuery("PRAGMA temp_store").getInt(1));
+                assertEquals("The orphan should be removed", 0,
+                            stmt.executeQuery("SELECT COUNT(*) FROM Movie_Genres WHERE movie_id = 999999").getInt(1));
+            }
+            String rejects = new String(Files.readAllBytes(Paths.get("rejects/Movie_Genres.csv")));
+            assertTrue("The orphan should be quarantined: " + rejects, rejects.contains("MISSING_PARENT,,\"999999,1\""));
+        } catch (Exception e) {
+            fail("Test failed due to exception: " + e.getMessage());
+        }
+    }
+
+    /**
+     * @return The number of indexes that have SQL, with the result set closed
+     *         so that the statement does not hold a lock on the schema.
+     */
+    private static int countIndexes(Statement stmt) throws SQLException {
+        try (ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM sqlite_master WHERE type = 'index' AND sql IS NOT NULL")) {
+            return rs.getInt(1);
+        }
+    }
+
+    /**
+     * Tests that triggers suspended by a full load that never finished come back:
+     * 1. Suspending the search and summary triggers and closing the connection,
+     *    as if the process died during the load, after a movie and an award
+     *    were inserted without them
+     * 2. Running an incremental load, which rebuilds the index and the
+     *    summaries and recreates the triggers
+     * 3. Verifying that the missed rows and rows inserted afterwards are both counted
+     */
+    @Test
+    public void testSuspendedTriggersRecoverAfterFailure() {
+        try {
+            PopulateDB.main(new String[]{});
+            int searchTriggers;
+            int summaryTriggers;
+            try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + DB_FILE);
+                Statement stmt = conn.createStatement()) {
+                searchTriggers = countTriggers(stmt, "Movie_Search");
+                summaryTriggers = countTriggers(stmt, "Movie_Award_Counts");
+                assertTrue("The search index should have triggers", searchTriggers > 0);
+                assertTrue("The summaries should have triggers", summaryTriggers > 0);
+                MovieSearch.suspendTriggers(conn); // Never rebuilt
+                QuerySummaries.suspendTriggers(conn);
+                assertEquals("The triggers should be dropped", 0, countTriggers(stmt, "Movie_Search"));
+                assertEquals("The triggers should be dropped", 0, countTriggers(stmt, "Movie_Award_Counts"));
+                stmt.execute("INSERT INTO Movies (title, ratings) VALUES ('Zanzibar Nights', 8.5)");
+                stmt.execute("INSERT INTO Movie_Awards (movie_id, award_id) SELECT " +
+                            "(SELECT movie_id FROM Movies WHERE title = 'Zanzibar Nights'), MIN(award_id) FROM Awards");
+            }
+
+            PopulateDB.main(new String[]{"--incremental"});
+            try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + DB_FILE);
+                Statement stmt = conn.createStatement()) {
+                assertEquals("The next run should recreate the triggers", searchTriggers, countTriggers(stmt, "Movie_Search"));
+                assertEquals("The next run should recreate the triggers", summaryTriggers, countTriggers(stmt, "Movie_Award_Counts"));
+                assertSummariesMatchSources(stmt);
+                stmt.execute("INSERT INTO Movies (title) VALUES ('Zanzibar Mornings')");
+                stmt.execute("INSERT INTO Movie_Awards (movie_id, award_id) SELECT " +
+                            "(SELECT movie_id FROM Movies WHERE title = 'Zanzibar Mornings'), MIN(award_id) FROM Awards");
+                assertEquals("Both movies should be in the index", 2,
+                            stmt.executeQuery("SELECT COUNT(*) FROM Movie_Search WHERE Movie_Search MATCH 'zanzibar'").getInt(1));
+                assertSummariesMatchSources(stmt);
+            }
+        } catch (Exception e) {
+            fail("Test failed due to exception: " + e.getMessage());
+        }
+    }
+
+    /**
+     * @return The number of triggers whose SQL mentions the given table, with
+     *         the result set closed so that the statement does not hold a lock on the schema.
+     */
+    private static int countTriggers(Statement stmt, String table) throws SQLException {
+        try (ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM sqlite_master WHERE type = 'trigger' AND sql LIKE '%" +
+                table + "%'")) {
+            return rs.getInt(1);
+        }
+    }
+
+    /**
+     * Tests the build-aside reload by:
+     * 1. Holding a reader connection open on the live, empty database
+     * 2. Reloading with --build-aside
+     * 3. Verifying the open reader still sees its own generation, a new
+     *    connection sees the loaded data and no build file is left behind
+     */
+    @Test
+    public void testBuildAsideSwapsInNewGeneration() {
+        try (Connection reader = DriverManager.getConnection("jdbc:sqlite:" + DB_FILE);
+            Statement readerStmt = reader.createStatement()) {
+            assertEquals(0, readerStmt.executeQuery("SELECT COUNT(*) FROM Actors").getInt(1));
+
+            PopulateDB.main(new String[]{"--build-aside"});
+
+            assertEquals("Open reader should keep the old generation", 0,
+                        readerStmt.executeQuery("SELECT COUNT(*) FROM Actors").getInt(1));
+            try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + DB_FILE);
+                Statement stmt = conn.createStatement()) {
+                assertTrue("New connection should see the new generation",
+                          stmt.executeQuery("SELECT COUNT(*) FROM Actors").getInt(1) > 0);
+                assertTrue("Junction tables should be loaded",
+                          stmt.executeQuery("SELECT COUNT(*) FROM Movie_Actors").getInt(1) > 0);
+            }
+            assertFalse("Build file should be renamed away", new File(DB_FILE + ".building").exists());
+        } catch (Exception e) {
+            fail("Test failed due to exception: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Tests that --build-aside is refused with options it cannot honour,
+     * leaving the live database untouched.
+     */
+    @Test
+    public void testBuildAsideRejectsConflictingOptions() {
+        String[][] combinations = {
+            {"--build-aside", "--incremental"}, {"--build-aside", "--resume"}, {"--build-aside", "--watch"},
+            {"--build-aside", "--from-snapshot", "movies.snapshot"}, {"--build-aside", "--export-snapshot", "movies.snapshot"}
+        };
+        PrintStream originalErr = System.err;
+        ByteArrayOutputStream errors = new ByteArrayOutputStream();
+        for (String[] args : combinations) {
+            errors.reset();
+            System.setErr(new PrintStream(errors, true));
+            try {
+                PopulateDB.main(args);
+            } finally {
+                System.setErr(originalErr);
+            }
+            assertTrue(String.join(" ", args) + ": " + errors,
+                      errors.toString().contains("--build-aside cannot be combined with " + args[1]));
+        }
+        try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + DB_FILE);
+            Statement stmt = conn.createStatement()) {
+            assertEquals("Nothing should be loaded", 0, stmt.executeQuery("SELECT COUNT(*) FROM Actors").getInt(1));
+        } catch (SQLException e) {
+            fail("Test failed due to exception: " + e.getMessage());
+        }
+        assertFalse(new File("movies.snapshot").exists());
+        assertFalse(new File(DB_FILE + ".building").exists());
+    }
+
+    /**
+     * Tests build-aside verification by:
+     * 1. Reloading with --build-aside --dedup, whose merged rows are accounted for
+     * 2. Replacing actors.csv with truncated gzip data, so its load stops with an error
+     * 3. Verifying the second build is refused and the live database keeps its rows
+     */
+    @Test
+    public void testBuildAsideRefusesPartialLoad() {
+        Path actorsPath = Paths.get("csvfiles/actors.csv");
+        Path backupActors = Paths.get("csvfiles/actors_backup.csv");
+        try {
+            PopulateDB.main(new String[]{"--build-aside", "--dedup"});
+            int actors;
+            try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + DB_FILE);
+                Statement stmt = conn.createStatement()) {
+                actors = stmt.executeQuery("SELECT COUNT(*) FROM Actors").getInt(1);
+                assertTrue("The deduplicated build should be swapped in", actors > 0);
+            }
+
+            Files.copy(actorsPath, backupActors);
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+            try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+                gzip.write(Files.readAllBytes(actorsPath));
+            }
+            byte[] bytes = compressed.toByteArray();
+            Files.write(actorsPath, Arrays.copyOf(bytes, bytes.length / 2));
+
+            PopulateDB.main(new String[]{"--build-aside"});
+            try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + DB_FILE);
+                Statement stmt = conn.createStatement()) {
+                assertEquals("The live database should be left unchanged", actors,
+                            stmt.executeQuery("SELECT COUNT(*) FROM Actors").getInt(1));
+            }
+            assertFalse("Build file should be deleted", new File(DB_FILE + ".building").exists());
+        } catch (Exception e) {
+            fail("Test failed due to exception: " + e.getMessage());
+        } finally {
+            try {
+                if (Files.exists(backupActors)) Files.move(backupActors, actorsPath, StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException e) {
+                fail("Failed to restore original files: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Tests gzip input by:
+     * 1. Replacing actors.csv with actors.csv.gz (found by extension)
+     * 2. Overwriting movies.csv with gzip data (found by magic bytes)
+     * 3. Verifying both load the same rows as the uncompressed files
+     */
+    @Test
+    public void testGzipInputLoadsSameRows() {
+        Path actorsPath = Paths.get("csvfiles/actors.csv");
+        Path actorsGzPath = Paths.get("csvfiles/actors.csv.gz");
+        Path moviesPath = Paths.get("csvfiles/movies.csv");
+        Path backupActors = Paths.get("csvfiles/actors_backup.csv");
+        Path backupMovies = Paths.get("csvfiles/movies_backup.csv");
+
+        try {
+            PopulateDB.main(new String[]{});
+            int actorCount;
+            int movieCount;
+            try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + DB_FILE);
+                Statement stmt = conn.createStatement()) {
+                actorCount = stmt.executeQuery("SELECT COUNT(*) FROM Actors").getInt(1);
+                movieCount = stmt.executeQuery("SELECT COUNT(*) FROM Movies").getInt(1);
+            }
+
+            Files.copy(moviesPath, backupMovies);
+            Files.move(actorsPath, backupActors);
+            try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(actorsGzPath))) {
+                Files.copy(backupActors, out);
+            }
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+            try (OutputStream out = new GZIPOutputStream(compressed)) {
+                Files.copy(backupMovies, out);
+            }
+            Files.write(moviesPath, compressed.toByteArray());
+
+            for (String[] args : new String[][]{{}, {"--mmap"}}) {
+                InitialiseDB.main(new String[]{"--rebuild"});
+                PopulateDB.main(args);
+                try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + DB_FILE);
+                    Statement stmt = conn.createStatement()) {
+                    assertEquals("Actors should load from actors.csv.gz", actorCount,
+                                stmt.executeQuery("SELECT COUNT(*) FROM Actors").getInt(1));
+                    assertEquals("Movies should load from gzip data in movies.csv", movieCount,
+                                stmt.executeQuery("SELECT COUNT(*) FROM Movies").getInt(1));
+                    assertEquals("Quoted fields should survive decompression", 1,
+                                stmt.executeQuery("SELECT COUNT(*) FROM Movies WHERE title = 'Inception' " +
+                                    "AND genre = 'Action, Adventure, Sci-Fi'").getInt(1));
+                }
+            }
+        } catch (Exception e) {
+            fail("Test failed due to exception: " + e.getMessage());
+        } finally {
+            try {
+                Files.deleteIfExists(actorsGzPath);
+                if (Files.exists(backupActors)) Files.move(backupActors, actorsPath, StandardCopyOption.REPLACE_EXISTING);
+                if (Files.exists(backupMovies)) Files.move(backupMovies, moviesPath, StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException e) {
+                fail("Failed to restore original files: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Tests resuming an interrupted load by:
+     * 1. Running a full load and recording every table's row count
+     * 2. Rewinding the database to look like a crash after the first two
+     *    committed rows of movie_actors.csv
+     * 3. Running --resume (sequential, mmap and pipelined) and verifying every
+     *    table ends up with exactly the rows of the full load
+     */
+    @Test
+    public void testResumeContinuesFromCheckpoint() {
+        String[] tables = {
+            "Actors", "Movies", "Directors", "Awards",
+            "Movie_Actors", "Movie_Director", "Movie_Awards",
+            "Actor_Awards", "Director_Awards"
+        };
+
+        try {
+            PopulateDB.main(new String[]{});
+            int[] fullCounts = new int[tables.length];
+            try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + DB_FILE);
+                Statement stmt = conn.createStatement()) {
+                for (int i = 0; i < tables.length; i++) {
+                    fullCounts[i] = stmt.executeQuery("SELECT COUNT(*) FROM " + tables[i]).getInt(1);
+                }
+                assertEquals("Every file should be checkpointed as completed", 9,
+                            stmt.executeQuery("SELECT COUNT(*) FROM Load_Progress WHERE completed = 1").getInt(1));
+            }
+
+            // Position just past the second data row of movie_actors.csv, and the pairs up to there
+            long offset;
+            long nextLine;
+            StringBuilder committedPairs = new StringBuilder();
+            try (CsvTokenizer csv = new CsvTokenizer(new FileReader("csvfiles/movie_actors.csv"))) {
+                csv.next();
+                for (int i = 0; i < 2; i++) {
+                    csv.next();
+                    committedPairs.append(i == 0 ? "" : " OR ").append("(movie_id = ").append(csv.field(0))
+                        .append(" AND actor_id = ").append(csv.field(1)).append(")");
+                }
+                offset = csv.byteOffset();
+                nextLine = csv.nextLine();
+            }
+
+            for (String[] args : new String[][]{{"--resume"}, {"--resume", "--mmap"}, {"--resume", "--parallel", "2"}}) {
+                try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + DB_FILE);
+                    Statement stmt = conn.createStatement()) {
+                    stmt.execute("DELETE FROM Movie_Actors WHERE NOT (" + committedPairs + ")");
+                    for (int i = 5; i < tables.length; i++) {
+                        stmt.execute("DELETE FROM " + tables[i]);
+                    }
+                    stmt.execute("DELETE FROM Load_Progress WHERE csv_file NOT IN " +
+                        "('csvfiles/actors.csv', 'csvfiles/movies.csv', 'csvfiles/directors.csv', 'csvfiles/awards.csv')");
+                    stmt.execute("INSERT INTO Load_Progress VALUES ('csvfiles/movie_actors.csv', " + offset + ", " + nextLine + ", 0)");
+                }
+
+                PopulateDB.main(args);
+
+                try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + DB_FILE);
+                    Statement stmt = conn.createStatement()) {
+                    for (int i = 0; i < tables.length; i++) {
+                        assertEquals(String.join(" ", args) + ": row count for " + tables[i], fullCounts[i],
+                                    stmt.executeQuery("SELECT COUNT(*) FROM " + tables[i]).getInt(1));
+                    }
+                }
+            }
+        } catch (Exception e) {
+            fail("Test failed due to exception: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Tests in-memory foreign key validation by:
+     * 1. Writing a junction file with orphan rows for either parent
+     * 2. Loading it and verifying the valid rows are inserted
+     * 3. Verifying the orphans are in the table's reject file, not the database
+     */
+    @Test
+    public void testOrphanRowsGoToRejectFile() {
+        String junctionData = "movie_id,actor_id\n1,1\n999,1\n1,999\n2,3\n";
+
+        Path junctionPath = Paths.get("csvfiles/movie_actors.csv");
+        Path backupJunction = Paths.get("csvfiles/movie_actors_backup.csv");
+        Path rejectPath = Paths.get("rejects/Movie_Actors.csv");
+
+        try {
+            Files.move(junctionPath, backupJunction);
+            Files.write(junctionPath, junctionData.getBytes());
+
+            PopulateDB.main(new String[]{});
+
+            try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + DB_FILE);
+                Statement stmt = conn.createStatement()) {
+                assertEquals("Valid rows should be inserted", 2,
+                            stmt.executeQuery("SELECT COUNT(*) FROM Movie_Actors").getInt(1));
+                assertFalse("No foreign key should be violated", stmt.executeQuery("PRAGMA foreign_key_check").next());
+            }
+            assertTrue("Orphans should be written to the reject file", Files.exists(rejectPath));
+            assertEquals(Arrays.asList("reason,line,record",
+                                       "MISSING_PARENT,3,\"999,1\"",
+                                       "MISSING_PARENT,4,\"1,999\""),
+                        Files.readAllLines(rejectPath));
+            assertFalse("Tables without orphans should have no reject file",
+                       Files.exists(Paths.get("rejects/Movie_Director.csv")));
+        } catch (Exception e) {
+            fail("Test failed due to exception: " + e.getMessage());
+        } finally {
+            try {
+                Files.deleteIfExists(junctionPath);
+                Files.move(backupJunction, junctionPath);
+                Files.deleteIfExists(rejectPath);
+            } catch (IOException e) {
+                fail("Failed to restore original files: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Tests the load report by:
+     * 1. Loading with small batches and a commit per batch, writing a JSON report
+     * 2. Verifying each table's row counts in the report match the database
+     * 3. Verifying the commit latency histogram accounts for every commit
+     */
+    @Test
+    public void testLoadReportMatchesDatabase() {
+        File reportFile = new File("load-report-test.json");
+        try {
+            PopulateDB.main(new String[]{"--batch-size", "2", "--commit-every", "1", "--report", reportFile.getPath()});
+            assertTrue("Report should be written", reportFile.exists());
+
+            JSONObject report = new JSONObject(new String(Files.readAllBytes(reportFile.toPath()), "UTF-8"));
+            JSONArray tables = report.getJSONArray("tables");
+            assertEquals(9, tables.length());
+            try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + DB_FILE);
+                Statement stmt = conn.createStatement()) {
+                for (int i = 0; i < tables.length(); i++) {
+                    JSONObject table = tables.getJSONObject(i);
+                    String name = table.getString("table");
+                    long inserted = table.getLong("rows_inserted");
+                    assertEquals(name + " rows inserted", stmt.executeQuery("SELECT COUNT(*) FROM " + name).getLong(1), inserted);
+                    assertEquals(name + " rows read", inserted + table.getLong("rows_rejected") + table.getLong("rows_merged"),
+                                table.getLong("rows_read"));
+                    assertTrue(name + " should commit once per batch", table.getLong("commits") >= (inserted + 1) / 2);
+                    JSONObject batchSize = table.getJSONObject("batch_size");
+                    assertTrue(name + " batch size", batchSize.getInt("max") <= 2);
+                    if (table.getLong("rows_rejected") == 0 && table.getLong("batches") > 0) {
+                        assertEquals(name + " rows per batch, the last one partial", inserted + table.getLong("rows_merged"),
+                                    2 * (table.getLong("batches") - 1) + batchSize.getInt("last"));
+                    }
+
+                    long histogramCommits = 0;
+                    JSONArray buckets = table.getJSONArray("commit_latency");
+                    for (int b = 0; b < buckets.length(); b++) {
+                        histogramCommits += buckets.getJSONObject(b).getLong("commits");
+                    }
+                    assertEquals(name + " commit histogram", table.getLong("commits"), histogramCommits);
+                    assertTrue(name + " JDBC time", table.getDouble("jdbc_seconds") <= table.getDouble("wall_seconds"));
+                }
+            }
+        } catch (Exception e) {
+            fail("Test failed due to exception: " + e.getMessage());
+        } finally {
+            reportFile.delete();
+        }
+    }
+
+    /**
+     * Tests --target-commit-ms by loading with a tiny starting batch size and
+     * verifying that the tables match a fixed-size load and that the report
+     * records the batch sizes that were used.
+     */
+    @Test
+    public void testAdaptiveBatchSizeMatchesFixed() {
+        String[] tables = {
+            "Actors", "Movies", "Directors", "Awards",
+            "Movie_Actors", "Movie_Director", "Movie_Awards",
+            "Actor_Awards", "Director_Awards"
+        };
+        File reportFile = new File("load-report-adaptive.json");
+        try {
+            PopulateDB.main(new String[]{});
+            List<List<String>> expected = new ArrayList<>();
+            try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + DB_FILE);
+                Statement stmt = conn.createStatement()) {
+                for (String table : tables) {
+                    expected.add(tableContents(stmt, table));
+                }
+            }
+
+            PopulateDB.main(new String[]{"--batch-size", "1", "--target-commit-ms", "1000", "--report", reportFile.getPath()});
+            try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + DB_FILE);
+                Statement stmt = conn.createStatement()) {
+                for (int i = 0; i < tables.length; i++) {
+                    assertEquals("Rows of " + tables[i], expected.get(i), tableContents(stmt, tables[i]));
+                }
+            }
+
+            JSONArray reported = new JSONObject(new String(Files.readAllBytes(reportFile.toPath()), "UTF-8"))
+                .getJSONArray("tables");
+            for (int i = 0; i < reported.length(); i++) {
+                JSONObject table = reported.getJSONObject(i);
+                JSONObject batchSize = table.getJSONObject("batch_size");
+                assertTrue(table.getString("table") + " should commit every batch", table.getLong("commits") >= table.getLong("batches"));
+                assertTrue("Batches should hold every inserted row",
+                          table.getLong("batches") * batchSize.getInt("max") >= table.getLong("rows_inserted"));
+                if (table.getLong("rows_inserted") > 32) { // Growth shows once the second batch has more than 16 rows
+                    assertTrue(table.getString("table") + " batch size should grow", batchSize.getInt("max") > 16);
+                }
+            }
+        } catch (Exception e) {
+            fail("Test failed due to exception: " + e.getMessage());
+        } finally {
+            reportFile.delete();
+        }
+    }
+
+    /**
+     * Tests --dedup by:
+     * 1. Loading the fixtures, in which two actors are listed twice
+     * 2. Verifying each actor is stored once and junction rows point at the kept row
+     * 3. Repeating with a tiny memory budget, so duplicates are found by the on-disk sort
+     */
+    @Test
+    public void testDedupMergesDuplicateActors() {
+        try {
+            for (String[] args : new String[][]{{"--dedup"}, {"--dedup", "--dedup-memory", "1k"}, {"--dedup", "--parallel", "2"}}) {
+                PopulateDB.main(args);
+
+                try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + DB_FILE);
+                    Statement stmt = conn.createStatement()) {
+                    String label = String.join(" ", args);
+                    assertEquals(label + ": actors", 38, stmt.executeQuery("SELECT COUNT(*) FROM Actors").getInt(1));
+                    assertEquals(label + ": directors", 19, stmt.executeQuery("SELECT COUNT(*) FROM Directors").getInt(1));
+                    assertEquals(label + ": DiCaprio stored once", 1,
+                                stmt.executeQuery("SELECT COUNT(*) FROM Actors WHERE name = 'Leonardo DiCaprio'").getInt(1));
+                    assertEquals(label + ": ids are CSV positions", 40, stmt.executeQuery("SELECT MAX(actor_id) FROM Actors").getInt(1));
+
+                    // One movie credits both copies of DiCaprio, which become the same pair
+                    assertEquals(label + ": all cast pairs kept", 37,
+                                stmt.executeQuery("SELECT COUNT(*) FROM Movie_Actors").getInt(1));
+                    assertEquals(label + ": no cast rows for merged actors", 0,
+                                stmt.executeQuery("SELECT COUNT(*) FROM Movie_Actors WHERE actor_id IN (23, 31)").getInt(1));
+                    assertEquals(label + ": DiCaprio's credits", 2,
+                                stmt.executeQuery("SELECT COUNT(*) FROM Movie_Actors WHERE actor_id = 3").getInt(1));
+                    assertFalse(label + ": no foreign key should be violated",
+                               stmt.executeQuery("PRAGMA foreign_key_check").next());
+                }
+            }
+        } catch (Exception e) {
+            fail("Test failed due to exception: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Tests reject quarantine by:
+     * 1. Loading a movies file with short rows, a bad number and a missing title
+     * 2. Verifying each bad row is in the reject file with its reason code
+     * 3. Verifying only a handful of examples are printed, followed by a summary
+     */
+    @Test
+    public void testRejectFileRecordsReasonCodes() {
+        StringBuilder moviesData = new StringBuilder("title,release_date,runtime,genre,plot,imdb_rating\n");
+        moviesData.append("Good,2010-07-16,148,Drama,Plot,8.8\n");
+        moviesData.append("Bad,2010-07-16,two hours,Drama,Plot,7.0\n");
+        moviesData.append(",2010-07-16,90,Drama,Plot,7.0\n");
+        for (int i = 0; i < 10; i++) {
+            moviesData.append("Short ").append(i).append(",2010-07-16\n");
+        }
+
+        Path moviesPath = Paths.get("csvfiles/movies.csv");
+        Path backupMovies = Paths.get("csvfiles/movies_backup.csv");
+        Path rejectPath = Paths.get("rejects/Movies.csv");
+        PrintStream originalErr = System.err;
+        ByteArrayOutputStream errors = new ByteArrayOutputStream();
+
+        try {
+            Files.move(moviesPath, backupMovies);
+            Files.write(moviesPath, moviesData.toString().getBytes());
+
+            for (String[] args : new String[][]{{}, {"--parallel", "2"}}) {
+                errors.reset();
+                System.setErr(new PrintStream(errors, true));
+                try {
+                    PopulateDB.main(args);
+                } finally {
+                    System.setErr(originalErr);
+                }
+
+                try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + DB_FILE);
+                    Statement stmt = conn.createStatement()) {
+                    assertEquals("Only the good row should load", 1,
+                                stmt.executeQuery("SELECT COUNT(*) FROM Movies").getInt(1));
+                }
+                List<String> rejected = Files.readAllLines(rejectPath);
+                assertEquals("reason,line,record", rejected.get(0));
+                assertEquals("TYPE_MISMATCH,3,\"Bad,2010-07-16,two hours,Drama,Plot,7.0\"", rejected.get(1));
+                assertEquals("SQLITE_CONSTRAINT_19,4,\",2010-07-16,90,Drama,Plot,7.0\"", rejected.get(12));
+                assertEquals("COLUMN_COUNT,5,\"Short 0,2010-07-16\"", rejected.get(2));
+                assertEquals(13, rejected.size());
+
+                String console = errors.toString();
+                String summary = "12 row(s) of csvfiles/movies.csv rejected (TYPE_MISMATCH 1, COLUMN_COUNT 10, SQLITE_CONSTRAINT_19 1)";
+                assertTrue(String.join(" ", args) + ": summary missing from " + console, console.contains(summary));
+                String moviesOutput = console.substring(0, console.indexOf(summary));
+                assertEquals("Examples should be capped", 5, moviesOutput.split("Problem line: ", -1).length - 1);
+            }
+        } catch (Exception e) {
+            fail("Test failed due to exception: " + e.getMessage());
+        } finally {
+            try {
+                Files.deleteIfExists(moviesPath);
+                Files.move(backupMovies, moviesPath);
+                Files.deleteIfExists(rejectPath);
+            } catch (IOException e) {
+                fail("Failed to restore original files: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Tests typed binding by:
+     * 1. Loading a movies file with one non-numeric running time
+     * 2. Verifying numbers are stored as INTEGER and REAL values
+     * 3. Verifying the bad row is skipped while the others load
+     */
+    @Test
+    public void testTypedBindingRejectsBadNumbers() {
+        String moviesData = "title,release_date,runtime,genre,plot,imdb_rating\n" +
+            "Good,2010-07-16,148,Drama,\"A plot, with a comma\",8.8\n" +
+            "Bad,2010-07-16,two hours,Drama,Plot,7.0\n" +
+            "NoRating,2011-01-01,90,Drama,Plot,\n";
+
+        Path moviesPath = Paths.get("csvfiles/movies.csv");
+        Path backupMovies = Paths.get("csvfiles/movies_backup.csv");
+
+        try {
+            Files.move(moviesPath, backupMovies);
+            Files.write(moviesPath, moviesData.getBytes());
+
+            for (String[] args : new String[][]{{}, {"--parallel", "2"}}) {
+                PopulateDB.main(args);
+
+                try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + DB_FILE);
+                    Statement stmt = conn.createStatement()) {
+                    assertEquals("Bad row should be skipped", 2,
+                                stmt.executeQuery("SELECT COUNT(*) FROM Movies").getInt(1));
+                    ResultSet rs = stmt.executeQuery(
+                        "SELECT typeof(running_time), typeof(ratings), ratings FROM Movies WHERE title = 'Good'");
+                    assertTrue(rs.next());
+                    assertEquals("integer", rs.getString(1));
+                    assertEquals("real", rs.getString(2));
+                    assertEquals(8.8, rs.getDouble(3), 0.0);
+                    assertEquals("Empty number should be NULL", "null",
+                                stmt.executeQuery("SELECT typeof(ratings) FROM Movies WHERE title = 'NoRating'").getString(1));
+                }
+            }
+        } catch (Exception e) {
+            fail("Test failed due to exception: " + e.getMessage());
+        } finally {
+            try {
+                Files.deleteIfExists(moviesPath);
+                Files.move(backupMovies, moviesPath);
+            } catch (IOException e) {
+                fail("Failed to restore original files: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Tests that a reader failure that is not an IOException reaches the
+     * consumer even when it happens after the queue has filled up, instead of
+     * leaving nextChunk() waiting forever.
+     */
+    @Test(timeout = 10000)
+    public void testPipelineReportsReaderFailure() throws Exception {
+        Reader failing = new Reader() {
+            private int records = 0;
+
+            @Override
+            public int read(char[] buffer, int offset, int length) {
+                if (records >= 20000) throw new IllegalStateException("source went away");
+                records++;
+                String record = "1,2\n";
+                record.getChars(0, record.length(), buffer, offset);
+                return record.length();
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        try (IngestPipeline pipeline = new IngestPipeline(failing, 1, 2, "failing.csv", false)) {
+            Thread.sleep(200); // Let the reader fill the queue before anything is taken
+            while (pipeline.nextChunk() != null) {
+                // Drain the chunks read before the failure
+            }
+            fail("The reader failure should be reported");
+        } catch (IOException expected) {
+            assertTrue(expected.getMessage(), expected.getMessage().contains("source went away"));
+        }
+    }
+
+    /**
+     * Tests that the pipelined loader inserts the same rows as the sequential one
+     * by loading the fixtures both ways and comparing every table's row count.
+     */
+    @Test
+    public void testParallelLoadMatchesSequential() {
+        String[] tables = {
+            "Actors", "Movies", "Directors", "Awards",
+            "Movie_Actors", "Movie_Director", "Movie_Awards",
+            "Actor_Awards", "Director_Awards"
+        };
+
+        try {
+            PopulateDB.main(new String[]{});
+            int[] sequentialCounts = new int[tables.length];
+            try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + DB_FILE);
+                Statement stmt = conn.createStatement()) {
+                for (int i = 0; i < tables.length; i++) {
+                    sequentialCounts[i] = stmt.executeQuery("SELECT COUNT(*) FROM " + tables[i]).getInt(1);
+                }
+            }
+
+            PopulateDB.main(new String[]{"--parallel", "3"});
+            try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + DB_FILE);
+                Statement stmt = conn.createStatement()) {
+                for (int i = 0; i < tables.length; i++) {
+                    assertEquals("Row count for " + tables[i] + " should match the sequential load",
+                                sequentialCounts[i], stmt.executeQuery("SELECT COUNT(*) FROM " + tables[i]).getInt(1));
+                }
+                assertEquals("Quoted plots should be parsed the same way", 1,
+                            stmt.executeQuery("SELECT COUNT(*) FROM Movies WHERE title = 'Inception' " +
+                                "AND genre = 'Action, Adventure, Sci-Fi'").getInt(1));
+            }
+        } catch (Exception e) {
+            fail("Test failed due to exception: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Reads every row of a table, ordered by the first column, as text.
+     */
+    private static List<String> tableContents(Statement stmt, String table) throws SQLException {
+        List<String> rows = new ArrayList<>();
+        try (ResultSet rs = stmt.executeQuery("SELECT * FROM " + table + " ORDER BY 1")) {
+            int columns = rs.getMetaData().getColumnCount();
+            while (rs.next()) {
+                StringBuilder row = new StringBuilder();
+                for (int c = 1; c <= columns; c++) {
+                    row.append(rs.getString(c)).append('|');
+                }
+                rows.add(row.toString());
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Tests that staged loading, where tables are loaded into staging files on
+     * separate threads and merged with ATTACH, stores exactly the same rows
+     * and ids as the one-table-at-a-time load, with and without --dedup.
+     */
+    @Test
+    public void testStagedLoadMatchesSequential() {
+        String[] tables = {
+            "Actors", "Movies", "Directors", "Awards",
+            "Movie_Actors", "Movie_Director", "Movie_Awards",
+            "Actor_Awards", "Director_Awards", "Load_Progress"
+        };
+
+        try {
+            for (String[] args : new String[][]{{}, {"--dedup"}}) {
+                PopulateDB.main(args);
+                List<List<String>> expected = new ArrayList<>();
+                try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + DB_FILE);
+                    Statement stmt = conn.createStatement()) {
+                    for (String table : tables) {
+                        expected.add(tableContents(stmt, table));
+                    }
+                }
+
+                String[] stagedArgs = Arrays.copyOf(args, args.length + 2);
+                stagedArgs[args.length] = "--staged";
+                stagedArgs[args.length + 1] = "4";
+                PopulateDB.main(stagedArgs);
+                try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + DB_FILE);
+                    Statement stmt = conn.createStatement()) {
+                    for (int i = 0; i < tables.length; i++) {
+                        assertEquals(String.join(" ", stagedArgs) + ": rows of " + tables[i],
+                                    expected.get(i), tableContents(stmt, tables[i]));
+                    }
+                    assertFalse("No foreign key should be violated", stmt.executeQuery("PRAGMA foreign_key_check").next());
+                }
+                String[] leftovers = new File(DB_FILE).getAbsoluteFile().getParentFile()
+                    .list((dir, name) -> name.startsWith("staging-"));
+                assertEquals("No staging file should be left next to the database",
+                            0, leftovers.length);
+            }
+        } catch (Exception e) {
+            fail("Test failed due to exception: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Tests binary snapshots by:
+     * 1. Loading the CSV files and exporting a snapshot over an existing file,
+     *    with no temporary file left behind
+     * 2. Importing it into a fresh database and verifying every table matches
+     * 3. Verifying that a damaged snapshot is refused and leaves the tables as they were
+     */
+    @Test
+    public void testSnapshotRoundTrip() throws Exception {
+        String[] tables = {
+            "Actors", "Movies", "Directors", "Awards",
+            "Movie_Actors", "Movie_Director", "Movie_Awards",
+            "Actor_Awards", "Director_Awards", "Load_Progress", "Load_Metadata"
+        };
+        Path snapshot = Files.createTempFile("movies", ".snap");
+        try {
+            PopulateDB.main(new String[]{"--export-snapshot", snapshot.toString()});
+            assertTrue("The snapshot should replace the empty file", Files.size(snapshot) > 0);
+            assertFalse("The temporary file should be renamed away", Files.exists(Paths.get(snapshot + ".tmp")));
+            List<List<String>> expected = new ArrayList<>();
+            try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + DB_FILE);
+                Statement stmt = conn.createStatement()) {
+                for (String table : tables) {
+                    expected.add(tableContents(stmt, table));
+                }
+            }
+
+            InitialiseDB.main(new String[]{"--rebuild"});
+            PopulateDB.main(new String[]{"--from-snapshot", snapshot.toString()});
+            try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + DB_FILE);
+                Statement stmt = conn.createStatement()) {
+                for (int i = 0; i < tables.length; i++) {
+                    assertEquals("Rows of " + tables[i], expected.get(i), tableContents(stmt, tables[i]));
+                }
+            }
+
+            byte[] bytes = Files.readAllBytes(snapshot);
+            bytes[bytes.length - 10] ^= 0x55; // Inside the last table section
+            Files.write(snapshot, bytes);
+            PopulateDB.main(new String[]{"--from-snapshot", snapshot.toString()});
+            try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + DB_FILE);
+                Statement stmt = conn.createStatement()) {
+                for (int i = 0; i < tables.length; i++) {
+                    assertEquals("Damaged snapshot should change nothing in " + tables[i], expected.get(i),
+                                tableContents(stmt, tables[i]));
+                }
+            }
+        } finally {
+            Files.deleteIfExists(snapshot);
+        }
+    }
+
+    /**
+     * Tests the incremental reload by:
+     * 1. Running a full load, which records a fingerprint per CSV file
+     * 2. Changing one award and one movie rating in the CSV files
+     * 3. Running --incremental and verifying only those rows changed,
+     *    with junction rows re-pointed at the replacement award
+     */
+    @Test
+    public void testIncrementalReloadAppliesOnlyChangedRows() {
+        Path awardsPath = Paths.get("csvfiles/awards.csv");
+        Path moviesPath = Paths.get("csvfiles/movies.csv");
+        Path backupAwards = Paths.get("csvfiles/awards_backup.csv");
+        Path backupMovies = Paths.get("csvfiles/movies_backup.csv");
+
+        try {
+            PopulateDB.main(new String[]{});
+
+            long inceptionId;
+            int awardCount;
+            int movieAwardCount;
+            try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + DB_FILE);
+                Statement stmt = conn.createStatement()) {
+                assertEquals("Every CSV file should have a fingerprint", 9,
+                            stmt.executeQuery("SELECT COUNT(*) FROM Load_Metadata").getInt(1));
+                inceptionId = stmt.executeQuery("SELECT movie_id FROM Movies WHERE title = 'Inception'").getLong(1);
+                awardCount = stmt.executeQuery("SELECT COUNT(*) FROM Awards").getInt(1);
+                movieAwardCount = stmt.executeQuery("SELECT COUNT(*) FROM Movie_Awards").getInt(1);
+            }
+
+            Files.copy(awardsPath, backupAwards);
+            Files.copy(moviesPath, backupMovies);
+            String awards = new String(Files.readAllBytes(awardsPath));
+            Files.write(awardsPath, awards.replace("Oscar,Best Picture", "Oscar,Best Motion Picture").getBytes());
+            String movies = new String(Files.readAllBytes(moviesPath));
+            Files.write(moviesPath, movies.replaceFirst("(Inception,.*),8\\.8", "$1,8.7").getBytes());
+
+            PopulateDB.main(new String[]{"--incremental"});
+
+            try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + DB_FILE);
+                Statement stmt = conn.createStatement()) {
+                ResultSet rs = stmt.executeQuery("SELECT movie_id, ratings FROM Movies WHERE title = 'Inception'");
+                assertTrue(rs.next());
+                assertEquals("Changed movie should keep its id", inceptionId, rs.getLong(1));
+                assertEquals("Changed rating should be applied", 8.7, rs.getDouble(2), 0.001);
+
+                assertEquals("Award count should be unchanged", awardCount,
+                            stmt.executeQuery("SELECT COUNT(*) FROM Awards").getInt(1));
+                assertEquals("Old award should be gone", 0,
+                            stmt.executeQuery("SELECT COUNT(*) FROM Awards WHERE category = 'Best Picture' AND name = 'Oscar'").getInt(1));
+                assertEquals("Movie awards should be re-pointed, not lost", movieAwardCount,
+                            stmt.executeQuery("SELECT COUNT(*) FROM Movie_Awards ma JOIN Awards a ON ma.award_id = a.award_id").getInt(1));
+                assertTrue("Replacement award should be referenced",
+                            stmt.executeQuery("SELECT COUNT(*) FROM Movie_Awards ma JOIN Awards a ON ma.award_id = a.award_id " +
+                                "WHERE a.category = 'Best Motion Picture'").getInt(1) > 0);
+            }
+        } catch (Exception e) {
+            fail("Test failed due to exception: " + e.getMessage());
+        } finally {
+            try {
+                if (Files.exists(backupAwards)) Files.move(backupAwards, awardsPath, StandardCopyOption.REPLACE_EXISTING);
+                if (Files.exists(backupMovies)) Files.move(backupMovies, moviesPath, StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException e) {
+                fail("Failed to restore original files: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Tests that an incremental reload compares values by type and quarantines
+     * orphans by:
+     * 1. Rewriting a rating as 8.80 instead of 8.8, which is the same value,
+     *    and changing another movie's rating
+     * 2. Appending a cast row for a movie that does not exist
+     * 3. Verifying only the second movie is updated, with typed values, and
+     *    the orphan is in the reject file
+     */
+    @Test
+    public void testIncrementalReloadComparesTypedValues() {
+        Path moviesPath = Paths.get("csvfiles/movies.csv");
+        Path castPath = Paths.get("csvfiles/movie_actors.csv");
+        Path backupMovies = Paths.get("csvfiles/movies_backup.csv");
+        Path backupCast = Paths.get("csvfiles/movie_actors_backup.csv");
+        Path rejectPath = Paths.get("rejects/Movie_Actors.csv");
+        PrintStream originalOut = System.out;
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+        try {
+            PopulateDB.main(new String[]{});
+
+            Files.copy(moviesPath, backupMovies);
+            Files.copy(castPath, backupCast);
+            String movies = new String(Files.readAllBytes(moviesPath));
+            movies = movies.replaceFirst("(Inception,.*),8\\.8", "$1,8.80");
+            Files.write(moviesPath, movies.replaceFirst("(The Shawshank Redemption,.*),9\\.3", "$1,9.2").getBytes());
+            Files.write(castPath, "\n999999,1".getBytes(), StandardOpenOption.APPEND);
+            int orphanLine = Files.readAllLines(castPath).size();
+
+            System.setOut(new PrintStream(output, true));
+            try {
+                PopulateDB.main(new String[]{"--incremental"});
+            } finally {
+                System.setOut(originalOut);
+            }
+
+            assertTrue("Only the changed rating should count as a change: " + output,
+                        output.toString().contains("csvfiles/movies.csv: 0 inserted, 1 changed, 0 deleted"));
+            List<String> rejected = Files.readAllLines(rejectPath);
+            assertEquals("MISSING_PARENT," + orphanLine + ",\"999999,1\"", rejected.get(rejected.size() - 1));
+
+            try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + DB_FILE);
+                Statement stmt = conn.createStatement()) {
+                ResultSet rs = stmt.executeQuery("SELECT typeof(ratings), typeof(running_time) FROM Movies WHERE title = 'The Shawshank Redemption'");
+                assertEquals("real", rs.getString(1));
+                assertEquals("integer", rs.getString(2));
+            }
+        } catch (Exception e) {
+            fail("Test failed due to exception: " + e.getMessage());
+        } finally {
+            try {
+                if (Files.exists(backupMovies)) Files.move(backupMovies, moviesPath, StandardCopyOption.REPLACE_EXISTING);
+                if (Files.exists(backupCast)) Files.move(backupCast, castPath, StandardCopyOption.REPLACE_EXISTING);
+                Files.deleteIfExists(rejectPath);
+            } catch (IOException e) {
+                fail("Failed to restore original files: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Tests that an incremental reload numbers new entity rows for the junction
+     * files by:
+     * 1. Appending a movie and a cast row that refers to it by its position
+     * 2. Running --incremental
+     * 3. Verifying the cast row points at the new movie
+     */
+    @Test
+    public void testIncrementalReloadLinksNewRows() {
+        Path moviesPath = Paths.get("csvfiles/movies.csv");
+        Path castPath = Paths.get("csvfiles/movie_actors.csv");
+        Path backupMovies = Paths.get("csvfiles/movies_backup.csv");
+        Path backupCast = Paths.get("csvfiles/movie_actors_backup.csv");
+
+        try {
+            PopulateDB.main(new String[]{});
+
+            Files.copy(moviesPath, backupMovies);
+            Files.copy(castPath, backupCast);
+            Files.write(moviesPath, "\nZanzibar Nights,2021-05-01,101,Drama,A quiet film.,7.1".getBytes(), StandardOpenOption.APPEND);
+            int position = Files.readAllLines(moviesPath).size() - 1;
+            Files.write(castPath, ("\n" + position + ",1").getBytes(), StandardOpenOption.APPEND);
+
+            PopulateDB.main(new String[]{"--incremental"});
+
+            try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + DB_FILE);
+                Statement stmt = conn.createStatement()) {
+                assertEquals("The new movie should have its cast row", 1,
+                            stmt.executeQuery("SELECT COUNT(*) FROM Movie_Actors ma JOIN Movies m ON ma.movie_id = m.movie_id " +
+                                "WHERE m.title = 'Zanzibar Nights' AND ma.actor_id = 1").getInt(1));
+            }
+        } catch (Exception e) {
+            fail("Test failed due to exception: " + e.getMessage());
+        } finally {
+            try {
+                if (Files.exists(backupMovies)) Files.move(backupMovies, moviesPath, StandardCopyOption.REPLACE_EXISTING);
+                if (Files.exists(backupCast)) Files.move(backupCast, castPath, StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException e) {
+                fail("Failed to restore original files: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Tests that the genres are split into Genres and Movie_Genres with a
+     * matching genre_mask, and split again when a movie's genres change.
+     */
+    @Test
+    public void testGenresFollowIncrementalChanges() {
+        Path moviesPath = Paths.get("csvfiles/movies.csv");
+        Path backupMovies = Paths.get("csvfiles/movies_backup.csv");
+
+        try {
+            PopulateDB.main(new String[]{});
+            try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + DB_FILE);
+                Statement stmt = conn.createStatement()) {
+                assertEquals(Arrays.asList("Action", "Adventure", "Sci-Fi"), movieGenres(stmt, "Inception"));
+                assertEquals("Every movie should be split", 0,
+                            stmt.executeQuery("SELECT COUNT(*) FROM Movies WHERE genre_mask IS NULL").getInt(1));
+                assertEquals("Each genre should be stored once", 0, stmt.executeQuery(
+                            "SELECT COUNT(*) FROM (SELECT lower(name) FROM Genres GROUP BY 1 HAVING COUNT(*) > 1)").getInt(1));
+            }
+
+            Files.copy(moviesPath, backupMovies);
+            String movies = new String(Files.readAllBytes(moviesPath));
+            Files.write(moviesPath, movies.replace("\"Action, Adventure, Sci-Fi\",\"A thief",
+                                                   "\"Sci-Fi, Thriller\",\"A thief").getBytes());
+            PopulateDB.main(new String[]{"--incremental"});
+
+            try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + DB_FILE);
+                Statement stmt = conn.createStatement()) {
+                assertEquals(Arrays.asList("Sci-Fi", "Thriller"), movieGenres(stmt, "Inception"));
+            }
+        } catch (Exception e) {
+            fail("Test failed due to exception: " + e.getMessage());
+        } finally {
+            try {
+                if (Files.exists(backupMovies)) Files.move(backupMovies, moviesPath, StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException e) {
+                fail("Failed to restore original files: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * @return The genres of a movie from Movie_Genres, after checking that its
+     *         genre_mask has exactly their bits.
+     */
+    private static List<String> movieGenres(Statement stmt, String title) throws SQLException {
+        List<String> genres = new ArrayList<>();
+        long mask = 0;
+        try (ResultSet rs = stmt.executeQuery("SELECT g.name, g.genre_id FROM Movies m " +
+                "JOIN Movie_Genres mg ON mg.movie_id = m.movie_id JOIN Genres g ON g.genre_id = mg.genre_id " +
+                "WHERE m.title = '" + title + "' ORDER BY g.name")) {
+            while (rs.next()) {
+                genres.add(rs.getString(1));
+                mask |= 1L << (rs.getInt(2) - 1);
+            }
+        }
+        assertEquals("genre_mask of " + title, mask,
+                    stmt.executeQuery("SELECT genre_mask FROM Movies WHERE title = '" + title + "'").getLong(1));
+        return genres;
+    }
+
+    /**
+     * Tests that the summary tables behind queries 5 and 6 match their source
+     * views after a full load, after an incremental load that renames an award
+     * and moves a rating across 8.0, and after single-row changes, including a
+     * movie deleted before its pairs as an incremental load does.
+     */
+    @Test
+    public void testQuerySummariesFollowChanges() {
+        Path awardsPath = Paths.get("csvfiles/awards.csv");
+        Path moviesPath = Paths.get("csvfiles/movies.csv");
+        Path backupAwards = Paths.get("csvfiles/awards_backup.csv");
+        Path backupMovies = Paths.get("csvfiles/movies_backup.csv");
+
+        try {
+            PopulateDB.main(new String[]{});
+            try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + DB_FILE);
+                Statement stmt = conn.createStatement()) {
+                assertTrue("The summaries should be filled",
+                            stmt.executeQuery("SELECT COUNT(*) FROM Movie_Award_Counts").getInt(1) > 0);
+                assertSummariesMatchSources(stmt);
+            }
+
+            Files.copy(awardsPath, backupAwards);
+            Files.copy(moviesPath, backupMovies);
+            String awards = new String(Files.readAllBytes(awardsPath));
+            Files.write(awardsPath, awards.replace("Oscar,Best Director", "BAFTA,Best Director").getBytes());
+            String movies = new String(Files.readAllBytes(moviesPath));
+            Files.write(moviesPath, movies.replaceFirst("(Inception,.*),8\\.8", "$1,7.9").getBytes());
+            PopulateDB.main(new String[]{"--incremental"});
+
+            try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + DB_FILE);
+                Statement stmt = conn.createStatement()) {
+                assertSummariesMatchSources(stmt);
+
+                stmt.execute("PRAGMA foreign_keys = ON;");
+                stmt.execute("UPDATE Movies SET ratings = 9.1 WHERE title = 'Inception';");
+                stmt.execute("UPDATE Awards SET name = 'Oscar' WHERE name = 'BAFTA';");
+                stmt.execute("DELETE FROM Movie_Actors WHERE (movie_id, actor_id) IN (SELECT ma.movie_id, ma.actor_id " +
+                            "FROM Movie_Actors ma JOIN Movies m ON m.movie_id = ma.movie_id WHERE m.ratings > 8.0 LIMIT 1);");
+                stmt.execute("INSERT INTO Actor_Awards (actor_id, award_id) " +
+                            "SELECT MAX(actor_id), MAX(award_id) FROM Actors, Awards;");
+                assertSummariesMatchSources(stmt);
+
+                conn.setAutoCommit(false);
+                stmt.execute("PRAGMA defer_foreign_keys = ON;");
+                stmt.execute("DELETE FROM Movies WHERE title = 'The Dark Knight';");
+                stmt.execute("DELETE FROM Movie_Actors WHERE movie_id NOT IN (SELECT movie_id FROM Movies);");
+                stmt.execute("DELETE FROM Movie_Awards WHERE movie_id NOT IN (SELECT movie_id FROM Movies);");
+                stmt.execute("DELETE FROM Movie_Director WHERE movie_id NOT IN (SELECT movie_id FROM Movies);");
+                conn.commit();
+                conn.setAutoCommit(true);
+                assertSummariesMatchSources(stmt);
+            }
+        } catch (Exception e) {
+            fail("Test failed due to exception: " + e.getMessage());
+        } finally {
+            try {
+                if (Files.exists(backupAwards)) Files.move(backupAwards, awardsPath, StandardCopyOption.REPLACE_EXISTING);
+                if (Files.exists(backupMovies)) Files.move(backupMovies, moviesPath, StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException e) {
+                fail("Failed to restore original files: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Checks that every summary table holds the same rows as its source view,
+     * apart from rows whose counts have dropped to zero.
+     */
+    private static void assertSummariesMatchSources(Statement stmt) throws SQLException {
+        String[][] summaries = {
+            {"Movie_Award_Counts", "award_count > 0"},
+            {"Actor_Stats", "award_count > 0 OR high_rated_movies > 0"}
+        };
+        for (String[] summary : summaries) {
+            String table = "(SELECT * FROM " + summary[0] + " WHERE " + summary[1] + ")";
+            String source = "(SELECT * FROM " + summary[0] + "_Source)";
+            assertEquals(summary[0] + " has rows its source lacks", 0, stmt.executeQuery(
+                        "SELECT COUNT(*) FROM (SELECT * FROM " + table + " EXCEPT SELECT * FROM " + source + ")").getInt(1));
+            assertEquals(summary[0] + " lacks rows of its source", 0, stmt.executeQuery(
+                        "SELECT COUNT(*) FROM (SELECT * FROM " + source + " EXCEPT SELECT * FROM " + table + ")").getInt(1));
+        }
+    }
+
+    /**
+     * Tests watch mode by:
+     * 1. Starting PopulateDB --watch on a background thread
+     * 2. Appending an actor, a cast row for it and an unfinished line
+     * 3. Verifying the new rows become visible without another load,
+     *    while the unfinished line is left alone until the thread is interrupted
+     */
+    @Test
+    public void testWatchAppliesAppendedRows() throws Exception {
+        Path actorsPath = Paths.get("csvfiles/actors.csv");
+        Path castPath = Paths.get("csvfiles/movie_actors.csv");
+        Path backupActors = Paths.get("csvfiles/actors_backup.csv");
+        Path backupCast = Paths.get("csvfiles/movie_actors_backup.csv");
+        Files.copy(actorsPath, backupActors, StandardCopyOption.REPLACE_EXISTING);
+        Files.copy(castPath, backupCast, StandardCopyOption.REPLACE_EXISTING);
+
+        Thread watcher = new Thread(() -> PopulateDB.main(new String[]{"--watch", "--watch-delay", "100"}));
+        try {
+            int actorRows = 0;
+            try (CsvTokenizer csv = new CsvTokenizer(new FileReader(actorsPath.toFile()))) {
+                csv.next(); // Header
+                while (csv.next()) actorRows++;
+            }
+            int castCount;
+            try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + DB_FILE);
+                Statement stmt = conn.createStatement()) {
+                watcher.start();
+                assertTrue("Initial load should finish", waitFor(stmt,
+                    "SELECT COUNT(*) = 9 FROM Load_Progress WHERE completed = 1"));
+                castCount = stmt.executeQuery("SELECT COUNT(*) FROM Movie_Actors").getInt(1);
+
+                // The CSV files do not end with a newline, so appends start with one
+                Files.write(actorsPath, "\nWatch Tester,1970-01-01\n".getBytes(), StandardOpenOption.APPEND);
+                Files.write(castPath, ("\n1," + (actorRows + 1) + "\n2,").getBytes(), StandardOpenOption.APPEND);
+
+                assertTrue("Appended rows should become visible", waitFor(stmt,
+                    "SELECT COUNT(*) = 1 FROM Movie_Actors ma JOIN Actors a ON ma.actor_id = a.actor_id " +
+                    "WHERE a.name = 'Watch Tester' AND ma.movie_id = 1"));
+                Thread.sleep(300);
+                assertEquals("Only the finished cast line should be applied", castCount + 1,
+                            stmt.executeQuery("SELECT COUNT(*) FROM Movie_Actors").getInt(1));
+            }
+            watcher.interrupt();
+            watcher.join(10000);
+            assertFalse("Watch mode should stop when interrupted", watcher.isAlive());
+        } finally {
+            watcher.interrupt();
+            watcher.join(10000);
+            Files.move(backupActors, actorsPath, StandardCopyOption.REPLACE_EXISTING);
+            Files.move(backupCast, castPath, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Polls a query until it returns true, for up to 30 seconds.
+     */
+    private static boolean waitFor(Statement stmt, String query) throws Exception {
+        long deadline = System.currentTimeMillis() + 30000;
+        while (System.currentTimeMillis() < deadline) {
+            try (ResultSet rs = stmt.executeQuery(query)) {
+                if (rs.next() && rs.getBoolean(1)) return true;
+            } catch (SQLException e) {
+                // The database is busy with the load
+            }
+            Thread.sleep(50);
+        }
+        return false;
+    }
+
+    /**
+     * Deletes the test database file after all tests complete.
      */
     @AfterClass
     public static void cleanupDatabase() {
@@ -1,12 +1,20 @@
 package src.test;
 import org.junit.*;
 import src.main.InitialiseDB;
+import src.main.MovieSearch;
 import src.main.PopulateDB;
+import src.main.QueryDB;
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.TreeSet;
 import java.sql.Connection;
 import java.sql.DriverManager;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.Statement;
 import static org.junit.Assert.*;
@@ -21,7 +29,7 @@ public class QueryDBTest {
     @BeforeClass
     public static void setupDatabase() {
         // Ensure database is initialized before running tests
-        InitialiseDB.main(new String[]{});
+        InitialiseDB.main(new String[]{"--rebuild"});
         PopulateDB.main(new String[]{});
     }
 
@@ -133,6 +141,183 @@ public class QueryDBTest {
         }
     }
 
+    /**
+     * Checks that the queries use the lookup indexes: queries 2-6 find every
+     * table with a SEARCH, queries 5 and 6 through the summary tables, and
+     * query 1 reads the titles in order from an index.
+     */
+    @Test
+    public void testQueryPlansUseIndexes() {
+        try (Connection connection = DriverManager.getConnection("jdbc:sqlite:" + DB_FILE)) {
+            for (int i = 0; i < QueryDB.QUERIES.length; i++) {
+                int query = i + 1;
+                List<String> plan = queryPlan(connection, QueryDB.QUERIES[i]);
+                for (String step : plan) {
+                    if (step.startsWith("SCAN")) {
+                        assertTrue("Query " + query + " scans a table: " + plan, step.contains("COVERING INDEX"));
+                        assertTrue("Query " + query + " should not scan: " + plan, query == 1);
+                    }
+                }
+                if (query == 1) {
+                    assertTrue("Query 1 should read titles in index order: " + plan,
+                            plan.contains("SCAN Movies USING COVERING INDEX idx_movies_title"));
+                } else {
+                    assertTrue("Query " + query + " should search: " + plan, plan.get(0).startsWith("SEARCH"));
+                }
+            }
+        } catch (Exception e) {
+            fail("Database query failed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Tests the keyword search: words are stemmed, every word must match, and a
+     * match in the title ranks above a match in the plot only.
+     */
+    @Test
+    public void testSearchRanksTitleMatchesFirst() {
+        try (Connection connection = DriverManager.getConnection("jdbc:sqlite:" + DB_FILE)) {
+            List<String> titles = search(connection, "redemption");
+            assertEquals("The Shawshank Redemption", titles.get(0));
+            assertTrue("Plot matches should be found too: " + titles, titles.contains("Pulp Fiction"));
+
+            assertEquals(Arrays.asList("Inception"), search(connection, "dreams Sci-Fi"));
+            assertTrue(search(connection, "redemption \"nonexistentword").isEmpty());
+        } catch (Exception e) {
+            fail("Database query failed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Tests that the search index follows single-row changes to Movies once a
+     * full load has put its triggers back.
+     */
+    @Test
+    public void testSearchFollowsMovieChanges() {
+        try (Connection connection = DriverManager.getConnection("jdbc:sqlite:" + DB_FILE);
+            Statement statement = connection.createStatement()) {
+            statement.execute("INSERT INTO Movies (title, genre, plot) " +
+                    "VALUES ('Zzyzx Road', 'Thriller', 'A drifter crosses the Mojave.')");
+            assertEquals(Arrays.asList("Zzyzx Road"), search(connection, "mojave"));
+
+            statement.execute("UPDATE Movies SET plot = 'A drifter crosses the desert.' WHERE title = 'Zzyzx Road'");
+            assertTrue(search(connection, "mojave").isEmpty());
+            assertEquals(Arrays.asList("Zzyzx Road"), search(connection, "drifter desert"));
+
+            statement.execute("DELETE FROM Movies WHERE title = 'Zzyzx Road'");
+            assertTrue(search(connection, "drifter").isEmpty());
+        } catch (Exception e) {
+            fail("Database query failed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Tests the genre queries: one genre through Movie_Genres, and several
+     * genres with a minimum rating through the genre_mask bits.
+     */
+    @Test
+    public void testGenreQueries() {
+        try (Connection connection = DriverManager.getConnection("jdbc:sqlite:" + DB_FILE);
+            Statement statement = connection.createStatement()) {
+            List<String> crime = new ArrayList<>();
+            try (PreparedStatement pstmt = connection.prepareStatement(QueryDB.GENRE_MOVIES_SQL)) {
+                pstmt.setString(1, "crime");
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) crime.add(rs.getString("title"));
+                }
+            }
+            assertTrue("Genre names should match in any case: " + crime, crime.contains("Pulp Fiction"));
+            assertEquals("Titles should be in order", new ArrayList<>(new TreeSet<>(crime)), crime);
+            assertEquals(statement.executeQuery("SELECT COUNT(*) FROM Movies WHERE genre LIKE '%Crime%'").getInt(1),
+                        crime.size());
+
+            long mask = 0;
+            for (String genre : new String[]{"Action", "Sci-Fi"}) {
+                mask |= 1L << (statement.executeQuery("SELECT genre_id FROM Genres WHERE name = '" + genre + "'").getInt(1) - 1);
+            }
+            List<String> rated = new ArrayList<>();
+            try (PreparedStatement pstmt = connection.prepareStatement(QueryDB.RATED_GENRE_MOVIES_SQL)) {
+                pstmt.setDouble(1, 8.5);
+                pstmt.setLong(2, mask);
+                pstmt.setLong(3, mask);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) rated.add(rs.getString("title"));
+                }
+            }
+            assertTrue("Inception is Action and Sci-Fi rated 8.8: " + rated, rated.contains("Inception"));
+            assertEquals(statement.executeQuery("SELECT COUNT(*) FROM Movies WHERE ratings >= 8.5 " +
+                        "AND genre LIKE '%Action%' AND genre LIKE '%Sci-Fi%'").getInt(1), rated.size());
+
+            List<String> plan = queryPlan(connection, QueryDB.GENRE_MOVIES_SQL);
+            for (String step : plan) {
+                assertFalse("Query 8 should not scan: " + plan, step.startsWith("SCAN"));
+            }
+        } catch (Exception e) {
+            fail("Database query failed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Tests that query 6 lists actors with the same counts by name, so its
+     * output does not depend on the order rows come out of the summary table.
+     */
+    @Test
+    public void testAwardedActorsOrderIsStable() {
+        try (Connection connection = DriverManager.getConnection("jdbc:sqlite:" + DB_FILE);
+            Statement statement = connection.createStatement()) {
+            List<String> names = new ArrayList<>();
+            try (ResultSet rs = statement.executeQuery(QueryDB.AWARDED_ACTORS_SQL)) {
+                while (rs.next()) names.add(rs.getString("actor_name"));
+            }
+            assertTrue("Query 6 should find actors", names.size() > 1);
+
+            List<String> expected = new ArrayList<>();
+            try (ResultSet rs = statement.executeQuery("SELECT a.name, s.high_rated_movies, s.award_count " +
+                    "FROM Actor_Stats s JOIN Actors a ON s.actor_id = a.actor_id " +
+                    "WHERE s.high_rated_movies > 0 AND s.award_count >= 2")) {
+                List<Object[]> rows = new ArrayList<>();
+                while (rs.next()) rows.add(new Object[]{rs.getString(1), rs.getInt(2), rs.getInt(3)});
+                rows.sort(Comparator.comparing((Object[] row) -> -(Integer) row[1])
+                        .thenComparing(row -> -(Integer) row[2])
+                        .thenComparing(row -> (String) row[0]));
+                for (Object[] row : rows) {
+                    if (!expected.contains(row[0])) expected.add((String) row[0]);
+                }
+            }
+            assertEquals(expected, names);
+        } catch (Exception e) {
+            fail("Database query failed: " + e.getMessage());
+        }
+    }
+
+    private static List<String> search(Connection connection, String words) throws Exception {
+        List<String> titles = new ArrayList<>();
+        try (PreparedStatement pstmt = connection.prepareStatement(QueryDB.SEARCH_MOVIES_SQL)) {
+            pstmt.setString(1, MovieSearch.matchExpression(words));
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    titles.add(rs.getString("title"));
+                }
+            }
+        }
+        return titles;
+    }
+
+    private static List<String> queryPlan(Connection connection, String sql) throws Exception {
+        List<String> plan = new ArrayList<>();
+        try (PreparedStatement pstmt = connection.prepareStatement("EXPLAIN QUERY PLAN " + sql)) {
+            for (int i = 1; i <= pstmt.getParameterMetaData().getParameterCount(); i++) {
+                pstmt.setString(i, "x");
+            }
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    plan.add(rs.getString("detail"));
+                }
+            }
+        }
+        return plan;
+    }
+
     /**
      * Cleans up by deleting the test database file after all tests. 
      */
@@ -0,0 +1,93 @@
+package src.test;
+import org.junit.*;
+
+import src.main.ReadAheadInputStream;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import static org.junit.Assert.*;
+
+public class ReadAheadInputStreamTest {
+
+    /**
+     * A source of ten bytes that then fails with the given exception, and
+     * records whether it was closed.
+     */
+    private static class FailingSource extends InputStream {
+        private final RuntimeException failure;
+        private int remaining = 10;
+        final CountDownLatch closed = new CountDownLatch(1);
+
+        FailingSource(RuntimeException failure) {
+            this.failure = failure;
+        }
+
+        @Override
+        public int read() {
+            if (remaining == 0) {
+                if (failure != null) throw failure;
+                return -1;
+            }
+            remaining--;
+            return 'x';
+        }
+
+        @Override
+        public void close() {
+            closed.countDown();
+        }
+    }
+
+    /**
+     * Tests that the bytes of the source are read in order across blocks, and
+     * that the source is closed at end of stream.
+     */
+    @Test(timeout = 10000)
+    public void testReadsWholeSource() throws Exception {
+        FailingSource source = new FailingSource(null);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ReadAheadInputStream in = new ReadAheadInputStream(source, 3, 2)) {
+            int b;
+            while ((b = in.read()) >= 0) {
+                out.write(b);
+            }
+        }
+        assertEquals("xxxxxxxxxx", out.toString("US-ASCII"));
+        assertTrue("Source should be closed", source.closed.await(5, TimeUnit.SECONDS));
+    }
+
+    /**
+     * Tests that a runtime exception in the source reaches the reader as an
+     * IOException after the bytes read before it, instead of leaving it waiting.
+     */
+    @Test(timeout = 10000)
+    public void testRuntimeFailureReachesReader() throws Exception {
+        FailingSource source = new FailingSource(new IllegalStateException("corrupt block"));
+        int count = 0;
+        try (ReadAheadInputStream in = new ReadAheadInputStream(source, 4, 2)) {
+            while (in.read() >= 0) {
+                count++;
+            }
+            fail("The source failure should be thrown");
+        } catch (IOException e) {
+            assertTrue("Cause should be kept", e.getCause() instanceof IllegalStateException);
+        }
+        assertEquals("Full blocks before the failure", 8, count);
+        assertTrue("Source should be closed", source.closed.await(5, TimeUnit.SECONDS));
+    }
+
+    /**
+     * Tests that closing early stops the reader thread, which closes the source.
+     */
+    @Test(timeout = 10000)
+    public void testCloseStopsReader() throws Exception {
+        FailingSource source = new FailingSource(null);
+        try (ReadAheadInputStream in = new ReadAheadInputStream(source, 1, 1)) {
+            assertEquals('x', in.read());
+        }
+        assertTrue("Source should be closed", source.closed.await(5, TimeUnit.SECONDS));
+    }
+}
@@ -0,0 +1,60 @@
+package src.test;
+import org.junit.*;
+
+import src.main.TypedBinder;
+
+import java.util.Random;
+import static org.junit.Assert.*;
+
+public class TypedBinderTest {
+
+    /**
+     * Tests integer parsing, including signs, the long range limits and bad input.
+     */
+    @Test
+    public void testParseLong() {
+        assertEquals(148, TypedBinder.parseLong("148"));
+        assertEquals(-7, TypedBinder.parseLong("-7"));
+        assertEquals(7, TypedBinder.parseLong("+7"));
+        assertEquals(Long.MAX_VALUE, TypedBinder.parseLong(String.valueOf(Long.MAX_VALUE)));
+        assertEquals(Long.MIN_VALUE, TypedBinder.parseLong(String.valueOf(Long.MIN_VALUE)));
+
+        String[] bad = {"", "-", "12a", "1.5", "9223372036854775808", "-9223372036854775809", "N/A"};
+        for (String value : bad) {
+            try {
+                TypedBinder.parseLong(value);
+                fail("Should reject: " + value);
+            } catch (NumberFormatException expected) {
+                // Expected
+            }
+        }
+    }
+
+    /**
+     * Tests that decimal parsing gives exactly the same double as
+     * Double.parseDouble, on both the fast path and the fallback.
+     */
+    @Test
+    public void testParseDoubleMatchesJdk() {
+        String[] values = {"8.8", "0.1", "7", "-3.25", ".5", "5.", "1e3", "123456789012345.6", "0.000000000000000000001"};
+        for (String value : values) {
+            assertEquals(value, Double.parseDouble(value), TypedBinder.parseDouble(value), 0.0);
+        }
+
+        Random random = new Random(42);
+        for (int i = 0; i < 100000; i++) {
+            String value = (random.nextInt(1000000) / 10.0) + "" + random.nextInt(10000);
+            assertEquals(value, Double.parseDouble(value), TypedBinder.parseDouble(value), 0.0);
+        }
+
+        String[] bad = {"", ".", "-", "8.8.8", "abc"};
+        for (String value : bad) {
+            try {
+                TypedBinder.parseDouble(value);
+                fail("Should reject: " + value);
+            } catch (NumberFormatException expected) {
+                // Expected
+            }
+        }
+    }
+}
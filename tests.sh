@@ -24,9 +24,16 @@ echo "Compilation successful"
 # Run all JUnit tests
 echo "Running JUnit tests..."
 java -cp "$CLASSPATH" org.junit.runner.JUnitCore \
-    InitialiseDBTest \
-    PopulateDBTest \
-    QueryDBTest
+    src.test.InitialiseDBTest \
+    src.test.PopulateDBTest \
+    src.test.QueryDBTest \
+    src.test.CsvTokenizerTest \
+    src.test.MappedCsvReaderTest \
+    src.test.TypedBinderTest \
+    src.test.BatchSizerTest \
+    src.test.DatasetGeneratorTest \
+    src.test.EntityDeduplicatorTest \
+    src.test.ReadAheadInputStreamTest
 
 # Check if tests ran successfully
 if [ $? -ne 0 ]; then